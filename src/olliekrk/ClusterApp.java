@@ -0,0 +1,118 @@
+package olliekrk;
+
+import olliekrk.elevators.ElevatorsSystem;
+import olliekrk.elevators.SchedulerScanner;
+import olliekrk.elevators.cluster.ClusterNode;
+import olliekrk.elevators.requests.RequestFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.TreeSet;
+
+/**
+ * Runs a single node of a cluster of dispatchers {@link ClusterNode}, so that a cluster can be started as several local processes.
+ * <p>
+ * Usage: {@code ClusterApp <nodeID> <port> [<memberID>=<port> ...]}. The node steps its buildings ten times per second
+ * and reads commands from the standard input, one per line:
+ * <pre>
+ * join &lt;memberID&gt; &lt;port&gt;        leave &lt;memberID&gt;
+ * building &lt;buildingID&gt; &lt;elevators&gt;
+ * up &lt;buildingID&gt; &lt;floor&gt;        down &lt;buildingID&gt; &lt;floor&gt;
+ * floor &lt;buildingID&gt; &lt;elevatorID&gt; &lt;floor&gt;
+ * status                           quit
+ * </pre>
+ * Membership commands have to be given to every node, {@code quit} migrates the node's buildings away before exiting.
+ */
+public class ClusterApp {
+    private static final long STEP_MILLIS = 100;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: ClusterApp <nodeID> <port> [<memberID>=<port> ...]");
+            return;
+        }
+        ClusterNode node = new ClusterNode(args[0], SchedulerScanner::new);
+        node.start(Integer.parseInt(args[1]));
+        for (int i = 2; i < args.length; i++) {
+            String[] member = args[i].split("=");
+            node.join(member[0], loopbackAddress(member[1]));
+        }
+        System.out.println("Node " + args[0] + " is listening on " + node.getAddress());
+
+        Thread console = new Thread(() -> readCommands(node), "elevators-cluster-console");
+        console.setDaemon(true);
+        console.start();
+        while (console.isAlive()) {
+            node.step();
+            Thread.sleep(STEP_MILLIS);
+        }
+        //the node has left the cluster, so it hands its buildings over before exiting
+        node.step();
+        node.close();
+    }
+
+    private static void readCommands(ClusterNode node) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] command = line.trim().split("\\s+");
+                try {
+                    switch (command[0]) {
+                        case "join":
+                            node.join(command[1], loopbackAddress(command[2]));
+                            break;
+                        case "leave":
+                            node.leave(command[1]);
+                            break;
+                        case "building":
+                            node.createBuilding(command[1], Integer.parseInt(command[2]));
+                            break;
+                        case "up":
+                            node.submitRequest(command[1], RequestFactory.createUpRequest(Integer.parseInt(command[2])));
+                            break;
+                        case "down":
+                            node.submitRequest(command[1], RequestFactory.createDownRequest(Integer.parseInt(command[2])));
+                            break;
+                        case "floor":
+                            node.submitRequest(command[1], RequestFactory.createFloorRequest(Integer.parseInt(command[2]), Integer.parseInt(command[3])));
+                            break;
+                        case "status":
+                            printStatus(node);
+                            break;
+                        case "quit":
+                            node.leave(node.getNodeID());
+                            return;
+                        case "":
+                            break;
+                        default:
+                            System.err.println("Unknown command: " + command[0]);
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Invalid command: " + line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read commands: " + e.getMessage());
+        }
+        node.leave(node.getNodeID());
+    }
+
+    private static void printStatus(ClusterNode node) {
+        for (String buildingID : new TreeSet<>(node.getHostedBuildings())) {
+            ElevatorsSystem building = node.getBuilding(buildingID);
+            if (building == null) {
+                continue;
+            }
+            System.out.println("Building " + buildingID + ":");
+            building.forEachSnapshot(snapshot -> System.out.println("  " + snapshot.toElevatorStatus()));
+        }
+    }
+
+    private static InetSocketAddress loopbackAddress(String port) {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(port));
+    }
+}
@@ -1,43 +1,55 @@
 package olliekrk;
 
 import olliekrk.elevators.ElevatorStatus;
+import olliekrk.elevators.ElevatorsScheduler;
 import olliekrk.elevators.ElevatorsSystem;
+import olliekrk.elevators.ElevatorsSystemListener;
+import olliekrk.elevators.RequestHandle;
 import olliekrk.elevators.SchedulerFCFS;
 import olliekrk.elevators.SchedulerScanner;
 import olliekrk.elevators.requests.Request;
 import olliekrk.elevators.requests.RequestFactory;
+import olliekrk.elevators.requests.RequestType;
+import olliekrk.elevators.workload.TimedRequest;
+import olliekrk.elevators.workload.TrafficProfile;
+import olliekrk.elevators.workload.Workload;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Scanner;
 
 
 /**
  * Class used to test and compare both scheduling algorithms by testing how many steps it takes for them
- * to complete random requests queue.
+ * to serve the same passengers.
+ * <p>
+ * Passengers come from a {@link Workload} and make their hall calls in the steps they arrive.
+ * Once they board an elevator which has opened its door for their hall call, they request their destination floor with a FLOOR request.
+ * Passengers who do not fit into a full elevator keep waiting for the next one.
  */
 public class Simulation {
     private static final int ELEVATORS_NO = 5;
     private static final int FLOORS_NO = 20;
+    private static final int CAPACITY = 8;
+    /**
+     * Expected number of passengers arriving to the building during a single step.
+     */
+    private static final double ARRIVALS_PER_STEP = 0.5;
     private static final String usage = "Type one of the following options:\n\tgenerate\n\tstep\n\tstatus\n\tend\n\tusage\n";
 
     public static void main(String[] args) {
-        ElevatorsSystem systemFCFS = new ElevatorsSystem(new SchedulerFCFS());
-        ElevatorsSystem systemScanner = new ElevatorsSystem(new SchedulerScanner());
-        List<Request> requestsQueue;
+        Building buildingFCFS = new Building(new SchedulerFCFS());
+        Building buildingScanner = new Building(new SchedulerScanner());
+        Random random = new Random();
 
-        //counters for steps
-        int stepsFCFS = 0;
-        int stepsScanner = 0;
+        //counter for passengers
         int totalRequestsCount = 0;
 
-        //register some elevators
-        for (int i = 0; i < ELEVATORS_NO; i++) {
-            systemFCFS.registerElevator(i, 0);
-            systemScanner.registerElevator(i, 0);
-        }
-
         System.out.println(usage);
         Scanner scanner = new Scanner(System.in);
 
@@ -49,32 +61,27 @@ public class Simulation {
                     case "generate":
                         System.out.println("How many records would you like to generate?");
                         int recordsCount = Integer.parseInt(scanner.next());
-                        requestsQueue = generateRequests(recordsCount);
-                        addRequests(systemFCFS, requestsQueue);
-                        addRequests(systemScanner, requestsQueue);
-                        totalRequestsCount += requestsQueue.size();
+                        //the same seed gives both systems the same passengers, without keeping them in memory
+                        long seed = random.nextLong();
+                        buildingFCFS.addPassengers(seed, recordsCount);
+                        buildingScanner.addPassengers(seed, recordsCount);
+                        totalRequestsCount += recordsCount;
                         break;
                     case "step":
                         System.out.println("How many steps further would you like to proceed?");
                         int steps = Integer.parseInt(scanner.next());
                         for (int i = 0; i < steps; i++) {
-                            if (systemFCFS.isAnyRequestUnprocessed()) {
-                                systemFCFS.makeSimulationStep();
-                                stepsFCFS++;
-                            }
-                            if (systemScanner.isAnyRequestUnprocessed()) {
-                                systemScanner.makeSimulationStep();
-                                stepsScanner++;
-                            }
+                            buildingFCFS.step();
+                            buildingScanner.step();
                         }
                         break;
                     case "status":
                         System.out.print("---\nSystem with SchedulerFCFS status\n---\n");
-                        for (ElevatorStatus status : systemFCFS.getElevatorsStatuses())
+                        for (ElevatorStatus status : buildingFCFS.system.getElevatorsStatuses())
                             System.out.println(status);
 
                         System.out.print("---\nSystem with SchedulerScanner status\n---\n");
-                        for (ElevatorStatus status : systemScanner.getElevatorsStatuses())
+                        for (ElevatorStatus status : buildingScanner.system.getElevatorsStatuses())
                             System.out.println(status);
                         break;
                     case "end":
@@ -93,59 +100,159 @@ public class Simulation {
             }
         }
 
-        while (systemScanner.isAnyRequestUnprocessed()) {
-            systemScanner.makeSimulationStep();
-            stepsScanner++;
+        while (buildingScanner.isBusy()) {
+            buildingScanner.step();
         }
 
-        while (systemFCFS.isAnyRequestUnprocessed()) {
-            systemFCFS.makeSimulationStep();
-            stepsFCFS++;
+        while (buildingFCFS.isBusy()) {
+            buildingFCFS.step();
         }
 
-        printSimulationResults(stepsFCFS, stepsScanner, totalRequestsCount);
-    }
-
-    private static List<Request> generateRequests(int recordsCount) {
-        Random rand = new Random();
-        List<Request> requests = new ArrayList<>(recordsCount);
-        for (int i = 0; i < recordsCount; i++) {
-            int type = rand.nextInt(3);
-            Request request = null;
-            switch (type) {
-                case 0:
-                    request = RequestFactory.createUpRequest(rand.nextInt(FLOORS_NO + 1));
-                    break;
-                case 1:
-                    request = RequestFactory.createDownRequest(rand.nextInt(FLOORS_NO + 1));
-                    break;
-                case 2:
-                    request = RequestFactory.createFloorRequest(rand.nextInt(ELEVATORS_NO), rand.nextInt(FLOORS_NO + 1));
-                    break;
-            }
-            if (request != null)
-                requests.add(request);
-        }
-        return requests;
+        printSimulationResults(buildingFCFS.steps, buildingScanner.steps, totalRequestsCount,
+                buildingFCFS.system.getRejectedBoardings(), buildingScanner.system.getRejectedBoardings());
     }
 
-    private static void addRequests(ElevatorsSystem system, List<Request> requests) {
-        for (Request request : requests)
-            system.enqueueRequest(request);
-    }
-
-    private static void printSimulationResults(int stepsFCFS, int stepsScanner, int totalRequestsCount) {
+    private static void printSimulationResults(long stepsFCFS, long stepsScanner, int totalRequestsCount,
+                                               long rejectedFCFS, long rejectedScanner) {
         System.out.println("---");
         System.out.println("Simulation summary:");
         System.out.println("---");
         System.out.println("Elevators: " + ELEVATORS_NO);
         System.out.println("Floors: " + FLOORS_NO);
-        System.out.println("Total number of requests received: " + totalRequestsCount);
+        System.out.println("Capacity of an elevator: " + CAPACITY);
+        System.out.println("Total number of passengers: " + totalRequestsCount);
         System.out.println("---");
         System.out.println("Total steps FC-FS: " + stepsFCFS);
-        System.out.printf("Average steps per request: %.3f\n", (double) stepsFCFS / totalRequestsCount);
+        System.out.printf("Average steps per passenger: %.3f\n", (double) stepsFCFS / totalRequestsCount);
+        System.out.println("Passengers left behind by full elevators: " + rejectedFCFS);
         System.out.println("---");
         System.out.println("Total steps Scanner: " + stepsScanner);
-        System.out.printf("Average steps per request: %.3f\n", (double) stepsScanner / totalRequestsCount);
+        System.out.printf("Average steps per passenger: %.3f\n", (double) stepsScanner / totalRequestsCount);
+        System.out.println("Passengers left behind by full elevators: " + rejectedScanner);
+    }
+
+    /**
+     * Single system together with its clock and its passengers.
+     * Passengers make their hall calls when the clock reaches their arrival, and request their floors after they have boarded an elevator.
+     */
+    private static final class Building implements ElevatorsSystemListener {
+        private final ElevatorsSystem system;
+        /**
+         * Workloads added by "generate", with their next passenger and the step at which they were added.
+         */
+        private final List<Arrivals> arrivals;
+        /**
+         * Destination floors of passengers waiting for every hall call, keyed by {@link #hallCallKey(Request)}.
+         */
+        private final Map<Long, ArrayDeque<Integer>> waitingPassengers;
+        /**
+         * FLOOR requests of passengers who have boarded an elevator during the current step.
+         */
+        private final List<Request> floorRequests;
+        /**
+         * Number of steps made by the system.
+         */
+        private long steps;
+
+        private Building(ElevatorsScheduler scheduler) {
+            this.system = new ElevatorsSystem(scheduler);
+            this.arrivals = new ArrayList<>();
+            this.waitingPassengers = new HashMap<>();
+            this.floorRequests = new ArrayList<>();
+            for (int i = 0; i < ELEVATORS_NO; i++) {
+                system.registerElevator(i, 0, CAPACITY);
+            }
+            system.addListener(this);
+        }
+
+        private void addPassengers(long seed, int count) {
+            Iterator<TimedRequest> iterator = new Workload(seed, FLOORS_NO, TrafficProfile.INTERFLOOR, ARRIVALS_PER_STEP, Long.MAX_VALUE)
+                    .stream()
+                    .limit(count)
+                    .iterator();
+            if (iterator.hasNext()) {
+                arrivals.add(new Arrivals(iterator, steps));
+            }
+        }
+
+        private boolean isBusy() {
+            return !arrivals.isEmpty() || !floorRequests.isEmpty() || system.isAnyRequestUnprocessed();
+        }
+
+        /**
+         * Lets passengers who have arrived by now call an elevator, makes a simulation step
+         * and lets passengers who have boarded an elevator request their floors.
+         */
+        private void step() {
+            Iterator<Arrivals> iterator = arrivals.iterator();
+            while (iterator.hasNext()) {
+                Arrivals workload = iterator.next();
+                while (workload.next != null && workload.offset + workload.next.getStep() <= steps) {
+                    call(workload.next);
+                    workload.next = workload.iterator.hasNext() ? workload.iterator.next() : null;
+                }
+                if (workload.next == null) {
+                    iterator.remove();
+                }
+            }
+            system.makeSimulationStep();
+            steps++;
+            //requests are not enqueued while the system is being stepped
+            for (Request request : floorRequests) {
+                system.enqueueRequest(request);
+            }
+            floorRequests.clear();
+        }
+
+        private void call(TimedRequest passenger) {
+            Request hallCall = passenger.getRequest();
+            waitingPassengers.computeIfAbsent(hallCallKey(hallCall), key -> new ArrayDeque<>()).add(passenger.getDestinationFloor());
+            system.enqueueRequest(hallCall);
+        }
+
+        @Override
+        public void onPassengersBoarded(Integer elevatorID, Request request, int passengers) {
+            ArrayDeque<Integer> waiting = waitingPassengers.get(hallCallKey(request));
+            if (waiting == null) {
+                return;
+            }
+            for (int i = 0; i < passengers && !waiting.isEmpty(); i++) {
+                floorRequests.add(RequestFactory.createFloorRequest(elevatorID, waiting.poll()));
+            }
+            if (waiting.isEmpty()) {
+                waitingPassengers.remove(hallCallKey(request));
+            }
+        }
+
+        @Override
+        public void onRequestWithdrawn(Request request, RequestHandle.State state) {
+            if (isHallCall(request) && (state == RequestHandle.State.EXPIRED || state == RequestHandle.State.CANCELLED)) {
+                //passengers have given up waiting
+                waitingPassengers.remove(hallCallKey(request));
+            }
+        }
+
+        private static boolean isHallCall(Request request) {
+            return request.getRequestType() == RequestType.UP || request.getRequestType() == RequestType.DOWN;
+        }
+
+        private static long hallCallKey(Request request) {
+            return ((long) request.getFloor() << 1) | (request.getRequestType() == RequestType.UP ? 1 : 0);
+        }
+    }
+
+    /**
+     * Passengers of a single workload, which timeline starts at the step the workload was added.
+     */
+    private static final class Arrivals {
+        private final Iterator<TimedRequest> iterator;
+        private final long offset;
+        private TimedRequest next;
+
+        private Arrivals(Iterator<TimedRequest> iterator, long offset) {
+            this.iterator = iterator;
+            this.offset = offset;
+            this.next = iterator.next();
+        }
     }
 }
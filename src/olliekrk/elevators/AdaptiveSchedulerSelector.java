@@ -0,0 +1,428 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.requests.Request;
+import olliekrk.elevators.requests.RequestFactory;
+import olliekrk.elevators.requests.RequestType;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Listener which keeps the live system on the scheduler which performs best in the current traffic.
+ * <p>
+ * Every candidate scheduler drives its own shadow system, which starts with the same elevators as the live one
+ * and receives the same stream of accepted requests and steps. Shadows are stepped by the selector's own thread,
+ * so the live system never waits for them. Events wait for the shadows in a bounded queue. When the shadows fall behind
+ * and the queue is full, new events are dropped and counted by {@link #getDroppedEvents()}. Every shadow misses the same
+ * events, so they are still compared on equal terms. For every shadow the selector keeps the average waiting time
+ * of the hall calls it has recently completed, and once every shadow has completed enough of them, the best one is recommended.
+ * <p>
+ * The recommendation is applied with {@link ElevatorsSystem#setScheduler(ElevatorsScheduler)} at the end of a step of the live system,
+ * when no request is being scheduled. The current scheduler is replaced only when the winner waits shorter by a margin,
+ * so the system does not flip between schedulers which perform alike.
+ * <p>
+ * Shadows start with the capacities and passengers of the live elevators, together with the FLOOR requests of those passengers.
+ * Passengers left behind by full elevators call again in every shadow on their own, so the live system's calls for them are not replayed.
+ * Shadow elevators board passengers as their own schedulers decide, so FLOOR requests of the live system are not replayed as they are either.
+ * A FLOOR request made in an elevator which has boarded passengers of a hall call only teaches the shadows the destination
+ * of a passenger of that call - every shadow requests it in the elevator which has boarded the passenger there.
+ * Shadows do not copy hall calls which were already enqueued when the selector was created,
+ * and they cannot follow elevators which are moved with {@link ElevatorsSystem#updateElevatorStatus(Integer, int, int)},
+ * so they approximate the live system closer as the traffic goes on. A single selector should be registered in a single system.
+ */
+public class AdaptiveSchedulerSelector implements ElevatorsSystemListener, Closeable {
+    /**
+     * Event marking the end of a step of the live system.
+     */
+    private static final Object STEP = new Object();
+    /**
+     * Relative margin by which the winner has to be better than the current scheduler.
+     */
+    private static final double SWITCH_MARGIN = 0.1;
+    /**
+     * Maximum number of events awaiting to be replayed by the shadows.
+     */
+    static final int MAX_PENDING_EVENTS = 1 << 16;
+
+    /**
+     * Schedulers used by the live system, one instance per candidate, never used by the shadows.
+     */
+    private final ElevatorsScheduler[] liveSchedulers;
+    private final Shadow[] shadows;
+    /**
+     * Accepted requests and steps of the live system, awaiting to be replayed by the shadows.
+     */
+    private final BlockingQueue<Object> events;
+    private final AtomicLong droppedEvents;
+    /**
+     * Index of the recommended candidate, -1 until every shadow has completed enough hall calls.
+     */
+    private final AtomicInteger recommended;
+    private final AtomicLong switches;
+    /**
+     * Index of the candidate used by the live system, -1 if it uses a scheduler given outside of the selector.
+     * Accessed only by the thread stepping the live system.
+     */
+    private int liveIndex;
+    /**
+     * Hall calls of passengers left behind by full elevators of the live system during the current step.
+     * Accessed only by the thread stepping the live system.
+     */
+    private final List<Request> leftBehindCalls;
+    /**
+     * Hall calls of passengers boarded by every live elevator, who have not requested their floors yet, one entry per passenger.
+     * Accessed only by the thread stepping the live system.
+     */
+    private final Map<Integer, ArrayDeque<Request>> boardedWithoutFloor;
+    /**
+     * Background thread stepping the shadows.
+     */
+    private final Thread selector;
+    private volatile boolean running;
+
+    /**
+     * Creates a new selector and starts its thread. Shadows start with elevators of the given system, as they are now.
+     * It reads the queues of the system, so it should be created by the thread stepping the system.
+     *
+     * @param system     live system, which the selector should be registered in
+     * @param candidates suppliers of candidate schedulers, every one is called once for the live system and once for a shadow
+     * @param window     number of hall calls recently completed by a shadow, which its average waiting time is computed of
+     */
+    public AdaptiveSchedulerSelector(ElevatorsSystem system, List<Supplier<? extends ElevatorsScheduler>> candidates, int window) {
+        if (candidates.isEmpty() || window <= 0) {
+            throw new IllegalArgumentException("Selector requires candidate schedulers and a positive window");
+        }
+        List<ElevatorSnapshot> snapshots = system.getElevatorsSnapshots();
+        this.liveSchedulers = new ElevatorsScheduler[candidates.size()];
+        this.shadows = new Shadow[candidates.size()];
+        for (int i = 0; i < candidates.size(); i++) {
+            liveSchedulers[i] = candidates.get(i).get();
+            shadows[i] = new Shadow(candidates.get(i).get(), system, snapshots, window);
+        }
+        this.leftBehindCalls = new ArrayList<>();
+        this.boardedWithoutFloor = new HashMap<>();
+        this.events = new ArrayBlockingQueue<>(MAX_PENDING_EVENTS);
+        this.droppedEvents = new AtomicLong();
+        this.recommended = new AtomicInteger(-1);
+        this.switches = new AtomicLong();
+        this.liveIndex = -1;
+        this.running = true;
+        this.selector = new Thread(this::replayContinuously, "elevators-scheduler-selector");
+        this.selector.setDaemon(true);
+        this.selector.start();
+    }
+
+    /**
+     * Gets the number of times the scheduler of the live system was replaced.
+     */
+    public long getSwitches() {
+        return switches.get();
+    }
+
+    /**
+     * Gets the number of accepted requests and steps which were not replayed by the shadows, because they had fallen behind.
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * Gets the scheduler which the selector has set in the live system.
+     *
+     * @return scheduler of the live system or null if the selector has not replaced it yet
+     */
+    public ElevatorsScheduler getLiveScheduler() {
+        int index = liveIndex;
+        return (index < 0) ? null : liveSchedulers[index];
+    }
+
+    /**
+     * Gets the average waiting time of hall calls recently completed by the shadow of given candidate.
+     *
+     * @param candidate index of the candidate
+     * @return average waiting time in steps or NaN if the shadow has not completed any hall call yet
+     */
+    public double getAverageWait(int candidate) {
+        return shadows[candidate].averageWait();
+    }
+
+    /**
+     * Gets the number of passengers inside the elevators of the shadow of given candidate.
+     *
+     * @param candidate index of the candidate
+     * @return number of passengers
+     */
+    int getShadowPassengers(int candidate) {
+        int passengers = 0;
+        for (ElevatorSnapshot snapshot : shadows[candidate].system.getElevatorsSnapshots()) {
+            passengers += snapshot.getPassengers();
+        }
+        return passengers;
+    }
+
+    @Override
+    public void onRequestAccepted(Request request) {
+        if (request.getRequestType() == RequestType.FLOOR) {
+            ArrayDeque<Request> hallCalls = boardedWithoutFloor.get(request.getElevatorID());
+            Request hallCall = (hallCalls == null) ? null : hallCalls.poll();
+            //the passenger's floor is requested by whichever shadow elevator has boarded them
+            offer(hallCall == null ? request : new Destination(hallCall, request.getFloor()));
+        } else if (leftBehindCalls.isEmpty() || !leftBehindCalls.remove(request)) {
+            offer(request);
+        }
+    }
+
+    @Override
+    public void onPassengersBoarded(Integer elevatorID, Request request, int passengers) {
+        ArrayDeque<Request> hallCalls = boardedWithoutFloor.computeIfAbsent(elevatorID, id -> new ArrayDeque<>());
+        for (int i = 0; i < passengers; i++) {
+            hallCalls.add(request);
+        }
+    }
+
+    @Override
+    public void onBoardingRejected(Integer elevatorID, Request request, int passengers) {
+        //left behind passengers call again at the end of the step
+        leftBehindCalls.add(request);
+    }
+
+    /**
+     * Switches the live system to the recommended scheduler, then hands the step over to the shadows.
+     *
+     * @param system system which has made the step
+     */
+    @Override
+    public void onSimulationStep(ElevatorsSystem system) {
+        int index = recommended.get();
+        if (index >= 0 && index != liveIndex) {
+            system.setScheduler(liveSchedulers[index]);
+            liveIndex = index;
+            switches.incrementAndGet();
+        }
+        leftBehindCalls.clear();
+        offer(STEP);
+        LockSupport.unpark(selector);
+    }
+
+    private void offer(Object event) {
+        if (!events.offer(event)) {
+            droppedEvents.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stops the selector's thread. The live system keeps the scheduler it uses at the moment.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(selector);
+        try {
+            selector.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void replayContinuously() {
+        while (running) {
+            Object event = events.poll();
+            if (event == null) {
+                LockSupport.park(this);
+            } else if (event == STEP) {
+                for (Shadow shadow : shadows) {
+                    shadow.step();
+                }
+                recommend();
+            } else if (event instanceof Destination) {
+                for (Shadow shadow : shadows) {
+                    shadow.learnDestination((Destination) event);
+                }
+            } else {
+                for (Shadow shadow : shadows) {
+                    shadow.system.enqueueRequest((Request) event);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recommends the candidate with the shortest average wait, if it is better than the recommended one by the margin.
+     */
+    private void recommend() {
+        int best = -1;
+        double bestWait = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < shadows.length; i++) {
+            if (!shadows[i].isWarmedUp()) {
+                return;
+            }
+            double averageWait = shadows[i].averageWait();
+            if (averageWait < bestWait) {
+                best = i;
+                bestWait = averageWait;
+            }
+        }
+        int current = recommended.get();
+        if (current < 0 || bestWait < (1.0 - SWITCH_MARGIN) * shadows[current].averageWait()) {
+            recommended.set(best);
+        }
+    }
+
+    /**
+     * Floor requested by a passenger boarded by the live system at given hall call.
+     */
+    private static final class Destination {
+        private final Request hallCall;
+        private final int floor;
+
+        private Destination(Request hallCall, int floor) {
+            this.hallCall = hallCall;
+            this.floor = floor;
+        }
+    }
+
+    /**
+     * Shadow system driven by a single candidate scheduler, together with its rolling waiting time.
+     * Accessed only by the selector's thread, except for the average which is published for monitoring.
+     */
+    private static final class Shadow implements ElevatorsSystemListener {
+        private final ElevatorsSystem system;
+        /**
+         * Steps at which pending hall calls were accepted by the shadow.
+         */
+        private final Map<Request, Long> acceptedAt;
+        /**
+         * Waiting times of recently completed hall calls, used as a ring buffer.
+         */
+        private final long[] waits;
+        /**
+         * Floors of passengers of every hall call, learnt from the live system before the shadow has boarded them,
+         * keyed by {@link ElevatorsSystem#hallCallKey(Request)}.
+         */
+        private final Map<Integer, ArrayDeque<Integer>> destinations;
+        /**
+         * Elevators of passengers boarded at every hall call, who wait until their floors are learnt from the live system,
+         * keyed by {@link ElevatorsSystem#hallCallKey(Request)}.
+         */
+        private final Map<Integer, ArrayDeque<Integer>> boardedWithoutFloor;
+        /**
+         * FLOOR requests of passengers boarded during the current step, enqueued once the step is made.
+         */
+        private final List<Request> floorRequests;
+        private long completed;
+        private long waitSum;
+        private long steps;
+        private volatile double averageWait;
+
+        private Shadow(ElevatorsScheduler scheduler, ElevatorsSystem liveSystem, List<ElevatorSnapshot> snapshots, int window) {
+            this.system = new ElevatorsSystem(scheduler);
+            for (ElevatorSnapshot snapshot : snapshots) {
+                system.registerElevator(snapshot.getElevatorID(), snapshot.getCurrentFloor(), snapshot.getCapacity(), snapshot.getPassengers());
+                //passengers inside leave at the floors they have requested
+                for (Request request : liveSystem.getPassengerRequests(snapshot.getElevatorID())) {
+                    if (request.getRequestType() == RequestType.FLOOR) {
+                        system.enqueueRequest(request);
+                    }
+                }
+            }
+            this.acceptedAt = new IdentityHashMap<>();
+            this.waits = new long[window];
+            this.destinations = new HashMap<>();
+            this.boardedWithoutFloor = new HashMap<>();
+            this.floorRequests = new ArrayList<>();
+            this.averageWait = Double.NaN;
+            system.addListener(this);
+        }
+
+        @Override
+        public void onRequestAccepted(Request request) {
+            if (request.getRequestType() == RequestType.UP || request.getRequestType() == RequestType.DOWN) {
+                acceptedAt.put(request, steps);
+            }
+        }
+
+        @Override
+        public void onRequestCompleted(Integer elevatorID, Request request) {
+            Long acceptedStep = acceptedAt.remove(request);
+            if (acceptedStep == null) {
+                return;
+            }
+            int slot = (int) (completed % waits.length);
+            long wait = steps + 1 - acceptedStep;
+            waitSum += wait - waits[slot];
+            waits[slot] = wait;
+            completed++;
+            averageWait = (double) waitSum / Math.min(completed, waits.length);
+        }
+
+        @Override
+        public void onRequestWithdrawn(Request request, RequestHandle.State state) {
+            //expired, cancelled and duplicate hall calls are never completed
+            acceptedAt.remove(request);
+        }
+
+        @Override
+        public void onSimulationStep(ElevatorsSystem system) {
+            steps++;
+        }
+
+        @Override
+        public void onPassengersBoarded(Integer elevatorID, Request request, int passengers) {
+            int key = ElevatorsSystem.hallCallKey(request);
+            ArrayDeque<Integer> floors = destinations.get(key);
+            for (int i = 0; i < passengers; i++) {
+                Integer floor = (floors == null) ? null : floors.poll();
+                if (floor != null) {
+                    floorRequests.add(RequestFactory.createFloorRequest(elevatorID, floor));
+                } else {
+                    boardedWithoutFloor.computeIfAbsent(key, hallCall -> new ArrayDeque<>()).add(elevatorID);
+                }
+            }
+        }
+
+        private void step() {
+            system.makeSimulationStep();
+            //requests are not enqueued while the system is being stepped
+            for (int i = 0; i < floorRequests.size(); i++) {
+                system.enqueueRequest(floorRequests.get(i));
+            }
+            floorRequests.clear();
+        }
+
+        /**
+         * Requests the floor of a passenger of the hall call in the elevator which has boarded them,
+         * or keeps it until the shadow boards them.
+         *
+         * @param destination floor requested by the passenger in the live system
+         */
+        private void learnDestination(Destination destination) {
+            int key = ElevatorsSystem.hallCallKey(destination.hallCall);
+            ArrayDeque<Integer> elevatorIDs = boardedWithoutFloor.get(key);
+            Integer elevatorID = (elevatorIDs == null) ? null : elevatorIDs.poll();
+            if (elevatorID != null) {
+                system.enqueueRequest(RequestFactory.createFloorRequest(elevatorID, destination.floor));
+            } else {
+                destinations.computeIfAbsent(key, hallCall -> new ArrayDeque<>()).add(destination.floor);
+            }
+        }
+
+        private boolean isWarmedUp() {
+            return completed >= waits.length;
+        }
+
+        private double averageWait() {
+            return averageWait;
+        }
+    }
+}
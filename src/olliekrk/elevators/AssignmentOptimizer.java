@@ -0,0 +1,388 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.requests.Request;
+import olliekrk.elevators.requests.RequestPriority;
+import olliekrk.elevators.requests.RequestType;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background optimizer which keeps improving the assignment of pending hall calls to elevators.
+ * <p>
+ * Schedulers assign every hall call once, when it arrives, and never revisit their decision.
+ * When registered as a listener of a system, the optimizer receives snapshots of the elevators after every simulation step,
+ * and its own thread searches for a better assignment with local search: it moves single hall calls to other elevators
+ * or to other places in their queues, and swaps hall calls between elevators, as long as the total waiting time decreases.
+ * The search takes at most the given time budget per step, then the best assignment found is published as a plan.
+ * <p>
+ * The plan is applied by the stepping thread at the end of the next step, only if the queues of the elevators it changes
+ * still hold exactly the same requests as the snapshots it was computed from. Otherwise it is discarded,
+ * so the queues always hold a valid assignment. The stepping thread never waits for the optimizer.
+ * <p>
+ * Only UP and DOWN requests of NORMAL priority are moved, other requests stay where they were enqueued.
+ * A single optimizer should be registered in a single system.
+ */
+public class AssignmentOptimizer implements ElevatorsSystemListener, Closeable {
+    /**
+     * Maximum time in nanoseconds the optimizer searches for a better assignment of a single snapshot of the system.
+     */
+    private final long budgetNanos;
+    /**
+     * The latest snapshots of the elevators, awaiting to be optimized.
+     */
+    private final AtomicReference<List<ElevatorSnapshot>> pendingSnapshots;
+    /**
+     * The latest improved plan, awaiting to be applied by the stepping thread.
+     */
+    private final AtomicReference<Plan> pendingPlan;
+    private final AtomicLong appliedPlans;
+    private final AtomicLong discardedPlans;
+    /**
+     * Background thread searching for better assignments.
+     */
+    private final Thread optimizer;
+    private volatile boolean running;
+
+    /**
+     * Creates a new optimizer and starts its thread.
+     *
+     * @param budget time the optimizer can spend on a single snapshot of the system, should be shorter than a tick
+     * @param unit   time unit of the budget
+     */
+    public AssignmentOptimizer(long budget, TimeUnit unit) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("Time budget must be positive");
+        }
+        this.budgetNanos = unit.toNanos(budget);
+        this.pendingSnapshots = new AtomicReference<>();
+        this.pendingPlan = new AtomicReference<>();
+        this.appliedPlans = new AtomicLong();
+        this.discardedPlans = new AtomicLong();
+        this.running = true;
+        this.optimizer = new Thread(this::optimizeContinuously, "elevators-assignment-optimizer");
+        this.optimizer.setDaemon(true);
+        this.optimizer.start();
+    }
+
+    public long getAppliedPlans() {
+        return appliedPlans.get();
+    }
+
+    public long getDiscardedPlans() {
+        return discardedPlans.get();
+    }
+
+    /**
+     * Applies the latest plan, if there is any, and hands the current snapshots of the elevators to the optimizer's thread.
+     *
+     * @param system system which has made the step
+     */
+    @Override
+    public void onSimulationStep(ElevatorsSystem system) {
+        Plan plan = pendingPlan.getAndSet(null);
+        if (plan != null) {
+            if (system.reassignRequests(plan.elevatorIDs, plan.expectedQueues, plan.plannedQueues)) {
+                appliedPlans.incrementAndGet();
+            } else {
+                discardedPlans.incrementAndGet();
+            }
+        }
+        pendingSnapshots.set(system.getElevatorsSnapshots());
+        LockSupport.unpark(optimizer);
+    }
+
+    /**
+     * Stops the optimizer's thread. Plan which was not applied yet is dropped.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(optimizer);
+        try {
+            optimizer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pendingPlan.set(null);
+    }
+
+    private void optimizeContinuously() {
+        while (running) {
+            List<ElevatorSnapshot> snapshots = pendingSnapshots.getAndSet(null);
+            if (snapshots == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            Plan plan = optimize(snapshots, System.nanoTime() + budgetNanos);
+            if (plan != null) {
+                pendingPlan.set(plan);
+            }
+        }
+    }
+
+    /**
+     * Searches for an assignment of hall calls with lower total waiting time than the current one.
+     * The search stops at the deadline or when no single move or swap improves the assignment.
+     *
+     * @param snapshots snapshots of the elevators
+     * @param deadline  value of {@link System#nanoTime()} at which the search has to stop
+     * @return plan changing queues of some elevators or null if no better assignment was found
+     */
+    private static Plan optimize(List<ElevatorSnapshot> snapshots, long deadline) {
+        Car[] cars = new Car[snapshots.size()];
+        for (int i = 0; i < cars.length; i++) {
+            cars[i] = new Car(snapshots.get(i));
+        }
+
+        boolean improved = false;
+        while (System.nanoTime() - deadline < 0 && (tryBestMove(cars) || trySwap(cars))) {
+            improved = true;
+        }
+        if (!improved) {
+            return null;
+        }
+
+        Plan plan = new Plan();
+        for (Car car : cars) {
+            if (!car.queue.equals(car.originalQueue)) {
+                plan.elevatorIDs.add(car.elevatorID);
+                plan.expectedQueues.add(car.originalQueue);
+                plan.plannedQueues.add(car.queue);
+            }
+        }
+        return plan.elevatorIDs.isEmpty() ? null : plan;
+    }
+
+    /**
+     * Finds the single move of a hall call, to another elevator or another place of the same queue,
+     * which decreases the total waiting time the most, and makes it.
+     *
+     * @param cars model of the elevators
+     * @return true if any improving move was made
+     */
+    private static boolean tryBestMove(Car[] cars) {
+        long bestGain = 0;
+        Car bestFrom = null;
+        Car bestTo = null;
+        int bestFromIndex = -1;
+        int bestToIndex = -1;
+        for (Car from : cars) {
+            long fromCost = from.cost(-1, -1, null);
+            for (int i = 0; i < from.queue.size(); i++) {
+                Request hallCall = from.queue.get(i);
+                if (!isMovable(hallCall)) {
+                    continue;
+                }
+                long removalGain = fromCost - from.cost(i, -1, null);
+                for (Car to : cars) {
+                    if (to != from && to.full) {
+                        continue;
+                    }
+                    long toCost = (to == from) ? from.cost(i, -1, null) : to.cost(-1, -1, null);
+                    for (int j = 0; j <= to.queue.size(); j++) {
+                        if (to == from && (j == i || j == i + 1)) {
+                            //the same place as before
+                            continue;
+                        }
+                        long insertionCost = (to == from)
+                                ? from.costOfMove(i, j) - toCost
+                                : to.cost(-1, j, hallCall) - toCost;
+                        long gain = removalGain - insertionCost;
+                        if (gain > bestGain) {
+                            bestGain = gain;
+                            bestFrom = from;
+                            bestTo = to;
+                            bestFromIndex = i;
+                            bestToIndex = j;
+                        }
+                    }
+                }
+            }
+        }
+        if (bestFrom == null) {
+            return false;
+        }
+        Request hallCall = bestFrom.queue.remove(bestFromIndex);
+        if (bestFrom == bestTo && bestToIndex > bestFromIndex) {
+            bestToIndex--;
+        }
+        bestTo.queue.add(bestToIndex, hallCall);
+        return true;
+    }
+
+    /**
+     * Finds the swap of two hall calls between two elevators which decreases the total waiting time the most, and makes it.
+     *
+     * @param cars model of the elevators
+     * @return true if any improving swap was made
+     */
+    private static boolean trySwap(Car[] cars) {
+        long bestGain = 0;
+        Car bestFirst = null;
+        Car bestSecond = null;
+        int bestFirstIndex = -1;
+        int bestSecondIndex = -1;
+        for (int a = 0; a < cars.length; a++) {
+            Car first = cars[a];
+            long firstCost = first.cost(-1, -1, null);
+            for (int b = a + 1; b < cars.length; b++) {
+                Car second = cars[b];
+                long secondCost = second.cost(-1, -1, null);
+                for (int i = 0; i < first.queue.size(); i++) {
+                    Request firstCall = first.queue.get(i);
+                    if (!isMovable(firstCall)) {
+                        continue;
+                    }
+                    for (int j = 0; j < second.queue.size(); j++) {
+                        Request secondCall = second.queue.get(j);
+                        if (!isMovable(secondCall)) {
+                            continue;
+                        }
+                        long gain = firstCost + secondCost - first.cost(i, i, secondCall) - second.cost(j, j, firstCall);
+                        if (gain > bestGain) {
+                            bestGain = gain;
+                            bestFirst = first;
+                            bestSecond = second;
+                            bestFirstIndex = i;
+                            bestSecondIndex = j;
+                        }
+                    }
+                }
+            }
+        }
+        if (bestFirst == null) {
+            return false;
+        }
+        Request firstCall = bestFirst.queue.get(bestFirstIndex);
+        bestFirst.queue.set(bestFirstIndex, bestSecond.queue.get(bestSecondIndex));
+        bestSecond.queue.set(bestSecondIndex, firstCall);
+        return true;
+    }
+
+    private static boolean isMovable(Request request) {
+        return request.getPriority() == RequestPriority.NORMAL
+                && (request.getRequestType() == RequestType.UP || request.getRequestType() == RequestType.DOWN);
+    }
+
+    /**
+     * Model of a single elevator used by the search.
+     */
+    private static final class Car {
+        private final Integer elevatorID;
+        private final int currentFloor;
+        private final boolean doorOpened;
+        /**
+         * Flag indicating whether the elevator has no room for passengers, so no hall call is moved to it.
+         */
+        private final boolean full;
+        /**
+         * Requests of priority lanes, which are always served before the queue.
+         */
+        private final List<Request> priorityRequests;
+        /**
+         * Queue of ordinary requests, as it was in the snapshot.
+         */
+        private final List<Request> originalQueue;
+        /**
+         * Queue of ordinary requests, modified by the search.
+         */
+        private final List<Request> queue;
+
+        private Car(ElevatorSnapshot snapshot) {
+            this.elevatorID = snapshot.getElevatorID();
+            this.currentFloor = snapshot.getCurrentFloor();
+            this.doorOpened = snapshot.isDoorOpened();
+            this.full = snapshot.getPassengers() >= snapshot.getCapacity();
+            this.priorityRequests = new ArrayList<>();
+            this.originalQueue = new ArrayList<>();
+            //snapshots list requests in serving order, so priority requests come first
+            for (Request request : snapshot.getRequests()) {
+                if (request.getPriority() == RequestPriority.NORMAL) {
+                    originalQueue.add(request);
+                } else {
+                    priorityRequests.add(request);
+                }
+            }
+            this.queue = new ArrayList<>(originalQueue);
+        }
+
+        /**
+         * Calculates the total waiting time of all requests of the elevator, as a sum of steps after which they are completed.
+         * Like {@link ElevatorController#calculateStepsToReachFloor(int)}, it assumes that opening and closing door take one step.
+         *
+         * @param removedIndex  index in the queue of a request to be skipped or -1
+         * @param insertedIndex index in the queue before which given request is inserted or -1
+         * @param inserted      request to be inserted
+         * @return total waiting time
+         */
+        private long cost(int removedIndex, int insertedIndex, Request inserted) {
+            Route route = new Route(currentFloor, doorOpened);
+            for (Request request : priorityRequests) {
+                route.visit(request.getFloor());
+            }
+            for (int i = 0; i <= queue.size(); i++) {
+                if (i == insertedIndex) {
+                    route.visit(inserted.getFloor());
+                }
+                if (i < queue.size() && i != removedIndex) {
+                    route.visit(queue.get(i).getFloor());
+                }
+            }
+            return route.totalTime;
+        }
+
+        /**
+         * Calculates the total waiting time after moving a request within the queue.
+         *
+         * @param fromIndex index of the moved request
+         * @param toIndex   index before which the request is inserted, in the queue before the move
+         * @return total waiting time
+         */
+        private long costOfMove(int fromIndex, int toIndex) {
+            return cost(fromIndex, toIndex, queue.get(fromIndex));
+        }
+    }
+
+    /**
+     * Route of an elevator visiting consecutive floors.
+     */
+    private static final class Route {
+        private int floor;
+        private boolean doorOpened;
+        private long time;
+        private long totalTime;
+
+        private Route(int floor, boolean doorOpened) {
+            this.floor = floor;
+            this.doorOpened = doorOpened;
+        }
+
+        private void visit(int requestedFloor) {
+            if (requestedFloor != floor || !doorOpened) {
+                //close the door if needed, move to requested floor and open the door
+                time += (doorOpened ? 1 : 0) + Math.abs(requestedFloor - floor) + 1;
+                floor = requestedFloor;
+                doorOpened = true;
+            }
+            totalTime += time;
+        }
+    }
+
+    /**
+     * Plan of new queues for some of the elevators.
+     */
+    private static final class Plan {
+        private final List<Integer> elevatorIDs = new ArrayList<>();
+        /**
+         * Queues from which the plan was computed, the plan is valid only as long as the elevators still have them.
+         */
+        private final List<List<Request>> expectedQueues = new ArrayList<>();
+        private final List<List<Request>> plannedQueues = new ArrayList<>();
+    }
+}
@@ -0,0 +1,41 @@
+package olliekrk.elevators;
+
+/**
+ * Single term of the cost function used by {@link SchedulerCostFunction} to compare candidate insertions of a request.
+ * The scheduler chooses the insertion with the lowest weighted sum of all its terms.
+ * <p>
+ * Terms are evaluated for every candidate on the hot path of dispatching, so they should be cheap and must not allocate.
+ */
+@FunctionalInterface
+public interface CostTerm {
+    /**
+     * Time the passenger waits for the elevator.
+     */
+    CostTerm WAIT_TIME = Insertion::getWaitSteps;
+    /**
+     * Total time by which passengers of already enqueued requests are served later.
+     */
+    CostTerm RIDE_DELAY = insertion -> (double) insertion.getDelayedRequests() * insertion.getDelaySteps();
+    /**
+     * Number of stops made before the request is served.
+     */
+    CostTerm STOPS = Insertion::getStopsBefore;
+    /**
+     * Additional distance travelled by the elevator, which approximates the energy used.
+     */
+    CostTerm TRAVEL_DISTANCE = Insertion::getAddedDistance;
+    /**
+     * Fraction of the elevator's capacity which is already taken, 0 for elevators of unlimited capacity.
+     */
+    CostTerm LOAD = insertion -> insertion.getCapacity() == Elevator.UNLIMITED_CAPACITY
+            ? 0.0
+            : (double) insertion.getPassengers() / insertion.getCapacity();
+
+    /**
+     * Calculates the cost of given insertion.
+     *
+     * @param insertion candidate insertion of a request
+     * @return cost of the insertion, lower is better
+     */
+    double cost(Insertion insertion);
+}
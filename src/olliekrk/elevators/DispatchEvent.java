@@ -0,0 +1,78 @@
+package olliekrk.elevators;
+
+import jdk.jfr.*;
+import olliekrk.elevators.requests.Request;
+
+/**
+ * Flight Recorder event describing the choice of an elevator for a pickup request made by {@link ElevatorsScheduler}.
+ * <p>
+ * Disabled by default, enable it in the recording settings with {@code olliekrk.elevators.Dispatch#enabled=true}.
+ * While disabled, {@link #start()} returns null and no event object is created, so it is cheap to keep on hot paths.
+ */
+@Name("olliekrk.elevators.Dispatch")
+@Label("Dispatch Decision")
+@Category({"Elevators"})
+@Description("Choice of an elevator for a pickup request")
+@Enabled(false)
+@StackTrace(false)
+final class DispatchEvent extends Event {
+    private static final EventType EVENT_TYPE = EventType.getEventType(DispatchEvent.class);
+
+    @Label("Scheduler")
+    String scheduler;
+
+    @Label("Request Type")
+    String requestType;
+
+    @Label("Requested Floor")
+    int requestedFloor;
+
+    @Label("Chosen Elevator")
+    @Description("ID of the chosen elevator, -1 if none was chosen")
+    int elevatorID;
+
+    @Label("Tier")
+    @Description("Criterion which decided about the choice")
+    String tier;
+
+    @Label("Candidates")
+    @Description("Number of elevators considered")
+    int candidates;
+
+    /**
+     * Starts timing of a new event, if the event is enabled.
+     *
+     * @return started event or null if the event is disabled
+     */
+    static DispatchEvent start() {
+        if (!EVENT_TYPE.isEnabled()) {
+            return null;
+        }
+        DispatchEvent event = new DispatchEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits the event started by {@link #start()}, doing nothing if it was disabled.
+     *
+     * @param event      started event or null
+     * @param scheduler  scheduler which made the choice
+     * @param request    dispatched request
+     * @param controller chosen controller or null
+     * @param tier       criterion which decided about the choice
+     * @param candidates number of considered controllers
+     */
+    static void commit(DispatchEvent event, ElevatorsScheduler scheduler, Request request, ElevatorController controller, String tier, int candidates) {
+        if (event == null || !event.shouldCommit()) {
+            return;
+        }
+        event.scheduler = scheduler.getClass().getSimpleName();
+        event.requestType = request.getRequestType().name();
+        event.requestedFloor = request.getFloor();
+        event.elevatorID = (controller == null) ? -1 : controller.getElevatorID();
+        event.tier = tier;
+        event.candidates = candidates;
+        event.commit();
+    }
+}
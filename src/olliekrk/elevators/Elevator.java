@@ -6,6 +6,11 @@ package olliekrk.elevators;
  * Part of an Model-View-Controller design pattern alongside with {@link ElevatorController}.
  */
 public class Elevator {
+    /**
+     * Capacity of an elevator which never gets full.
+     */
+    public static final int UNLIMITED_CAPACITY = Integer.MAX_VALUE;
+
     /**
      * Unique ID of an elevator.
      */
@@ -18,11 +23,24 @@ public class Elevator {
      * Current floor on which elevator is standing.
      */
     private int currentFloor;
+    /**
+     * Maximum number of passengers the elevator can carry.
+     */
+    private final int capacity;
+    /**
+     * Number of passengers in the elevator.
+     */
+    private int passengers;
 
     Elevator(Integer id, int currentFloor) {
+        this(id, currentFloor, UNLIMITED_CAPACITY);
+    }
+
+    Elevator(Integer id, int currentFloor, int capacity) {
         this.id = id;
         this.doorOpened = true;
         this.currentFloor = currentFloor;
+        this.capacity = capacity;
     }
 
     int getId() {
@@ -44,4 +62,16 @@ public class Elevator {
     void setCurrentFloor(int currentFloor) {
         this.currentFloor = currentFloor;
     }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getPassengers() {
+        return passengers;
+    }
+
+    void setPassengers(int passengers) {
+        this.passengers = passengers;
+    }
 }
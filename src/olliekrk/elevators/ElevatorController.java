@@ -1,8 +1,10 @@
 package olliekrk.elevators;
 
 import olliekrk.elevators.requests.Request;
+import olliekrk.elevators.requests.RequestPriority;
+import olliekrk.elevators.requests.RequestType;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -13,6 +15,13 @@ import java.util.List;
  * The queue is the list of requests to be proceeded by elevator.
  * This controller is responsible for translating given requests to commands and controlling the elevator behaviour.
  * Depending on what is the first request in the queue it can open or close elevator door, or else move one floor up or down.
+ * <p>
+ * Besides the queue of ordinary requests, the controller keeps a lane of requests for every higher {@link RequestPriority}.
+ * The elevator always serves the highest non-empty lane, so priority requests preempt ordinary ones without touching them.
+ * Preempted requests are suspended and they are resumed as soon as higher lanes are empty.
+ * <p>
+ * The controller's state should be modified only by the thread stepping the system.
+ * Other threads can read it through immutable {@link ElevatorSnapshot} published by {@link #publishSnapshot()}.
  */
 class ElevatorController {
     /**
@@ -20,63 +29,436 @@ class ElevatorController {
      */
     private final Elevator elevator;
     /**
-     * Queue of request to be completed.
+     * Queues of requests to be completed, indexed by ordinal of their {@link RequestPriority}.
+     * Lane of {@link RequestPriority#NORMAL} priority is the queue managed by schedulers.
+     */
+    private final RequestsQueue[] lanes;
+    /**
+     * Number of changes made to the elevator and to the replaced queues, used as a base of the controller's version.
+     */
+    private long versionBase;
+    /**
+     * Last published snapshot of the controller's state.
      */
-    private List<Request> requestsQueue;
+    private volatile ElevatorSnapshot snapshot;
+    /**
+     * Values computed by schedulers for the current version of the controller's state.
+     */
+    private final InsertionCache insertionCache;
+    /**
+     * Observer of the lanes, forwarding changes of their content to the listener.
+     */
+    private final RequestsQueue.Observer queueObserver;
+    /**
+     * Listener notified about changes of the lanes' content, may be null.
+     */
+    private Listener listener;
+    /**
+     * Flag indicating whether the controller is in the system's set of controllers to be stepped.
+     */
+    private boolean scheduledForStep;
 
     ElevatorController(Elevator elevator) {
         this.elevator = elevator;
-        this.requestsQueue = new LinkedList<>();
+        this.queueObserver = new RequestsQueue.Observer() {
+            @Override
+            public void onRequestAdded(RequestsQueue.Node node) {
+                if (listener != null) {
+                    listener.onRequestAdded(ElevatorController.this, node);
+                }
+            }
+
+            @Override
+            public void onRequestRemoved(RequestsQueue.Node node) {
+                if (listener != null) {
+                    listener.onRequestRemoved(ElevatorController.this, node);
+                }
+            }
+        };
+        this.lanes = new RequestsQueue[RequestPriority.values().length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new RequestsQueue();
+            lanes[i].setObserver(queueObserver);
+        }
+        this.snapshot = takeSnapshot();
+        this.insertionCache = new InsertionCache();
+    }
+
+    /**
+     * Listener of changes of controller's lanes.
+     */
+    interface Listener {
+        /**
+         * Called after a request was added to any lane of the controller.
+         *
+         * @param controller controller which lane has changed
+         * @param node       node holding the added request
+         */
+        void onRequestAdded(ElevatorController controller, RequestsQueue.Node node);
+
+        /**
+         * Called after a request was removed from any lane of the controller.
+         *
+         * @param controller controller which lane has changed
+         * @param node       node which was holding the removed request
+         */
+        void onRequestRemoved(ElevatorController controller, RequestsQueue.Node node);
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    boolean isScheduledForStep() {
+        return scheduledForStep;
+    }
+
+    void setScheduledForStep(boolean scheduledForStep) {
+        this.scheduledForStep = scheduledForStep;
+    }
+
+    /**
+     * Checks whether the controller has nothing to do - its lanes are empty and the elevator door are opened,
+     * so until new request comes, simulation steps do not change its state.
+     *
+     * @return true if the controller is idle, otherwise false
+     */
+    boolean isIdle() {
+        return isInactive() && elevator.isDoorOpened();
+    }
+
+    /**
+     * Gets the lane which is currently served - the highest non-empty one, or the lane of ordinary requests if all are empty.
+     *
+     * @return currently served lane
+     */
+    private RequestsQueue servedLane() {
+        for (int i = lanes.length - 1; i > 0; i--) {
+            if (!lanes[i].isEmpty()) {
+                return lanes[i];
+            }
+        }
+        return lanes[RequestPriority.NORMAL.ordinal()];
     }
 
     private void openElevatorDoor() {
-        elevator.setDoorOpened(true);
+        if (!elevator.isDoorOpened()) {
+            elevator.setDoorOpened(true);
+            versionBase++;
+        }
     }
 
     private void closeElevatorDoor() {
-        elevator.setDoorOpened(false);
+        if (elevator.isDoorOpened()) {
+            elevator.setDoorOpened(false);
+            versionBase++;
+        }
     }
 
     private void moveElevatorUp() {
-        elevator.setCurrentFloor(elevator.getCurrentFloor() + 1);
+        setElevatorCurrentFloor(elevator.getCurrentFloor() + 1);
     }
 
     private void moveElevatorDown() {
-        elevator.setCurrentFloor(elevator.getCurrentFloor() - 1);
+        setElevatorCurrentFloor(elevator.getCurrentFloor() - 1);
+    }
+
+    InsertionCache getInsertionCache() {
+        return insertionCache;
+    }
+
+    Integer getElevatorID() {
+        return elevator.getId();
     }
 
     boolean isInactive() {
-        return requestsQueue.isEmpty();
+        return servedLane().isEmpty();
+    }
+
+    /**
+     * Gets the queue of ordinary requests, which are served when there are no priority requests.
+     *
+     * @return queue of requests of {@link RequestPriority#NORMAL} priority
+     */
+    RequestsQueue getRequestsQueue() {
+        return lanes[RequestPriority.NORMAL.ordinal()];
+    }
+
+    /**
+     * Gets the lane of requests of given priority.
+     *
+     * @param priority priority of the lane
+     * @return queue of requests of given priority
+     */
+    RequestsQueue getLane(RequestPriority priority) {
+        return lanes[priority.ordinal()];
+    }
+
+    /**
+     * Counts requests enqueued to all lanes of the controller.
+     *
+     * @return number of enqueued requests
+     */
+    int numberOfRequestsEnqueued() {
+        int count = 0;
+        for (RequestsQueue lane : lanes) {
+            count += lane.size();
+        }
+        return count;
+    }
+
+    /**
+     * Enqueues a request to the lane of its priority, unless the same request is already there.
+     * Evacuation requests are put at the head of the lane, other requests at its tail.
+     * <p>
+     * The request preempts every request of lower priority, so it is served starting from the next step,
+     * unless there are requests of higher priority.
+     *
+     * @param request request to be enqueued
+     * @return true if the request was enqueued, false if it was already in the lane
+     */
+    boolean enqueuePriorityRequest(Request request) {
+        RequestsQueue lane = lanes[request.getPriority().ordinal()];
+        if (lane.contains(request)) {
+            return false;
+        }
+        if (request.getRequestType() == RequestType.EVACUATION) {
+            lane.add(0, request);
+        } else {
+            lane.add(request);
+        }
+        return true;
+    }
+
+    /**
+     * Cancels every enqueued request in every lane and enqueues given request as the only one.
+     * Lanes are emptied in place, without allocating new queues.
+     *
+     * @param request request to replace the enqueued ones
+     */
+    void restartRequestsQueue(Request request) {
+        for (RequestsQueue lane : lanes) {
+            lane.clear();
+        }
+        lanes[request.getPriority().ordinal()].add(request);
     }
 
-    List<Request> getRequestsQueue() {
-        return requestsQueue;
+    int getCurrentFloor() {
+        return elevator.getCurrentFloor();
+    }
+
+    int getPassengers() {
+        return elevator.getPassengers();
+    }
+
+    int getCapacity() {
+        return elevator.getCapacity();
+    }
+
+    /**
+     * Checks whether there is no room for another passenger, so the elevator should not be sent to pick anybody up.
+     *
+     * @return true if the elevator is full
+     */
+    boolean isFull() {
+        return elevator.getPassengers() >= elevator.getCapacity();
+    }
+
+    /**
+     * Checks whether any of given controllers has room for another passenger.
+     * Schedulers skip full elevators only when there is one which is not full, so that hall calls are dispatched anyway.
+     *
+     * @param controllers controllers to be checked
+     * @return true if at least one of the controllers is not full
+     */
+    static boolean anyHasRoom(List<ElevatorController> controllers) {
+        for (int i = 0; i < controllers.size(); i++) {
+            if (!controllers.get(i).isFull()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the first index of the ordinary queue at which a pickup would find room for its passengers.
+     * A full elevator frees seats only at FLOOR stops, so it may pick anybody up only after the first of them.
+     * If the full elevator has no FLOOR stop at all, a pickup can only be appended at the end of the queue.
+     *
+     * @return 0 if the elevator is not full, otherwise the index following its first FLOOR stop
+     */
+    int firstIndexWithRoom() {
+        if (!isFull()) {
+            return 0;
+        }
+        for (int i = lanes.length - 1; i > RequestPriority.NORMAL.ordinal(); i--) {
+            for (RequestsQueue.Node node = lanes[i].getFirst(); node != null; node = node.getNext()) {
+                if (node.getRequest().getRequestType() == RequestType.FLOOR) {
+                    //priority lanes are served before the ordinary queue
+                    return 0;
+                }
+            }
+        }
+        RequestsQueue queue = lanes[RequestPriority.NORMAL.ordinal()];
+        int index = 1;
+        for (RequestsQueue.Node node = queue.getFirst(); node != null; node = node.getNext(), index++) {
+            if (node.getRequest().getRequestType() == RequestType.FLOOR) {
+                return index;
+            }
+        }
+        return queue.size();
+    }
+
+    /**
+     * Lets waiting passengers board the elevator, as long as there is room for them.
+     *
+     * @param waiting number of waiting passengers
+     * @return number of passengers who have boarded
+     */
+    int board(int waiting) {
+        int boarded = Math.min(waiting, elevator.getCapacity() - elevator.getPassengers());
+        if (boarded > 0) {
+            elevator.setPassengers(elevator.getPassengers() + boarded);
+            versionBase++;
+        }
+        return Math.max(boarded, 0);
+    }
+
+    /**
+     * Lets passengers leave the elevator.
+     *
+     * @param leaving number of passengers who have reached their floor
+     */
+    void alight(int leaving) {
+        int passengers = Math.max(0, elevator.getPassengers() - leaving);
+        if (passengers != elevator.getPassengers()) {
+            elevator.setPassengers(passengers);
+            versionBase++;
+        }
+    }
+
+    boolean isDoorOpened() {
+        return elevator.isDoorOpened();
+    }
+
+    /**
+     * Gets the floor of the first request of the served lane, read directly from the controller's state.
+     *
+     * @return destination floor or the current floor if there are no requests
+     */
+    int getDestinationFloor() {
+        RequestsQueue.Node first = servedLane().getFirst();
+        return (first == null) ? elevator.getCurrentFloor() : first.getRequest().getFloor();
     }
 
     ElevatorStatus getElevatorStatus() {
-        int destinationFloor = (requestsQueue.isEmpty()) ? elevator.getCurrentFloor() : requestsQueue.get(0).getFloor();
-        return new ElevatorStatus(elevator.getId(), elevator.getCurrentFloor(), destinationFloor);
+        return new ElevatorStatus(elevator.getId(), elevator.getCurrentFloor(), getDestinationFloor());
     }
 
     void setElevatorCurrentFloor(int floor) {
-        elevator.setCurrentFloor(floor);
+        if (elevator.getCurrentFloor() != floor) {
+            elevator.setCurrentFloor(floor);
+            versionBase++;
+        }
     }
 
+    /**
+     * Replaces the queue of ordinary requests, lanes of priority requests are kept.
+     * The listener is notified that requests of the replaced queue were removed and requests of the new one were added.
+     *
+     * @param requestsQueue new queue of ordinary requests
+     */
     void setRequestsQueue(List<Request> requestsQueue) {
-        this.requestsQueue = requestsQueue;
+        int normal = RequestPriority.NORMAL.ordinal();
+        RequestsQueue replacedQueue = lanes[normal];
+        //keep the version growing, even though the new queue counts its modifications from the beginning
+        versionBase += replacedQueue.getVersion() + 1;
+        replacedQueue.setObserver(null);
+        lanes[normal] = (requestsQueue instanceof RequestsQueue) ? (RequestsQueue) requestsQueue : new RequestsQueue(requestsQueue);
+        lanes[normal].setObserver(queueObserver);
+    }
+
+    /**
+     * Version of the controller's state, which is increased by every change of the elevator or of the queue.
+     *
+     * @return current version of the controller's state
+     */
+    long getVersion() {
+        long version = versionBase;
+        for (RequestsQueue lane : lanes) {
+            version += lane.getVersion();
+        }
+        return version;
+    }
+
+    /**
+     * Gets the snapshot of the current controller's state, taking a new one only if the state has changed since the last one.
+     * Taken snapshot is also published to other threads.
+     * Should be called only by the thread stepping the system.
+     *
+     * @return up to date snapshot of the controller's state
+     */
+    ElevatorSnapshot getSnapshot() {
+        publishSnapshot();
+        return snapshot;
+    }
+
+    /**
+     * Gets the last published snapshot of the controller's state.
+     * Can be called by any thread.
+     *
+     * @return last published snapshot
+     */
+    ElevatorSnapshot getPublishedSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Publishes a new snapshot of the controller's state if it has changed since the last published one.
+     * Should be called only by the thread stepping the system.
+     */
+    void publishSnapshot() {
+        if (snapshot.getVersion() != getVersion()) {
+            snapshot = takeSnapshot();
+        }
+    }
+
+    private ElevatorSnapshot takeSnapshot() {
+        return new ElevatorSnapshot(getVersion(), elevator.getId(), elevator.getCurrentFloor(), getDestinationFloor(), elevator.isDoorOpened(),
+                elevator.getPassengers(), elevator.getCapacity(), requestsInServingOrder());
+    }
+
+    /**
+     * Lists requests of all lanes, in order in which they will be served.
+     *
+     * @return enqueued requests, from the highest priority lane to the lowest one
+     */
+    private List<Request> requestsInServingOrder() {
+        RequestsQueue normalLane = lanes[RequestPriority.NORMAL.ordinal()];
+        if (servedLane() == normalLane) {
+            return normalLane;
+        }
+        List<Request> requests = new ArrayList<>();
+        for (int i = lanes.length - 1; i >= 0; i--) {
+            requests.addAll(lanes[i]);
+        }
+        return requests;
     }
 
     /**
      * Method used for simulating controller's behaviour.
-     * It reads first request from the queue and then does the following:
+     * It reads first request from the served lane and then does the following:
      * - If queue is empty, it opens elevator doors and after that does nothing until new request comes.
      * - Otherwise, closes the door if they are opened and starts to move elevator towards requested floor.
+     *
+     * @return request completed in this step or null if no request was completed
      */
-    void makeOneStep() {
+    Request makeOneStep() {
+        RequestsQueue requestsQueue = servedLane();
         //case when there are no pending requests, idle state
         if (requestsQueue.isEmpty()) {
             openElevatorDoor();
-            return;
+            return null;
         }
 
         Request currentRequest = requestsQueue.get(0);
@@ -86,7 +468,7 @@ class ElevatorController {
             //open elevator door and remove completed request
             openElevatorDoor();
             requestsQueue.remove(currentRequest);
-            return;
+            return currentRequest;
         }
 
         //case when current request is on other floor
@@ -100,6 +482,7 @@ class ElevatorController {
                 moveElevatorDown();
             }
         }
+        return null;
     }
 
     /**
@@ -120,19 +503,22 @@ class ElevatorController {
         int floorReached = elevator.getCurrentFloor();
         int floorEnqueued;
 
-        for (Request request : requestsQueue) {
-            floorEnqueued = request.getFloor();
-            //add step required to close the door
-            stepsRequired += 1;
-            //add steps required to pass distance between next enqueued floor
-            stepsRequired += Math.abs(floorReached - floorEnqueued);
-            //update floor reached at this point
-            floorReached = floorEnqueued;
-            //add step required to open the door
-            stepsRequired += 1;
-
-            if (floorReached == floor) {
-                return stepsRequired;
+        //requests are served starting from the highest priority lane
+        for (int i = lanes.length - 1; i >= 0; i--) {
+            for (RequestsQueue.Node node = lanes[i].getFirst(); node != null; node = node.getNext()) {
+                floorEnqueued = node.getRequest().getFloor();
+                //add step required to close the door
+                stepsRequired += 1;
+                //add steps required to pass distance between next enqueued floor
+                stepsRequired += Math.abs(floorReached - floorEnqueued);
+                //update floor reached at this point
+                floorReached = floorEnqueued;
+                //add step required to open the door
+                stepsRequired += 1;
+
+                if (floorReached == floor) {
+                    return stepsRequired;
+                }
             }
         }
 
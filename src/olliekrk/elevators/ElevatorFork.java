@@ -0,0 +1,99 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.requests.RequestPriority;
+
+/**
+ * Compact fork of an {@link ElevatorController}, used to simulate its future without touching the live controller.
+ * <p>
+ * The fork holds only the primitive state: the current floor, the state of the door and the floors of all enqueued requests
+ * in the order they will be served, copied once into a single array. A request inserted into the fork is not copied into
+ * the array, it is overlaid on it instead, so any number of rollouts with different insertions share the same fork.
+ * Forks are never modified after creation, so rollouts of a single fork can run on many threads at once.
+ */
+final class ElevatorFork {
+    private final int currentFloor;
+    private final boolean doorOpened;
+    /**
+     * Floors of enqueued requests in serving order, starting with the highest priority lane.
+     */
+    private final int[] stops;
+    /**
+     * Number of requests of priority lanes, which are served before the ordinary ones.
+     */
+    private final int priorityStops;
+
+    private ElevatorFork(int currentFloor, boolean doorOpened, int[] stops, int priorityStops) {
+        this.currentFloor = currentFloor;
+        this.doorOpened = doorOpened;
+        this.stops = stops;
+        this.priorityStops = priorityStops;
+    }
+
+    /**
+     * Forks the current state of the controller.
+     *
+     * @param controller controller to be forked
+     * @return fork of the controller
+     */
+    static ElevatorFork of(ElevatorController controller) {
+        int[] stops = new int[controller.numberOfRequestsEnqueued()];
+        int count = 0;
+        RequestPriority[] priorities = RequestPriority.values();
+        for (int p = priorities.length - 1; p >= 0; p--) {
+            for (RequestsQueue.Node node = controller.getLane(priorities[p]).getFirst(); node != null; node = node.getNext()) {
+                stops[count++] = node.getRequest().getFloor();
+            }
+        }
+        int priorityStops = count - controller.getRequestsQueue().size();
+        return new ElevatorFork(controller.getCurrentFloor(), controller.isDoorOpened(), stops, priorityStops);
+    }
+
+    /**
+     * Simulates the elevator for given number of steps, in the same way as {@link ElevatorController#makeOneStep()},
+     * and sums the steps after which every enqueued request is completed.
+     * Requests which are not completed within the horizon are completed afterwards along the estimated shortest route.
+     *
+     * @param horizon     number of simulated steps
+     * @param insertIndex index in the queue of ordinary requests at which a request is inserted, or a negative value for no insertion
+     * @param insertFloor floor of the inserted request
+     * @return total number of steps requests wait for completion
+     */
+    long rollout(int horizon, int insertIndex, int insertFloor) {
+        int insertAt = (insertIndex < 0) ? -1 : priorityStops + insertIndex;
+        int total = stops.length + (insertAt < 0 ? 0 : 1);
+        int floor = currentFloor;
+        boolean opened = doorOpened;
+        int next = 0;
+        long waitSum = 0;
+        int step = 0;
+        while (step < horizon && next < total) {
+            step++;
+            int target = stopAt(next, insertAt, insertFloor);
+            if (target == floor) {
+                opened = true;
+                waitSum += step;
+                next++;
+            } else if (opened) {
+                opened = false;
+            } else {
+                floor += (target > floor) ? 1 : -1;
+            }
+        }
+        while (next < total) {
+            int target = stopAt(next, insertAt, insertFloor);
+            step += (target == floor) ? 1 : Math.abs(target - floor) + (opened ? 2 : 1);
+            waitSum += step;
+            floor = target;
+            opened = true;
+            next++;
+        }
+        return waitSum;
+    }
+
+    private int stopAt(int index, int insertAt, int insertFloor) {
+        if (insertAt < 0 || index < insertAt) {
+            return stops[index];
+        }
+        return (index == insertAt) ? insertFloor : stops[index - 1];
+    }
+}
@@ -0,0 +1,105 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.requests.Request;
+
+import java.util.List;
+
+/**
+ * Immutable, versioned copy of the whole state of an {@link Elevator} and the queue of its {@link ElevatorController}.
+ * <p>
+ * Snapshots are published by controllers after they change, so they can be read by any thread,
+ * without locks and concurrently with the simulation steps. Every snapshot is consistent,
+ * as it is never modified after being published.
+ */
+public final class ElevatorSnapshot {
+    /**
+     * Version of controller's state at which the snapshot was taken.
+     * Snapshots of the same controller with equal versions have equal content.
+     */
+    private final long version;
+    /**
+     * Elevator's ID.
+     */
+    private final Integer elevatorID;
+    /**
+     * Floor on which the elevator was.
+     */
+    private final int currentFloor;
+    /**
+     * Floor towards which the elevator was moving.
+     */
+    private final int destinationFloor;
+    /**
+     * Flag indicating whether the elevator door were opened.
+     */
+    private final boolean doorOpened;
+    /**
+     * Number of passengers in the elevator and the maximum number of passengers it can carry.
+     */
+    private final int passengers;
+    private final int capacity;
+    /**
+     * Unmodifiable copy of the controller's queue of requests.
+     */
+    private final List<Request> requests;
+
+    ElevatorSnapshot(long version, Integer elevatorID, int currentFloor, int destinationFloor, boolean doorOpened,
+                     int passengers, int capacity, List<Request> requests) {
+        this.version = version;
+        this.elevatorID = elevatorID;
+        this.currentFloor = currentFloor;
+        this.destinationFloor = destinationFloor;
+        this.doorOpened = doorOpened;
+        this.passengers = passengers;
+        this.capacity = capacity;
+        this.requests = List.copyOf(requests);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Integer getElevatorID() {
+        return elevatorID;
+    }
+
+    public int getCurrentFloor() {
+        return currentFloor;
+    }
+
+    public int getDestinationFloor() {
+        return destinationFloor;
+    }
+
+    public boolean isDoorOpened() {
+        return doorOpened;
+    }
+
+    public int getPassengers() {
+        return passengers;
+    }
+
+    /**
+     * Gets the maximum number of passengers, {@link Elevator#UNLIMITED_CAPACITY} if the elevator never gets full.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isInactive() {
+        return requests.isEmpty();
+    }
+
+    public List<Request> getRequests() {
+        return requests;
+    }
+
+    /**
+     * Converts the snapshot to the basic {@link ElevatorStatus}.
+     *
+     * @return status of the elevator at the moment the snapshot was taken
+     */
+    public ElevatorStatus toElevatorStatus() {
+        return new ElevatorStatus(elevatorID, currentFloor, destinationFloor);
+    }
+}
@@ -2,11 +2,10 @@ package olliekrk.elevators;
 
 import olliekrk.elevators.exceptions.ElevatorsSchedulerException;
 import olliekrk.elevators.requests.Request;
+import olliekrk.elevators.requests.RequestPriority;
 import olliekrk.elevators.requests.RequestType;
 
 import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * Class being a part of an {@link ElevatorsSystem}.
@@ -47,13 +46,33 @@ public interface ElevatorsScheduler {
             throw new ElevatorsSchedulerException("Invalid restart request received");
         }
         //replace all previously enqueued requests with restarted queue
-        List<Request> restartedQueue = new LinkedList<>();
-        restartedQueue.add(request);
-        controller.setRequestsQueue(restartedQueue);
+        controller.restartRequestsQueue(request);
     }
 
     /**
-     * Enqueues EVACUATION requests to every available elevator's controller
+     * Enqueues request of priority higher than NORMAL to the lane of its priority in given elevator controller.
+     * Priority requests are not scheduled among other requests, they preempt them instead,
+     * so that they are served starting from the next step unless there are requests of even higher priority.
+     *
+     * @param request    priority request to be enqueued
+     * @param controller elevator controller to receive the request
+     * @throws ElevatorsSchedulerException when the controller is unavailable or the request has NORMAL priority
+     * @see RequestPriority for more detailed information
+     */
+    default void enqueuePriorityRequest(Request request, ElevatorController controller) throws ElevatorsSchedulerException {
+        if (controller == null) {
+            throw new ElevatorsSchedulerException("Controller unavailable to proceed request");
+        }
+        if (request == null || request.getPriority() == RequestPriority.NORMAL) {
+            throw new ElevatorsSchedulerException("Invalid priority request received");
+        }
+        controller.enqueuePriorityRequest(request);
+    }
+
+    /**
+     * Enqueues EVACUATION requests to every available elevator's controller.
+     * The request is put at the head of the highest priority lane, so every elevator goes to evacuate at once,
+     * and requests enqueued before the evacuation are suspended until it is completed.
      *
      * @param request evacuation request to be enqueued
      * @param elevatorControllers collection of controllers to receive the request
@@ -64,11 +83,9 @@ public interface ElevatorsScheduler {
         if (request == null || request.getRequestType() != RequestType.EVACUATION) {
             throw new ElevatorsSchedulerException("Invalid evacuation request received");
         }
-        //override existing requests with evacuation request
+        //preempt existing requests with evacuation request
         for (ElevatorController controller : elevatorControllers) {
-            List<Request> evacuationQueue = new LinkedList<>();
-            evacuationQueue.add(request);
-            controller.setRequestsQueue(evacuationQueue);
+            controller.enqueuePriorityRequest(request);
         }
     }
 }
@@ -4,8 +4,14 @@ import olliekrk.elevators.exceptions.ElevatorsSchedulerException;
 import olliekrk.elevators.exceptions.ElevatorsSystemException;
 import olliekrk.elevators.requests.Request;
 import olliekrk.elevators.requests.RequestFactory;
+import olliekrk.elevators.requests.RequestPriority;
+import olliekrk.elevators.requests.RequestType;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -17,16 +23,121 @@ public class ElevatorsSystem {
      * Maximum number of elevators the system can manage.
      */
     public final static int ELEVATORS_LIMIT = 16;
+    /**
+     * Minimum number of ordinary requests in a queue, from which hall calls can be stolen by inactive elevators.
+     */
+    public final static int STEALING_THRESHOLD = 2;
     /**
      * Map of registered elevators' controllers.
      * The key is the elevator ID and the value is its controller.
      */
     private Map<Integer, ElevatorController> elevatorControllers;
+    /**
+     * Copy of registered controllers, replaced on every registration, so that it can be safely read by any thread.
+     */
+    private volatile ElevatorController[] registeredControllers;
+    /**
+     * Unmodifiable list of registered controllers passed to the scheduler, it supports fast random access,
+     * so that schedulers can iterate over it without allocating an iterator.
+     */
+    private List<ElevatorController> controllersList;
     /**
      * Scheduler used to enqueue incoming requests.
      * Part of a "Strategy" design pattern.
      */
     private ElevatorsScheduler scheduler;
+    /**
+     * Requests submitted concurrently by other threads, awaiting to be dispatched on the stepping thread.
+     */
+    private final Queue<Request> submittedRequests;
+    /**
+     * Sources of requests, which are drained together with submitted requests.
+     */
+    private final List<RequestSource> requestSources;
+    /**
+     * Statuses of all elevators published after the last real-time step, safe to be read by any thread.
+     */
+    private volatile List<ElevatorStatus> publishedStatuses;
+    /**
+     * Listeners notified about events in the system, replaced on every change so that notifying them does not allocate.
+     */
+    private volatile ElevatorsSystemListener[] listeners;
+    /**
+     * Controllers which have any work to do, only these are stepped during the simulation.
+     * Controllers with an empty queue and opened door are removed from it after their next step.
+     */
+    private final List<ElevatorController> activeControllers;
+    /**
+     * Total number of requests enqueued to all controllers, updated on every change of their queues.
+     */
+    private int requestsEnqueued;
+    /**
+     * Flag indicating whether any controller might have changed since statuses were last published.
+     */
+    private boolean statusesOutdated;
+    /**
+     * Listener of controllers' lanes, shared by every registered controller.
+     */
+    private final ElevatorController.Listener controllerListener;
+    /**
+     * Number of simulation steps made so far.
+     */
+    private long stepCount;
+    /**
+     * Handle of the request being enqueued at the moment, bound to every queue node created for its request.
+     */
+    private RequestHandle enqueuedHandle;
+    /**
+     * State assigned to handles which nodes are removed from the queues at the moment.
+     */
+    private RequestHandle.State removalOutcome;
+    /**
+     * Maximum number of simulation steps a hall call can wait for an elevator, 0 if hall calls never expire.
+     */
+    private int hallCallExpirySteps;
+    /**
+     * Handles of hall calls which may expire, ordered by the step of their expiry,
+     * as hall calls accepted with different settings do not expire in order of their acceptance.
+     */
+    private final PriorityQueue<RequestHandle> expiringHallCalls;
+    /**
+     * Handles of pending hall calls of NORMAL priority, keyed by {@link #hallCallKey(Request)}.
+     * Repeated presses of the same hall call are coalesced onto the handle which is already assigned to an elevator.
+     */
+    private final Map<Integer, RequestHandle> pendingHallCalls;
+    /**
+     * Handles of presses following shared pending hall calls, keyed by {@link #hallCallKey(Request)}.
+     * There is an entry only for hall calls which were pressed more than once.
+     */
+    private final Map<Integer, List<RequestHandle>> hallCallPressers;
+    /**
+     * Flag indicating whether inactive elevators steal pending hall calls from other elevators at the end of every step.
+     */
+    private boolean workStealing;
+    /**
+     * Maximum distance in floors from which a moving elevator takes a pooled hall call, 0 if hall calls are scheduled as they arrive.
+     */
+    private int lateBindingHorizon;
+    /**
+     * Hall calls waiting to be bound to an elevator, used only with late binding.
+     */
+    private final HallCallPool hallCallPool;
+    /**
+     * Hall calls of passengers who could not board a full elevator during the current step, one entry per passenger.
+     */
+    private final List<Request> leftBehindPassengers;
+    /**
+     * Controllers which have left behind the passengers of {@link #leftBehindPassengers}, at the same indexes.
+     */
+    private final List<ElevatorController> leftBehindBy;
+    /**
+     * Controllers to which a hall call of passengers left behind may be scheduled, reused by every call.
+     */
+    private final List<ElevatorController> recallControllers;
+    /**
+     * Number of passengers who could not board a full elevator so far.
+     */
+    private long rejectedBoardings;
 
     /**
      * Creates a new elevators system and assigns given {@link ElevatorsScheduler} to schedule incoming requests.
@@ -35,7 +146,24 @@ public class ElevatorsSystem {
      */
     public ElevatorsSystem(ElevatorsScheduler scheduler) {
         this.elevatorControllers = new HashMap<>(ELEVATORS_LIMIT * 2);
+        this.registeredControllers = new ElevatorController[0];
+        this.controllersList = Collections.emptyList();
         this.scheduler = scheduler;
+        this.submittedRequests = new ConcurrentLinkedQueue<>();
+        this.requestSources = new CopyOnWriteArrayList<>();
+        this.publishedStatuses = Collections.emptyList();
+        this.listeners = new ElevatorsSystemListener[0];
+        this.activeControllers = new ArrayList<>(ELEVATORS_LIMIT);
+        this.statusesOutdated = true;
+        this.controllerListener = new ControllerListener();
+        this.removalOutcome = RequestHandle.State.DISCARDED;
+        this.expiringHallCalls = new PriorityQueue<>(Comparator.comparingLong(RequestHandle::getExpiresAtStep));
+        this.pendingHallCalls = new HashMap<>();
+        this.hallCallPressers = new HashMap<>();
+        this.hallCallPool = new HallCallPool();
+        this.leftBehindPassengers = new ArrayList<>();
+        this.leftBehindBy = new ArrayList<>();
+        this.recallControllers = new ArrayList<>(ELEVATORS_LIMIT);
     }
 
     /**
@@ -48,45 +176,502 @@ public class ElevatorsSystem {
         this.scheduler = scheduler;
     }
 
+    /**
+     * Registers a listener to be notified about events in the system.
+     *
+     * @param listener listener to be registered
+     */
+    public synchronized void addListener(ElevatorsSystemListener listener) {
+        ElevatorsSystemListener[] extended = Arrays.copyOf(listeners, listeners.length + 1);
+        extended[listeners.length] = listener;
+        listeners = extended;
+    }
+
+    /**
+     * Unregisters previously registered listener.
+     *
+     * @param listener listener to be unregistered
+     */
+    public synchronized void removeListener(ElevatorsSystemListener listener) {
+        List<ElevatorsSystemListener> remaining = new ArrayList<>(Arrays.asList(listeners));
+        remaining.remove(listener);
+        listeners = remaining.toArray(new ElevatorsSystemListener[0]);
+    }
+
+    /**
+     * Sets the maximum age of hall calls - UP and DOWN requests.
+     * Hall calls which are not completed within given number of simulation steps since they were accepted,
+     * are removed from the queues, as the passenger has most likely left.
+     * The maximum age is fixed when a hall call is accepted, so only hall calls accepted after this method was called are affected.
+     *
+     * @param steps maximum age of hall calls in simulation steps, 0 if hall calls accepted from now on should never expire
+     */
+    public void setHallCallExpiry(int steps) {
+        this.hallCallExpirySteps = Math.max(steps, 0);
+    }
+
+    /**
+     * Enables or disables work stealing.
+     * With work stealing enabled, at the end of every step each inactive elevator takes over one hall call
+     * from the tail of the queue of an elevator which has at least {@link #STEALING_THRESHOLD} ordinary requests,
+     * if it can reach the hall call's floor sooner. Requests of other types are never moved.
+     *
+     * @param workStealing true to enable work stealing
+     */
+    public void setWorkStealing(boolean workStealing) {
+        this.workStealing = workStealing;
+    }
+
+    /**
+     * Enables or disables late binding of hall calls.
+     * <p>
+     * With late binding, UP and DOWN requests are not scheduled when they arrive. They wait in a pool instead,
+     * and at the beginning of every step they are bound to elevators which are close to them:
+     * an inactive elevator takes the nearest call in any direction, and an elevator travelling towards its destination
+     * takes the nearest call in its direction which is ahead of it, no farther than the horizon, and stops there first.
+     * Bound calls are not moved again, as any other enqueued request.
+     * <p>
+     * When late binding is disabled, calls waiting in the pool are scheduled at once.
+     *
+     * @param horizon maximum distance in floors from which a travelling elevator takes a hall call, 0 to disable late binding
+     */
+    public void setLateBinding(int horizon) {
+        this.lateBindingHorizon = Math.max(horizon, 0);
+        if (lateBindingHorizon == 0 && !hallCallPool.isEmpty()) {
+            for (RequestHandle handle : hallCallPool.drain()) {
+                schedulePooledHallCall(handle);
+            }
+            publishSnapshots();
+        }
+    }
+
     /**
      * Send a new request to be enqueued to the right elevator's controller.
      * Calls corresponding method of {@link ElevatorsScheduler} interface (strategy design pattern).
      * The scheduler uses an algorithm to assign the request in its own manner to chosen controller.
+     * Requests with priority higher than NORMAL bypass the scheduling and preempt requests of lower priority.
+     * <p>
+     * A hall call which is already pending is not scheduled again, no matter which elevator it was assigned to.
+     * The press gets a handle of its own which follows the pending call, until the door opens for it on its floor.
      *
      * @param request request to be enqueued
+     * @return handle which tracks the state of the request and allows to cancel it
+     */
+    public RequestHandle enqueueRequest(Request request) {
+        return enqueueRequest(request, controllersList);
+    }
+
+    /**
+     * Enqueues the request, scheduling pickups only to given controllers.
+     *
+     * @param request           request to be enqueued
+     * @param pickupControllers controllers to which the request may be scheduled if it is a pickup
+     * @return handle which tracks the state of the request and allows to cancel it
      */
-    public void enqueueRequest(Request request) {
+    private RequestHandle enqueueRequest(Request request, List<ElevatorController> pickupControllers) {
+        RequestHandle handle = new RequestHandle(this, request, stepCount);
+        if (request == null) {
+            handle.reject(new ElevatorsSystemException("Failed to enqueue an empty request"));
+            return handle;
+        }
+        boolean isHallCall = isHallCall(request);
+        if (isHallCall) {
+            RequestHandle pendingHandle = pendingHallCalls.get(hallCallKey(request));
+            if (pendingHandle != null) {
+                followHallCall(handle, pendingHandle);
+                return handle;
+            }
+            if (lateBindingHorizon > 0) {
+                poolHallCall(handle);
+                return handle;
+            }
+        }
+        enqueuedHandle = handle;
         try {
             switch (request.getRequestType()) {
                 case UP:
                 case DOWN:
-                    scheduler.enqueuePickupRequest(request, elevatorControllers.values());
+                    scheduler.enqueuePickupRequest(request, pickupControllers);
                     break;
                 case FLOOR:
                 case RESTART:
-                    scheduler.enqueueInternalRequest(request, elevatorControllers.get(request.getElevatorID()));
+                    ElevatorController controller = elevatorControllers.get(request.getElevatorID());
+                    if (request.getPriority() == RequestPriority.NORMAL) {
+                        scheduler.enqueueInternalRequest(request, controller);
+                    } else {
+                        scheduler.enqueuePriorityRequest(request, controller);
+                    }
                     break;
                 case EVACUATION:
-                    scheduler.enqueueEvacuationRequest(request, elevatorControllers.values());
+                    scheduler.enqueueEvacuationRequest(request, controllersList);
                     break;
                 default:
                     throw new ElevatorsSystemException("System has received an unsupported request to be enqueued");
             }
+            notifyRequestAccepted(request);
         } catch (ElevatorsSystemException e) {
-            System.err.println(e.getMessage());
+            //the cause is reported by the futures of the handle
+            handle.reject(e);
+        } finally {
+            enqueuedHandle = null;
+        }
+        if (!handle.isBound() && handle.isPending()) {
+            //the scheduler has not enqueued the request, as it was already waiting in the queue
+            RequestHandle pendingHandle = findPendingHandle(request);
+            if (pendingHandle != null) {
+                if (request.getRequestType() == RequestType.FLOOR) {
+                    pendingHandle.addPassenger();
+                }
+                handle.resolveDuplicateOf(pendingHandle);
+                notifyRequestWithdrawn(request, RequestHandle.State.DUPLICATE);
+            } else if (request.getRequestType() != RequestType.FLOOR || !enqueueAfterStopOnFloor(handle)) {
+                handle.resolve(RequestHandle.State.DUPLICATE);
+                notifyRequestWithdrawn(request, RequestHandle.State.DUPLICATE);
+            }
+        } else if (isHallCall && handle.isPending()) {
+            pendingHallCalls.put(hallCallKey(request), handle);
+            trackExpiry(handle);
+        }
+        publishSnapshots();
+        return handle;
+    }
+
+    /**
+     * Lets the press follow the pending hall call as another passenger of it, and pushes the expiry of the call forward.
+     * On its second press the call is taken over by a shared handle, which is followed by the first press as well,
+     * so that every presser can leave the call on their own.
+     *
+     * @param handle        handle of the press
+     * @param pendingHandle handle tracking the pending hall call
+     */
+    private void followHallCall(RequestHandle handle, RequestHandle pendingHandle) {
+        int key = hallCallKey(pendingHandle.getRequest());
+        RequestHandle call = pendingHandle;
+        boolean expiring = expiringHallCalls.remove(pendingHandle);
+        List<RequestHandle> pressers = hallCallPressers.get(key);
+        if (pressers == null) {
+            call = new RequestHandle(this, pendingHandle.getRequest(), pendingHandle.getAcceptedAtStep());
+            call.takeOver(pendingHandle);
+            pendingHallCalls.put(key, call);
+            if (hallCallPool.remove(pendingHandle)) {
+                hallCallPool.add(call);
+            }
+            pressers = new ArrayList<>();
+            pressers.add(pendingHandle);
+            hallCallPressers.put(key, pressers);
+        }
+        call.addPassenger();
+        handle.followAssignment(call);
+        pressers.add(handle);
+        if (expiring) {
+            if (hallCallExpirySteps > 0) {
+                call.extendExpiry(hallCallExpirySteps, stepCount);
+            }
+            expiringHallCalls.add(call);
+        }
+    }
+
+    /**
+     * Removes the resolved hall call from the registry of pending ones, and resolves the presses following it in the same way.
+     *
+     * @param handle handle of the resolved hall call
+     */
+    private void forgetHallCall(RequestHandle handle) {
+        int key = hallCallKey(handle.getRequest());
+        if (pendingHallCalls.remove(key, handle) && !hallCallPressers.isEmpty()) {
+            List<RequestHandle> pressers = hallCallPressers.remove(key);
+            if (pressers != null) {
+                for (int i = 0; i < pressers.size(); i++) {
+                    pressers.get(i).followOutcome(handle);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lets the press leave the shared hall call it follows. The call is cancelled once its last presser leaves.
+     *
+     * @param handle handle of the cancelled press
+     */
+    private void leaveHallCall(RequestHandle handle) {
+        int key = hallCallKey(handle.getRequest());
+        List<RequestHandle> pressers = hallCallPressers.get(key);
+        if (pressers == null || !pressers.remove(handle)) {
+            return;
+        }
+        RequestHandle call = pendingHallCalls.get(key);
+        call.removePassenger();
+        if (pressers.isEmpty()) {
+            hallCallPressers.remove(key);
+            call.cancel();
+        }
+    }
+
+    /**
+     * Enqueues the request like {@link #enqueueRequest(Request)}, but instead of the handle it returns a future
+     * completed when an elevator opens its door for the request, which fails if the request is rejected or resolved in any other way.
+     * Futures are completed by the thread stepping the system as requests are removed from the queues, without scanning pending requests.
+     *
+     * @param request request to be enqueued
+     * @return future of the completion
+     * @see RequestHandle#getCompletion()
+     */
+    public CompletableFuture<RequestCompletion> enqueueRequestAsync(Request request) {
+        return enqueueRequest(request).getCompletion();
+    }
+
+    /**
+     * Finds the handle of an enqueued request equal to the duplicate one.
+     * Another passenger heading to the floor of a FLOOR request is counted by this handle, so that they both leave the elevator there.
+     *
+     * @param request duplicate request
+     * @return handle of the enqueued request, or null if the enqueued request has no handle
+     */
+    private RequestHandle findPendingHandle(Request request) {
+        if (request.getElevatorID() != null) {
+            ElevatorController controller = elevatorControllers.get(request.getElevatorID());
+            return controller != null ? findPendingHandle(request, controller) : null;
+        }
+        for (ElevatorController controller : registeredControllers) {
+            RequestHandle handle = findPendingHandle(request, controller);
+            if (handle != null) {
+                return handle;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Enqueues a FLOOR request which the scheduler has merged into another stop on the same floor, such as a hall call, right after that stop.
+     * Passengers leave the elevator only at FLOOR requests, and the other stop may be moved to another elevator or made by other passengers.
+     *
+     * @param handle handle of the FLOOR request
+     * @return true if the request was enqueued, false if there is no stop on its floor
+     */
+    private boolean enqueueAfterStopOnFloor(RequestHandle handle) {
+        Request request = handle.getRequest();
+        ElevatorController controller = elevatorControllers.get(request.getElevatorID());
+        RequestsQueue lane = controller.getLane(request.getPriority());
+        int index = 1;
+        for (RequestsQueue.Node node = lane.getFirst(); node != null; node = node.getNext(), index++) {
+            if (node.getRequest().getFloor() == request.getFloor()) {
+                enqueuedHandle = handle;
+                try {
+                    lane.add(index, request);
+                } finally {
+                    enqueuedHandle = null;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static RequestHandle findPendingHandle(Request request, ElevatorController controller) {
+        for (RequestsQueue.Node node = controller.getLane(request.getPriority()).getFirst(); node != null; node = node.getNext()) {
+            if (node.getHandle() != null && node.getRequest().equals(request)) {
+                return node.getHandle();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Accepts the hall call without scheduling it, it waits in the pool until it is bound to an elevator.
+     *
+     * @param handle handle of the hall call
+     */
+    private void poolHallCall(RequestHandle handle) {
+        hallCallPool.add(handle);
+        pendingHallCalls.put(hallCallKey(handle.getRequest()), handle);
+        trackExpiry(handle);
+        notifyRequestAccepted(handle.getRequest());
+    }
+
+    /**
+     * Schedules the hall call which was taken out of the pool, in the same way as if it has just arrived.
+     *
+     * @param handle handle of the hall call
+     */
+    private void schedulePooledHallCall(RequestHandle handle) {
+        enqueuedHandle = handle;
+        try {
+            scheduler.enqueuePickupRequest(handle.getRequest(), controllersList);
+        } catch (ElevatorsSystemException e) {
+            handle.reject(e);
+        } finally {
+            enqueuedHandle = null;
+        }
+        if (!handle.isBound()) {
+            handle.resolve(RequestHandle.State.DUPLICATE);
+            forgetHallCall(handle);
+        }
+    }
+
+    /**
+     * Binds pooled hall calls to elevators which are free or which are about to pass them, as long as they have room for passengers.
+     * Every elevator takes at most one call per step.
+     */
+    private void bindPooledHallCalls() {
+        for (ElevatorController controller : registeredControllers) {
+            if (hallCallPool.isEmpty()) {
+                return;
+            }
+            int currentFloor = controller.getCurrentFloor();
+            RequestHandle handle = null;
+            if (controller.isInactive() && !controller.isFull()) {
+                handle = hallCallPool.nearest(currentFloor);
+            } else if (controller.numberOfRequestsEnqueued() == controller.getRequestsQueue().size() && !controller.isFull()) {
+                //only elevators serving ordinary requests and having room for passengers take calls on their way
+                int destinationFloor = controller.getDestinationFloor();
+                if (destinationFloor > currentFloor) {
+                    handle = hallCallPool.nearestAhead(RequestType.UP, currentFloor, Math.min(currentFloor + lateBindingHorizon, destinationFloor));
+                } else if (destinationFloor < currentFloor) {
+                    handle = hallCallPool.nearestAhead(RequestType.DOWN, currentFloor, Math.max(currentFloor - lateBindingHorizon, destinationFloor));
+                }
+            }
+            if (handle != null) {
+                hallCallPool.remove(handle);
+                enqueuedHandle = handle;
+                try {
+                    controller.getRequestsQueue().add(0, handle.getRequest());
+                } finally {
+                    enqueuedHandle = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the withdrawn hall call from the pool, if it was not bound to any elevator yet,
+     * or lets the withdrawn press leave the shared hall call it follows.
+     *
+     * @param handle handle of the withdrawn request
+     */
+    void withdrawUnbound(RequestHandle handle) {
+        if (hallCallPool.remove(handle)) {
+            forgetHallCall(handle);
+            notifyRequestWithdrawn(handle.getRequest(), handle.getState());
+        } else if (isHallCall(handle.getRequest())) {
+            leaveHallCall(handle);
+        }
+    }
+
+    private static boolean isHallCall(Request request) {
+        return (request.getRequestType() == RequestType.UP || request.getRequestType() == RequestType.DOWN)
+                && request.getPriority() == RequestPriority.NORMAL;
+    }
+
+    /**
+     * Creates a key of a hall call, unique for its floor and direction.
+     *
+     * @param request UP or DOWN request
+     * @return key of the hall call
+     */
+    static int hallCallKey(Request request) {
+        return (request.getFloor() << 1) | (request.getRequestType() == RequestType.UP ? 0 : 1);
+    }
+
+    /**
+     * Submits a new request from any thread.
+     * Unlike {@link #enqueueRequest(Request)}, the request is not scheduled immediately,
+     * but it is dispatched by the thread stepping the system at the beginning of its next step.
+     *
+     * @param request request to be enqueued
+     * @see RealTimeDriver
+     */
+    public void submitRequest(Request request) {
+        if (request == null) {
+            System.err.println("Failed to submit an empty request");
+            return;
+        }
+        submittedRequests.add(request);
+    }
+
+    /**
+     * Registers a source of requests, which will be drained every time submitted requests are dispatched.
+     *
+     * @param requestSource source to be registered
+     */
+    public void addRequestSource(RequestSource requestSource) {
+        requestSources.add(requestSource);
+    }
+
+    /**
+     * Unregisters previously registered source of requests.
+     *
+     * @param requestSource source to be unregistered
+     */
+    public void removeRequestSource(RequestSource requestSource) {
+        requestSources.remove(requestSource);
+    }
+
+    /**
+     * Enqueues every request submitted by {@link #submitRequest(Request)} so far, in order of submission,
+     * and then every request collected by registered {@link RequestSource} sources.
+     * Should be called only by the thread which steps the system.
+     *
+     * @return number of dispatched requests
+     */
+    public int dispatchSubmittedRequests() {
+        int dispatched = 0;
+        Request request;
+        while ((request = submittedRequests.poll()) != null) {
+            enqueueRequest(request);
+            dispatched++;
         }
+        for (RequestSource requestSource : requestSources) {
+            dispatched += requestSource.dispatchRequests(this);
+        }
+        return dispatched;
     }
 
     /**
      * Makes a single simulation step of elevators system's work schedule.
      * <p>
      * Every elevator controller checks its queue and performs single operation depending on first request in the queue.
+     * Idle controllers, with no requests and opened door, are not stepped at all, as the step would not change them.
      *
      * @see ElevatorController for more information about proceeding requests
      */
     public void makeSimulationStep() {
-        for (ElevatorController controller : elevatorControllers.values()) {
-            controller.makeOneStep();
+        SimulationStepEvent event = SimulationStepEvent.start();
+        stepCount++;
+        expireHallCalls();
+        if (!hallCallPool.isEmpty()) {
+            bindPooledHallCalls();
+        }
+        int steppedControllers = activeControllers.size();
+        int completedRequests = 0;
+        int i = 0;
+        while (i < activeControllers.size()) {
+            ElevatorController controller = activeControllers.get(i);
+            //the only request removed during the step is the completed one
+            removalOutcome = RequestHandle.State.COMPLETED;
+            Request completedRequest = controller.makeOneStep();
+            removalOutcome = RequestHandle.State.DISCARDED;
+            if (completedRequest != null) {
+                completedRequests++;
+                notifyRequestCompleted(controller.getElevatorID(), completedRequest);
+            }
+            controller.publishSnapshot();
+            if (controller.isIdle()) {
+                //snapshot of the idle state is already published, so the controller can be left alone
+                deactivate(i);
+            } else {
+                i++;
+            }
+            statusesOutdated = true;
+        }
+        if (!leftBehindPassengers.isEmpty()) {
+            callAgainForLeftBehindPassengers();
+        }
+        if (workStealing) {
+            stealHallCalls();
+        }
+        SimulationStepEvent.commit(event, steppedControllers, completedRequests, requestsEnqueued);
+        for (ElevatorsSystemListener listener : listeners) {
+            listener.onSimulationStep(this);
         }
     }
 
@@ -99,13 +684,46 @@ public class ElevatorsSystem {
      * @param startFloor floor on which elevator starts its work
      */
     public void registerElevator(Integer elevatorID, int startFloor) {
-        if (elevatorControllers.size() == ELEVATORS_LIMIT || elevatorControllers.containsKey(elevatorID)) {
+        registerElevator(elevatorID, startFloor, Elevator.UNLIMITED_CAPACITY);
+    }
+
+    /**
+     * Registers new elevator in the system, which can carry a limited number of passengers.
+     * Passengers board the elevator at hall calls, one per press of the hall call, and leave it at the floors they have requested.
+     * Schedulers do not send full elevators to hall calls, unless every elevator is full.
+     *
+     * @param elevatorID ID of elevator to be registered
+     * @param startFloor floor on which elevator starts its work
+     * @param capacity   maximum number of passengers
+     */
+    public void registerElevator(Integer elevatorID, int startFloor, int capacity) {
+        registerElevator(elevatorID, startFloor, capacity, 0);
+    }
+
+    /**
+     * Registers new elevator in the system, which already carries passengers, for example when the elevator is restored from another system.
+     * The passengers leave the elevator at the floors of FLOOR requests, which should be enqueued once per passenger,
+     * as given by {@link #getPassengerRequests(Integer)}.
+     *
+     * @param elevatorID ID of elevator to be registered
+     * @param startFloor floor on which elevator starts its work
+     * @param capacity   maximum number of passengers
+     * @param passengers number of passengers in the elevator
+     */
+    public void registerElevator(Integer elevatorID, int startFloor, int capacity, int passengers) {
+        if (elevatorControllers.size() == ELEVATORS_LIMIT || elevatorControllers.containsKey(elevatorID) || capacity <= 0
+                || passengers < 0 || passengers > capacity) {
             System.err.println("Failed to register elevator with ID: " + elevatorID.toString());
             return;
         }
-        Elevator elevator = new Elevator(elevatorID, startFloor);
+        Elevator elevator = new Elevator(elevatorID, startFloor, capacity);
+        elevator.setPassengers(passengers);
         ElevatorController controller = new ElevatorController(elevator);
+        controller.setListener(controllerListener);
         elevatorControllers.put(elevatorID, controller);
+        registeredControllers = elevatorControllers.values().toArray(new ElevatorController[0]);
+        controllersList = Collections.unmodifiableList(Arrays.asList(registeredControllers));
+        statusesOutdated = true;
     }
 
     /**
@@ -125,10 +743,85 @@ public class ElevatorsSystem {
         Request request = RequestFactory.createRestartRequest(elevatorID, destinationFloor);
         try {
             scheduler.enqueueInternalRequest(request, controller);
+            notifyRequestAccepted(request);
         } catch (ElevatorsSchedulerException e) {
             //unlikely to happen as created request is validated with use of factory design pattern
             System.err.println(e.getMessage());
         }
+        controller.publishSnapshot();
+        statusesOutdated = true;
+    }
+
+    /**
+     * Replaces queues of ordinary requests of given elevators with planned ones, moving requests between them.
+     * Handles of moved requests stay bound to them, so moved requests remain pending.
+     * <p>
+     * The queues are replaced only if each of them still holds exactly the expected requests,
+     * otherwise nothing is changed, so a plan computed from an outdated state is never applied.
+     * Should be called only by the thread which steps the system.
+     *
+     * @param elevatorIDs    IDs of elevators which queues are replaced
+     * @param expectedQueues requests which the queues should hold now
+     * @param plannedQueues  requests which the queues should hold after the change, the same ones in total as expected
+     * @return true if the queues were replaced, otherwise false
+     */
+    boolean reassignRequests(List<Integer> elevatorIDs, List<List<Request>> expectedQueues, List<List<Request>> plannedQueues) {
+        List<RequestsQueue> queues = new ArrayList<>(elevatorIDs.size());
+        int expectedRequests = 0;
+        int plannedRequests = 0;
+        for (int i = 0; i < elevatorIDs.size(); i++) {
+            ElevatorController controller = elevatorControllers.get(elevatorIDs.get(i));
+            if (controller == null || !holdsExactly(controller.getRequestsQueue(), expectedQueues.get(i))) {
+                return false;
+            }
+            queues.add(controller.getRequestsQueue());
+            expectedRequests += expectedQueues.get(i).size();
+            plannedRequests += plannedQueues.get(i).size();
+        }
+        if (expectedRequests != plannedRequests) {
+            return false;
+        }
+
+        //detach handles from the nodes, so that removing the nodes does not resolve the requests
+        Map<Request, RequestHandle> handles = new IdentityHashMap<>();
+        for (RequestsQueue queue : queues) {
+            RequestsQueue.Node node = queue.getFirst();
+            while (node != null) {
+                RequestsQueue.Node next = node.getNext();
+                RequestHandle handle = node.getHandle();
+                if (handle != null) {
+                    handles.put(node.getRequest(), handle);
+                    handle.detach(node);
+                }
+                node.remove();
+                node = next;
+            }
+        }
+        try {
+            for (int i = 0; i < queues.size(); i++) {
+                for (Request request : plannedQueues.get(i)) {
+                    enqueuedHandle = handles.get(request);
+                    queues.get(i).add(request);
+                }
+            }
+        } finally {
+            enqueuedHandle = null;
+        }
+        publishSnapshots();
+        return true;
+    }
+
+    private static boolean holdsExactly(RequestsQueue queue, List<Request> requests) {
+        if (queue.size() != requests.size()) {
+            return false;
+        }
+        int i = 0;
+        for (RequestsQueue.Node node = queue.getFirst(); node != null; node = node.getNext()) {
+            if (node.getRequest() != requests.get(i++)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -143,16 +836,367 @@ public class ElevatorsSystem {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Get snapshots of every elevator registered in the system, as they were published after the last change of their state.
+     * Snapshots are immutable, so it is safe to call this method from any thread, concurrently with the simulation steps.
+     *
+     * @return list of {@link ElevatorSnapshot} snapshots of system's elevators
+     */
+    public List<ElevatorSnapshot> getElevatorsSnapshots() {
+        ElevatorController[] controllers = registeredControllers;
+        List<ElevatorSnapshot> snapshots = new ArrayList<>(controllers.length);
+        for (ElevatorController controller : controllers) {
+            snapshots.add(controller.getPublishedSnapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Gets requests enqueued to the elevator in the order they will be served, each repeated once per passenger who has made it.
+     * Enqueuing them again, for example in another system, restores both the requests and the passengers waiting for them.
+     * Unlike snapshots, it reads the queues directly, so it should be called only by the thread stepping the system.
+     *
+     * @param elevatorID ID of the elevator
+     * @return requests of the elevator's passengers, empty if the elevator is not registered
+     */
+    public List<Request> getPassengerRequests(Integer elevatorID) {
+        ElevatorController controller = elevatorControllers.get(elevatorID);
+        if (controller == null) {
+            return Collections.emptyList();
+        }
+        List<Request> requests = new ArrayList<>();
+        RequestPriority[] priorities = RequestPriority.values();
+        for (int p = priorities.length - 1; p >= 0; p--) {
+            for (RequestsQueue.Node node = controller.getLane(priorities[p]).getFirst(); node != null; node = node.getNext()) {
+                int passengers = node.getHandle() == null ? 1 : node.getHandle().getPassengers();
+                for (int i = 0; i < passengers; i++) {
+                    requests.add(node.getRequest());
+                }
+            }
+        }
+        return requests;
+    }
+
+    private void notifyRequestAccepted(Request request) {
+        for (ElevatorsSystemListener listener : listeners) {
+            listener.onRequestAccepted(request);
+        }
+    }
+
+    private void notifyRequestAssigned(Integer elevatorID, Request request) {
+        for (ElevatorsSystemListener listener : listeners) {
+            listener.onRequestAssigned(elevatorID, request);
+        }
+    }
+
+    private void notifyRequestCompleted(Integer elevatorID, Request request) {
+        for (ElevatorsSystemListener listener : listeners) {
+            listener.onRequestCompleted(elevatorID, request);
+        }
+    }
+
+    private void notifyRequestWithdrawn(Request request, RequestHandle.State state) {
+        for (ElevatorsSystemListener listener : listeners) {
+            listener.onRequestWithdrawn(request, state);
+        }
+    }
+
+    private void notifyPassengersBoarded(Integer elevatorID, Request request, int passengers) {
+        for (ElevatorsSystemListener listener : listeners) {
+            listener.onPassengersBoarded(elevatorID, request, passengers);
+        }
+    }
+
+    private void notifyBoardingRejected(Integer elevatorID, Request request, int passengers) {
+        for (ElevatorsSystemListener listener : listeners) {
+            listener.onBoardingRejected(elevatorID, request, passengers);
+        }
+    }
+
+    /**
+     * Lets passengers board the elevator at a completed hall call, or leave it at a completed FLOOR request.
+     * Passengers who do not fit into the elevator are left behind, to call again at the end of the step.
+     *
+     * @param controller controller which has completed the request
+     * @param request    completed request
+     * @param passengers number of passengers who have made the request
+     */
+    private void exchangePassengers(ElevatorController controller, Request request, int passengers) {
+        RequestType requestType = request.getRequestType();
+        if (requestType == RequestType.FLOOR) {
+            controller.alight(passengers);
+        } else if (requestType == RequestType.UP || requestType == RequestType.DOWN) {
+            int boarded = controller.board(passengers);
+            if (boarded > 0) {
+                notifyPassengersBoarded(controller.getElevatorID(), request, boarded);
+            }
+            int rejected = passengers - boarded;
+            if (rejected > 0) {
+                rejectedBoardings += rejected;
+                for (int i = 0; i < rejected; i++) {
+                    leftBehindPassengers.add(request);
+                    leftBehindBy.add(controller);
+                }
+                notifyBoardingRejected(controller.getElevatorID(), request, rejected);
+            }
+        }
+    }
+
+    /**
+     * Enqueues hall calls of passengers left behind by full elevators, so that they are scheduled again.
+     * Passengers of the same hall call are coalesced onto a single new hall call.
+     * The call is not scheduled to the elevator which has just left the passengers behind, unless it is the only one.
+     */
+    private void callAgainForLeftBehindPassengers() {
+        for (int i = 0; i < leftBehindPassengers.size(); i++) {
+            ElevatorController rejectingController = leftBehindBy.get(i);
+            recallControllers.clear();
+            for (ElevatorController controller : registeredControllers) {
+                if (controller != rejectingController) {
+                    recallControllers.add(controller);
+                }
+            }
+            enqueueRequest(leftBehindPassengers.get(i), recallControllers.isEmpty() ? controllersList : recallControllers);
+        }
+        recallControllers.clear();
+        leftBehindPassengers.clear();
+        leftBehindBy.clear();
+    }
+
+    /**
+     * Listener of controllers' lanes.
+     * Keeps the number of enqueued requests, activates changed controllers and binds requests to their handles.
+     */
+    private class ControllerListener implements ElevatorController.Listener {
+        @Override
+        public void onRequestAdded(ElevatorController controller, RequestsQueue.Node node) {
+            requestsEnqueued++;
+            activate(controller);
+            if (QueueLengthEvent.isTypeEnabled()) {
+                QueueLengthEvent.emit(controller.getElevatorID(), controller.numberOfRequestsEnqueued(), 1);
+            }
+            if (enqueuedHandle != null && node.getRequest() == enqueuedHandle.getRequest()) {
+                enqueuedHandle.bind(node, controller.getElevatorID());
+                if (!hallCallPressers.isEmpty() && isHallCall(node.getRequest())) {
+                    //shared hall call bound after late binding
+                    List<RequestHandle> pressers = hallCallPressers.get(hallCallKey(node.getRequest()));
+                    if (pressers != null && pendingHallCalls.get(hallCallKey(node.getRequest())) == enqueuedHandle) {
+                        for (int i = 0; i < pressers.size(); i++) {
+                            pressers.get(i).followAssignment(enqueuedHandle);
+                        }
+                    }
+                }
+                notifyRequestAssigned(controller.getElevatorID(), node.getRequest());
+            }
+        }
+
+        @Override
+        public void onRequestRemoved(ElevatorController controller, RequestsQueue.Node node) {
+            requestsEnqueued--;
+            activate(controller);
+            if (QueueLengthEvent.isTypeEnabled()) {
+                QueueLengthEvent.emit(controller.getElevatorID(), controller.numberOfRequestsEnqueued(), -1);
+            }
+            RequestHandle handle = node.getHandle();
+            if (removalOutcome == RequestHandle.State.COMPLETED) {
+                exchangePassengers(controller, node.getRequest(), handle == null ? 1 : handle.getPassengers());
+            }
+            if (handle == null) {
+                return;
+            }
+            handle.onNodeRemoved(node, removalOutcome, controller.getElevatorID(), stepCount);
+            if (!handle.isPending() && isHallCall(handle.getRequest())) {
+                forgetHallCall(handle);
+            }
+            RequestHandle.State state = handle.getState();
+            if (!handle.isBound() && (state == RequestHandle.State.CANCELLED || state == RequestHandle.State.EXPIRED)) {
+                //the last node of withdrawn request was removed
+                notifyRequestWithdrawn(handle.getRequest(), state);
+            }
+        }
+    }
+
+    /**
+     * Passes the last published snapshot of every elevator to given consumer.
+     * Unlike {@link #getElevatorsSnapshots()} it does not create any collection, so it is suitable for periodic monitoring.
+     * It is safe to call this method from any thread.
+     *
+     * @param consumer consumer of the snapshots
+     */
+    public void forEachSnapshot(Consumer<ElevatorSnapshot> consumer) {
+        for (ElevatorController controller : registeredControllers) {
+            consumer.accept(controller.getPublishedSnapshot());
+        }
+    }
+
+    /**
+     * Publishes snapshots of controllers which state has changed.
+     * Only active controllers are checked, as controllers are activated whenever their queue changes.
+     */
+    void publishSnapshots() {
+        for (int i = 0; i < activeControllers.size(); i++) {
+            activeControllers.get(i).publishSnapshot();
+        }
+        if (!activeControllers.isEmpty()) {
+            statusesOutdated = true;
+        }
+    }
+
+    /**
+     * Activates the controller, so that it is stepped during the simulation.
+     *
+     * @param controller controller which queue has changed
+     */
+    private void activate(ElevatorController controller) {
+        if (!controller.isScheduledForStep()) {
+            controller.setScheduledForStep(true);
+            activeControllers.add(controller);
+        }
+    }
+
+    /**
+     * Fixes the maximum age of the accepted hall call to the current setting, and tracks it if the hall call expires at all.
+     *
+     * @param handle handle of the accepted hall call
+     */
+    private void trackExpiry(RequestHandle handle) {
+        if (hallCallExpirySteps > 0) {
+            handle.setExpirySteps(hallCallExpirySteps);
+            expiringHallCalls.add(handle);
+        }
+    }
+
+    /**
+     * Removes pending hall calls which have been waiting longer than allowed.
+     * Handles are checked in order of their expiry, so only the expired ones and the first valid one are visited.
+     */
+    private void expireHallCalls() {
+        RequestHandle handle;
+        while ((handle = expiringHallCalls.peek()) != null) {
+            if (handle.isPending() && stepCount <= handle.getExpiresAtStep()) {
+                return;
+            }
+            expiringHallCalls.poll();
+            handle.expire();
+        }
+    }
+
+    /**
+     * Lets every inactive controller steal a single hall call, the one it would reach the most steps sooner than its current elevator.
+     * Only the last hall call of every queue is considered, as it is served the latest.
+     * Called at the end of a step, when no controller is being stepped, so requests are moved by the only thread which modifies queues.
+     */
+    private void stealHallCalls() {
+        boolean stolen = false;
+        for (ElevatorController thief : registeredControllers) {
+            if (!thief.isInactive() || thief.isFull()) {
+                //full elevator would only leave the passengers of the stolen call behind
+                continue;
+            }
+            RequestsQueue.Node bestNode = null;
+            int bestGain = 0;
+            for (ElevatorController victim : registeredControllers) {
+                if (victim == thief || victim.getRequestsQueue().size() < STEALING_THRESHOLD) {
+                    continue;
+                }
+                RequestsQueue.Node node = victim.getRequestsQueue().getLast();
+                while (node != null && !isHallCall(node.getRequest())) {
+                    node = node.getPrevious();
+                }
+                if (node == null) {
+                    continue;
+                }
+                int floor = node.getRequest().getFloor();
+                int gain = victim.calculateStepsToReachFloor(floor) - thief.calculateStepsToReachFloor(floor);
+                if (gain > bestGain) {
+                    bestGain = gain;
+                    bestNode = node;
+                }
+            }
+            if (bestNode != null) {
+                moveNode(bestNode, thief.getRequestsQueue());
+                stolen = true;
+            }
+        }
+        if (stolen) {
+            publishSnapshots();
+        }
+    }
+
+    /**
+     * Moves the request of the node to the tail of another queue, keeping its handle bound to it, so that the request remains pending.
+     *
+     * @param node  node holding the request
+     * @param queue queue to receive the request
+     */
+    private void moveNode(RequestsQueue.Node node, RequestsQueue queue) {
+        RequestHandle handle = node.getHandle();
+        if (handle != null) {
+            handle.detach(node);
+        }
+        node.remove();
+        enqueuedHandle = handle;
+        try {
+            queue.add(node.getRequest());
+        } finally {
+            enqueuedHandle = null;
+        }
+    }
+
+    /**
+     * Removes the controller at given index from active controllers, replacing it with the last one.
+     *
+     * @param index index of the controller to be removed
+     */
+    private void deactivate(int index) {
+        int last = activeControllers.size() - 1;
+        activeControllers.get(index).setScheduledForStep(false);
+        activeControllers.set(index, activeControllers.get(last));
+        activeControllers.remove(last);
+    }
+
+    /**
+     * Get statuses of every elevator, as they were published after the last step made by {@link RealTimeDriver}.
+     * In contrast to {@link #getElevatorsStatuses()}, it is safe to call this method from any thread.
+     *
+     * @return unmodifiable list of {@link ElevatorStatus} statuses of system's elevators
+     */
+    public List<ElevatorStatus> getPublishedStatuses() {
+        return publishedStatuses;
+    }
+
+    /**
+     * Publishes current statuses of the elevators, so that they are visible to {@link #getPublishedStatuses()} readers.
+     * Previously published statuses are kept if no elevator has changed since then.
+     */
+    void publishStatuses() {
+        if (!statusesOutdated) {
+            return;
+        }
+        statusesOutdated = false;
+        List<ElevatorStatus> statuses = new ArrayList<>(elevatorControllers.size());
+        for (ElevatorController controller : elevatorControllers.values()) {
+            statuses.add(controller.getSnapshot().toElevatorStatus());
+        }
+        publishedStatuses = Collections.unmodifiableList(statuses);
+    }
+
     /**
      * Checks whether there are any awaiting requests in the system.
      *
-     * @return true if there are any requests in any controller's queue, otherwise false
+     * @return true if there are any requests in any controller's queue or any hall calls waiting for late binding, otherwise false
      */
     public boolean isAnyRequestUnprocessed() {
-        return !elevatorControllers
-                .values()
-                .stream()
-                .allMatch(ElevatorController::isInactive);
+        return requestsEnqueued > 0 || !hallCallPool.isEmpty();
+    }
+
+    /**
+     * Counts hall calls waiting for late binding, which are not enqueued to any controller yet.
+     *
+     * @return number of pooled hall calls
+     */
+    public int numberOfRequestsPooled() {
+        return hallCallPool.size();
     }
 
     /**
@@ -161,10 +1205,15 @@ public class ElevatorsSystem {
      * @return total number of all requests enqueued to all controllers
      */
     public int numberOfRequestsEnqueued() {
-        int totalRequests = 0;
-        for (ElevatorController controller : elevatorControllers.values()) {
-            totalRequests += controller.getRequestsQueue().size();
-        }
-        return totalRequests;
+        return requestsEnqueued;
+    }
+
+    /**
+     * Counts passengers who could not board an elevator which has opened its door for them, because it was full.
+     *
+     * @return number of rejected boardings so far
+     */
+    public long getRejectedBoardings() {
+        return rejectedBoardings;
     }
 }
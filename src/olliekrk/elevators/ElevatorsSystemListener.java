@@ -0,0 +1,82 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.requests.Request;
+
+/**
+ * Listener of events happening in {@link ElevatorsSystem}.
+ * Part of an "Observer" design pattern.
+ * <p>
+ * Listeners are notified synchronously by the thread which steps the system,
+ * so they should return quickly and hand off any expensive work to other threads.
+ */
+public interface ElevatorsSystemListener {
+    /**
+     * Called after the request was successfully enqueued by the system's scheduler.
+     *
+     * @param request accepted request
+     */
+    default void onRequestAccepted(Request request) {
+    }
+
+    /**
+     * Called after an accepted request was put into the queue of an elevator.
+     * For requests scheduled on arrival it is called before {@link #onRequestAccepted(Request)}.
+     * It is called again whenever the request is moved to another elevator, and later for hall calls bound with late binding.
+     *
+     * @param elevatorID ID of the elevator which received the request
+     * @param request    assigned request
+     */
+    default void onRequestAssigned(Integer elevatorID, Request request) {
+    }
+
+    /**
+     * Called after an elevator has opened its door on requested floor and removed the request from its queue.
+     *
+     * @param elevatorID ID of the elevator which completed the request
+     * @param request    completed request
+     */
+    default void onRequestCompleted(Integer elevatorID, Request request) {
+    }
+
+    /**
+     * Called after a pending request was cancelled or it has expired, and it was removed from the queues.
+     * It is also called right after an accepted request turned out to be a duplicate of a request which was already enqueued,
+     * so that every accepted request is eventually either completed or withdrawn.
+     *
+     * @param request withdrawn request
+     * @param state   state of the request, {@link RequestHandle.State#CANCELLED}, {@link RequestHandle.State#EXPIRED}
+     *                or {@link RequestHandle.State#DUPLICATE}
+     */
+    default void onRequestWithdrawn(Request request, RequestHandle.State state) {
+    }
+
+    /**
+     * Called when passengers board an elevator which has opened its door for their hall call.
+     * They leave the elevator at the floors of FLOOR requests, so every passenger should request a floor.
+     *
+     * @param elevatorID ID of the elevator
+     * @param request    hall call of the passengers
+     * @param passengers number of passengers who have boarded
+     */
+    default void onPassengersBoarded(Integer elevatorID, Request request, int passengers) {
+    }
+
+    /**
+     * Called when an elevator opens its door for a hall call, but some of the waiting passengers cannot board it, as it is full.
+     * The passengers who were left behind make the hall call again at the end of the step.
+     *
+     * @param elevatorID ID of the full elevator
+     * @param request    hall call of the passengers
+     * @param passengers number of passengers who were left behind
+     */
+    default void onBoardingRejected(Integer elevatorID, Request request, int passengers) {
+    }
+
+    /**
+     * Called at the end of every simulation step, after snapshots of the elevators were published.
+     *
+     * @param system system which has made the step
+     */
+    default void onSimulationStep(ElevatorsSystem system) {
+    }
+}
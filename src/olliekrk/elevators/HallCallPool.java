@@ -0,0 +1,110 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.requests.RequestType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of hall calls which are accepted by the system, but not yet bound to any elevator.
+ * <p>
+ * Calls are indexed by direction and floor in sorted maps, so the nearest call to a floor,
+ * or the nearest call ahead of an elevator in its direction, is found in logarithmic time.
+ * Repeated presses are coalesced by {@link ElevatorsSystem} before they reach the pool, so there is at most one call per floor and direction.
+ */
+class HallCallPool {
+    private final TreeMap<Integer, RequestHandle> upCalls;
+    private final TreeMap<Integer, RequestHandle> downCalls;
+
+    HallCallPool() {
+        this.upCalls = new TreeMap<>();
+        this.downCalls = new TreeMap<>();
+    }
+
+    int size() {
+        return upCalls.size() + downCalls.size();
+    }
+
+    boolean isEmpty() {
+        return upCalls.isEmpty() && downCalls.isEmpty();
+    }
+
+    void add(RequestHandle handle) {
+        callsOf(handle.getRequest().getRequestType()).put(handle.getRequest().getFloor(), handle);
+    }
+
+    /**
+     * Removes the hall call from the pool.
+     *
+     * @param handle handle of the hall call
+     * @return true if the call was in the pool
+     */
+    boolean remove(RequestHandle handle) {
+        return callsOf(handle.getRequest().getRequestType()).remove(handle.getRequest().getFloor(), handle);
+    }
+
+    /**
+     * Finds the call on the floor nearest to given one, in any direction.
+     * Of equally distant calls, UP calls are preferred, and then calls on the lower floor.
+     *
+     * @param floor floor of an elevator
+     * @return handle of the nearest call or null if the pool is empty
+     */
+    RequestHandle nearest(int floor) {
+        Map.Entry<Integer, RequestHandle> nearest = null;
+        nearest = closer(upCalls.floorEntry(floor), nearest, floor);
+        nearest = closer(upCalls.ceilingEntry(floor), nearest, floor);
+        nearest = closer(downCalls.floorEntry(floor), nearest, floor);
+        nearest = closer(downCalls.ceilingEntry(floor), nearest, floor);
+        return (nearest == null) ? null : nearest.getValue();
+    }
+
+    private static Map.Entry<Integer, RequestHandle> closer(Map.Entry<Integer, RequestHandle> candidate,
+                                                             Map.Entry<Integer, RequestHandle> nearest, int floor) {
+        if (candidate == null) {
+            return nearest;
+        }
+        if (nearest == null || Math.abs(candidate.getKey() - floor) < Math.abs(nearest.getKey() - floor)) {
+            return candidate;
+        }
+        return nearest;
+    }
+
+    /**
+     * Finds the call in given direction on the nearest floor ahead of an elevator travelling in that direction.
+     *
+     * @param direction UP or DOWN
+     * @param fromFloor floor of the elevator, excluded from the search
+     * @param toFloor   farthest floor ahead of the elevator, included in the search
+     * @return handle of the nearest call ahead or null if there is no such call
+     */
+    RequestHandle nearestAhead(RequestType direction, int fromFloor, int toFloor) {
+        Map.Entry<Integer, RequestHandle> entry = (direction == RequestType.UP)
+                ? upCalls.higherEntry(fromFloor)
+                : downCalls.lowerEntry(fromFloor);
+        if (entry == null) {
+            return null;
+        }
+        boolean inRange = (direction == RequestType.UP) ? entry.getKey() <= toFloor : entry.getKey() >= toFloor;
+        return inRange ? entry.getValue() : null;
+    }
+
+    /**
+     * Removes every call from the pool.
+     *
+     * @return handles of removed calls
+     */
+    List<RequestHandle> drain() {
+        List<RequestHandle> handles = new ArrayList<>(upCalls.values());
+        handles.addAll(downCalls.values());
+        upCalls.clear();
+        downCalls.clear();
+        return handles;
+    }
+
+    private TreeMap<Integer, RequestHandle> callsOf(RequestType direction) {
+        return (direction == RequestType.UP) ? upCalls : downCalls;
+    }
+}
@@ -0,0 +1,104 @@
+package olliekrk.elevators;
+
+/**
+ * Candidate insertion of a request into the queue of an elevator, evaluated by {@link SchedulerCostFunction}.
+ * <p>
+ * Describes how the insertion would change the elevator's route, in simulation steps and floors.
+ * A single instance is reused for every candidate, so its values are valid only during the call to {@link CostTerm#cost(Insertion)}.
+ */
+public final class Insertion {
+    private int elevatorID;
+    private int index;
+    private int queueLength;
+    private int waitSteps;
+    private int stopsBefore;
+    private int delayedRequests;
+    private int delaySteps;
+    private int addedDistance;
+    private int passengers;
+    private int capacity;
+
+    Insertion() {
+    }
+
+    void set(int elevatorID, int index, int queueLength, int waitSteps, int stopsBefore,
+             int delayedRequests, int delaySteps, int addedDistance, int passengers, int capacity) {
+        this.elevatorID = elevatorID;
+        this.index = index;
+        this.queueLength = queueLength;
+        this.waitSteps = waitSteps;
+        this.stopsBefore = stopsBefore;
+        this.delayedRequests = delayedRequests;
+        this.delaySteps = delaySteps;
+        this.addedDistance = addedDistance;
+        this.passengers = passengers;
+        this.capacity = capacity;
+    }
+
+    public int getElevatorID() {
+        return elevatorID;
+    }
+
+    /**
+     * Gets the index in the queue of ordinary requests at which the request would be inserted.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the number of requests enqueued to the elevator before the insertion, in all lanes.
+     */
+    public int getQueueLength() {
+        return queueLength;
+    }
+
+    /**
+     * Gets the number of steps after which the elevator would open its door for the request.
+     */
+    public int getWaitSteps() {
+        return waitSteps;
+    }
+
+    /**
+     * Gets the number of stops the elevator would make before serving the request.
+     */
+    public int getStopsBefore() {
+        return stopsBefore;
+    }
+
+    /**
+     * Gets the number of enqueued requests which would be served later because of the insertion.
+     */
+    public int getDelayedRequests() {
+        return delayedRequests;
+    }
+
+    /**
+     * Gets the number of steps by which each of the delayed requests would be served later.
+     */
+    public int getDelaySteps() {
+        return delaySteps;
+    }
+
+    /**
+     * Gets the number of floors the elevator would additionally travel because of the insertion.
+     */
+    public int getAddedDistance() {
+        return addedDistance;
+    }
+
+    /**
+     * Gets the number of passengers riding the elevator before the insertion.
+     */
+    public int getPassengers() {
+        return passengers;
+    }
+
+    /**
+     * Gets the maximum number of passengers the elevator can carry, {@link Elevator#UNLIMITED_CAPACITY} if it is not limited.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
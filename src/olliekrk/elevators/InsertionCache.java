@@ -0,0 +1,145 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.requests.RequestType;
+
+import java.util.Arrays;
+
+/**
+ * Cache of values computed by schedulers for a single {@link ElevatorController}, such as the number of steps
+ * required to reach a floor or the index at which a request would be inserted to the queue.
+ * <p>
+ * Every value is valid only for the controller's version it was computed at.
+ * When the controller's state changes, all cached values are dropped on the next access.
+ * Values are stored in open-addressing arrays keyed by request type and floor, so lookups do not allocate.
+ */
+class InsertionCache {
+    /**
+     * Value returned when there is nothing cached for the key.
+     */
+    static final int MISSING = Integer.MIN_VALUE;
+    private static final int EMPTY_KEY = Integer.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int REQUEST_TYPES = RequestType.values().length;
+
+    private int[] keys;
+    private int[] steps;
+    private int[] indexes;
+    private int size;
+    /**
+     * Version of the controller for which cached values are valid.
+     */
+    private long version;
+
+    InsertionCache() {
+        allocate(INITIAL_CAPACITY);
+        this.version = -1;
+    }
+
+    /**
+     * Gets cached number of steps to complete a request of given type and floor.
+     *
+     * @param version     current version of the controller
+     * @param requestType type of the request
+     * @param floor       requested floor
+     * @return cached number of steps or {@link #MISSING}
+     */
+    int getSteps(long version, RequestType requestType, int floor) {
+        int slot = find(version, requestType, floor);
+        return slot < 0 ? MISSING : steps[slot];
+    }
+
+    /**
+     * Gets cached index in the queue at which a request of given type and floor would be inserted.
+     *
+     * @param version     current version of the controller
+     * @param requestType type of the request
+     * @param floor       requested floor
+     * @return cached index or {@link #MISSING}
+     */
+    int getIndex(long version, RequestType requestType, int floor) {
+        int slot = find(version, requestType, floor);
+        return slot < 0 ? MISSING : indexes[slot];
+    }
+
+    void putSteps(long version, RequestType requestType, int floor, int value) {
+        steps[insert(version, requestType, floor)] = value;
+    }
+
+    void putIndex(long version, RequestType requestType, int floor, int value) {
+        indexes[insert(version, requestType, floor)] = value;
+    }
+
+    private int find(long version, RequestType requestType, int floor) {
+        if (version != this.version) {
+            return -1;
+        }
+        int key = key(requestType, floor);
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; keys[slot] != EMPTY_KEY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int insert(long version, RequestType requestType, int floor) {
+        if (version != this.version) {
+            //controller has changed, every cached value is outdated
+            Arrays.fill(keys, EMPTY_KEY);
+            size = 0;
+            this.version = version;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int key = key(requestType, floor);
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY_KEY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == EMPTY_KEY) {
+            keys[slot] = key;
+            steps[slot] = MISSING;
+            indexes[slot] = MISSING;
+            size++;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldSteps = steps;
+        int[] oldIndexes = indexes;
+        allocate(oldKeys.length * 2);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY_KEY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                steps[slot] = oldSteps[i];
+                indexes[slot] = oldIndexes[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        steps = new int[capacity];
+        indexes = new int[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+    }
+
+    private static int key(RequestType requestType, int floor) {
+        return floor * REQUEST_TYPES + requestType.ordinal();
+    }
+
+    private static int hash(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,54 @@
+package olliekrk.elevators;
+
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder event emitted whenever a request is added to or removed from any lane of an elevator.
+ * <p>
+ * Disabled by default, enable it in the recording settings with {@code olliekrk.elevators.QueueLength#enabled=true}.
+ * While disabled, {@link #emit(Integer, int, int)} returns without creating any object.
+ */
+@Name("olliekrk.elevators.QueueLength")
+@Label("Queue Length")
+@Category({"Elevators"})
+@Description("Number of requests enqueued to an elevator after its queue has changed")
+@Enabled(false)
+@StackTrace(false)
+final class QueueLengthEvent extends Event {
+    private static final EventType EVENT_TYPE = EventType.getEventType(QueueLengthEvent.class);
+
+    @Label("Elevator")
+    int elevatorID;
+
+    @Label("Length")
+    @Description("Number of requests in all lanes of the elevator")
+    int length;
+
+    @Label("Change")
+    @Description("1 if a request was added, -1 if it was removed")
+    int change;
+
+    static boolean isTypeEnabled() {
+        return EVENT_TYPE.isEnabled();
+    }
+
+    /**
+     * Emits a new event, if the event is enabled.
+     *
+     * @param elevatorID ID of the elevator
+     * @param length     number of requests in all lanes of the elevator
+     * @param change     change of the number of requests
+     */
+    static void emit(Integer elevatorID, int length, int change) {
+        if (!EVENT_TYPE.isEnabled()) {
+            return;
+        }
+        QueueLengthEvent event = new QueueLengthEvent();
+        if (event.shouldCommit()) {
+            event.elevatorID = elevatorID;
+            event.length = length;
+            event.change = change;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.requests.Request;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class responsible for running registered {@link ElevatorsSystem} instances in real time,
+ * instead of waiting for someone to call {@link ElevatorsSystem#makeSimulationStep()}.
+ * <p>
+ * Registered systems are split into groups, every group is driven by its own worker thread.
+ * Each system belongs to exactly one worker, so its elevators are always stepped by a single thread.
+ * In every tick the worker dispatches requests submitted with {@link ElevatorsSystem#submitRequest(Request)},
+ * makes one simulation step and publishes elevators' statuses for other threads.
+ * <p>
+ * Ticks are scheduled against absolute deadlines, so a late tick does not delay the following ones (drift compensation).
+ * If a worker falls behind by more than one whole tick, missed ticks are skipped and counted as overruns.
+ */
+public class RealTimeDriver {
+    /**
+     * Duration of a single tick in nanoseconds.
+     */
+    private final long tickNanos;
+    /**
+     * Groups of registered systems, one group per worker thread.
+     */
+    private final List<List<ElevatorsSystem>> groups;
+    /**
+     * Worker threads, created when the driver is started.
+     */
+    private final List<Thread> workers;
+    /**
+     * Number of ticks made by all workers.
+     */
+    private final AtomicLong ticks;
+    /**
+     * Number of ticks which were not completed before their deadline.
+     */
+    private final AtomicLong overruns;
+    /**
+     * Number of systems registered so far, used for assigning systems to groups in round-robin manner.
+     */
+    private int registeredSystems;
+    /**
+     * Flag indicating whether the workers should keep running.
+     */
+    private volatile boolean running;
+
+    /**
+     * Creates a new driver.
+     *
+     * @param tickDuration  duration of a single simulation step
+     * @param unit          time unit of the tick duration
+     * @param workerThreads number of threads stepping registered systems
+     */
+    public RealTimeDriver(long tickDuration, TimeUnit unit, int workerThreads) {
+        if (tickDuration <= 0 || workerThreads <= 0) {
+            throw new IllegalArgumentException("Tick duration and number of worker threads must be positive");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.groups = new ArrayList<>(workerThreads);
+        for (int i = 0; i < workerThreads; i++) {
+            groups.add(new CopyOnWriteArrayList<>());
+        }
+        this.workers = new ArrayList<>(workerThreads);
+        this.ticks = new AtomicLong();
+        this.overruns = new AtomicLong();
+    }
+
+    /**
+     * Registers a system to be driven by this driver.
+     * Once registered, the system should be stepped only by the driver,
+     * and other threads should use {@link ElevatorsSystem#submitRequest(Request)} and {@link ElevatorsSystem#getPublishedStatuses()}.
+     *
+     * @param system system to be driven
+     */
+    public synchronized void register(ElevatorsSystem system) {
+        groups.get(registeredSystems % groups.size()).add(system);
+        registeredSystems++;
+    }
+
+    /**
+     * Starts worker threads.
+     */
+    public synchronized void start() {
+        if (running) {
+            throw new IllegalStateException("Driver is already running");
+        }
+        running = true;
+        workers.clear();
+        for (int i = 0; i < groups.size(); i++) {
+            List<ElevatorsSystem> group = groups.get(i);
+            Thread worker = new Thread(() -> drive(group), "elevators-driver-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Stops worker threads and waits until they finish their current tick.
+     *
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+            worker.join();
+        }
+        workers.clear();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getTicks() {
+        return ticks.get();
+    }
+
+    public long getOverruns() {
+        return overruns.get();
+    }
+
+    /**
+     * Main loop of a worker thread.
+     *
+     * @param group systems stepped by this worker
+     */
+    private void drive(List<ElevatorsSystem> group) {
+        long deadline = System.nanoTime();
+        while (running) {
+            for (ElevatorsSystem system : group) {
+                system.dispatchSubmittedRequests();
+                system.makeSimulationStep();
+                system.publishStatuses();
+            }
+            ticks.incrementAndGet();
+
+            //next deadline is computed from the previous one, not from the current time, so that delays do not accumulate
+            deadline += tickNanos;
+            long now = System.nanoTime();
+            if (now - deadline > 0) {
+                overruns.incrementAndGet();
+                if (now - deadline > tickNanos) {
+                    //too far behind to catch up, skip missed ticks
+                    deadline = now;
+                }
+                continue;
+            }
+            long remaining;
+            while (running && (remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package olliekrk.elevators;
+
+/**
+ * Outcome of a request completed by an elevator, see {@link RequestHandle#getCompletion()}.
+ */
+public final class RequestCompletion {
+    private final Integer elevatorID;
+    private final long waitSteps;
+
+    RequestCompletion(Integer elevatorID, long waitSteps) {
+        this.elevatorID = elevatorID;
+        this.waitSteps = waitSteps;
+    }
+
+    /**
+     * Gets ID of the elevator which has opened its door for the request.
+     */
+    public Integer getElevatorID() {
+        return elevatorID;
+    }
+
+    /**
+     * Gets the number of simulation steps between accepting and completing the request.
+     */
+    public long getWaitSteps() {
+        return waitSteps;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestCompletion{" +
+                "elevatorID=" + elevatorID +
+                ", waitSteps=" + waitSteps +
+                '}';
+    }
+}
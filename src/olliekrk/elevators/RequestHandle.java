@@ -0,0 +1,459 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.exceptions.ElevatorsRequestException;
+import olliekrk.elevators.exceptions.ElevatorsSystemException;
+import olliekrk.elevators.requests.Request;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handle of a request enqueued by {@link ElevatorsSystem#enqueueRequest(Request)}.
+ * <p>
+ * It tracks the state of the request and allows to cancel it while it is still pending.
+ * The handle is bound directly to the nodes of controllers' queues holding the request,
+ * so cancellation removes the request in constant time, without searching the queues.
+ * <p>
+ * The state can be read by any thread, but {@link #cancel()} should be called only by the thread stepping the system.
+ * <p>
+ * Every press of a hall call gets a handle of its own. Once the call is pressed again, a shared handle of the call is bound
+ * to the queue instead, and the handles of the presses follow it - they are resolved together with the call,
+ * unless they leave it by cancelling first. The call is withdrawn when its last presser leaves.
+ * <p>
+ * Instead of polling the state, callers can wait for futures which are completed by the thread stepping the system,
+ * as soon as the request is assigned to an elevator or resolved. They are created only when requested,
+ * so handles which nobody waits for do not allocate them.
+ */
+public class RequestHandle {
+    /**
+     * States of a handled request.
+     */
+    public enum State {
+        /**
+         * Request is enqueued and it waits to be completed.
+         */
+        PENDING,
+        /**
+         * Request was completed by an elevator.
+         */
+        COMPLETED,
+        /**
+         * Request was cancelled with {@link #cancel()}.
+         */
+        CANCELLED,
+        /**
+         * Hall call was waiting longer than allowed and it was removed from the queue.
+         */
+        EXPIRED,
+        /**
+         * Request was not enqueued, because the same request was already waiting in the queue.
+         * Futures of the handle follow the request which is waiting, if it has a handle.
+         */
+        DUPLICATE,
+        /**
+         * Request was removed from the queue by another request, such as RESTART.
+         */
+        DISCARDED,
+        /**
+         * Request could not be enqueued by the system.
+         */
+        REJECTED
+    }
+
+    /**
+     * System which has accepted the request.
+     */
+    private final ElevatorsSystem system;
+    private final Request request;
+    /**
+     * Number of the simulation step during which the request was accepted.
+     */
+    private final long acceptedAtStep;
+    /**
+     * Maximum number of steps the hall call may wait since it was accepted, 0 if it never expires.
+     * Fixed when the request is accepted, so later changes of the system's setting do not affect it.
+     */
+    private int expirySteps;
+    private volatile State state;
+    /**
+     * Number of passengers who have made the request, increased when the same request is made again while it is pending.
+     * Passengers board the elevator at hall calls and leave it at the floors they have requested.
+     */
+    private int passengers;
+    /**
+     * First of the queue nodes holding the request, the next ones are linked by {@link RequestsQueue.Node#getNextBound()}.
+     * Evacuation requests are held by a node in every elevator's queue, other requests by a single node.
+     */
+    private RequestsQueue.Node firstBound;
+    /**
+     * ID of the first elevator the request was assigned to, null until the request is enqueued to any queue.
+     */
+    private volatile Integer assignedElevatorID;
+    /**
+     * ID of the elevator which has completed the request and the number of steps it waited, published by the write of the state.
+     */
+    private Integer completedByElevatorID;
+    private int waitSteps;
+    private volatile CompletableFuture<Integer> assignment;
+    private volatile CompletableFuture<RequestCompletion> completion;
+
+    RequestHandle(ElevatorsSystem system, Request request, long acceptedAtStep) {
+        this.system = system;
+        this.request = request;
+        this.acceptedAtStep = acceptedAtStep;
+        this.state = State.PENDING;
+        this.passengers = 1;
+    }
+
+    public Request getRequest() {
+        return request;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isPending() {
+        return state == State.PENDING;
+    }
+
+    /**
+     * Gets a future completed with ID of the elevator the request is assigned to.
+     * For requests reassigned later, it is the first elevator they were assigned to.
+     * The future fails with {@link ElevatorsRequestException} if the request was resolved before it was assigned.
+     * Dependent actions which are not asynchronous are run by the thread stepping the system, so they should be short.
+     *
+     * @return future of the assignment
+     */
+    public CompletableFuture<Integer> getAssignment() {
+        CompletableFuture<Integer> future = assignment;
+        if (future == null) {
+            synchronized (this) {
+                future = assignment;
+                if (future == null) {
+                    future = new CompletableFuture<>();
+                    assignment = future;
+                    //the state may have changed before the future was created
+                    completeAssignment(future);
+                }
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Gets a future completed when an elevator opens its door for the request.
+     * The future fails with {@link ElevatorsRequestException} if the request is resolved in any other way,
+     * for example when it is rejected, cancelled or expired.
+     * Dependent actions which are not asynchronous are run by the thread stepping the system, so they should be short.
+     *
+     * @return future of the completion
+     */
+    public CompletableFuture<RequestCompletion> getCompletion() {
+        CompletableFuture<RequestCompletion> future = completion;
+        if (future == null) {
+            synchronized (this) {
+                future = completion;
+                if (future == null) {
+                    future = new CompletableFuture<>();
+                    completion = future;
+                    //the state may have changed before the future was created
+                    completeCompletion(future);
+                }
+            }
+        }
+        return future;
+    }
+
+    int getPassengers() {
+        return passengers;
+    }
+
+    void addPassenger() {
+        passengers++;
+    }
+
+    void removePassenger() {
+        passengers--;
+    }
+
+    long getAcceptedAtStep() {
+        return acceptedAtStep;
+    }
+
+    void setExpirySteps(int expirySteps) {
+        this.expirySteps = expirySteps;
+    }
+
+    /**
+     * Pushes the expiry of the hall call forward, so that it may wait given number of steps since now.
+     *
+     * @param expirySteps number of steps the call may still wait
+     * @param step        number of the current simulation step
+     */
+    void extendExpiry(int expirySteps, long step) {
+        this.expirySteps = (int) Math.min(step - acceptedAtStep + expirySteps, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the last step during which the hall call may still be pending.
+     *
+     * @return step of the expiry, meaningful only if the request expires at all
+     */
+    long getExpiresAtStep() {
+        return acceptedAtStep + expirySteps;
+    }
+
+    boolean isBound() {
+        return firstBound != null;
+    }
+
+    /**
+     * Cancels the request, removing it from every queue it was enqueued to.
+     *
+     * @return true if the request was cancelled, false if it was not pending anymore
+     */
+    public boolean cancel() {
+        return withdraw(State.CANCELLED);
+    }
+
+    /**
+     * Removes the pending hall call from the queue, as it was waiting for too long.
+     *
+     * @return true if the request has expired, false if it was not pending anymore
+     */
+    boolean expire() {
+        return withdraw(State.EXPIRED);
+    }
+
+    private boolean withdraw(State finalState) {
+        if (state != State.PENDING) {
+            return false;
+        }
+        state = finalState;
+        if (firstBound == null) {
+            //hall call waiting for late binding is not enqueued to any queue yet, neither is a press following a shared hall call
+            system.withdrawUnbound(this);
+            completeFutures();
+            return true;
+        }
+        while (firstBound != null) {
+            RequestsQueue.Node node = firstBound;
+            node.remove();
+            if (firstBound == node) {
+                //the queue's observer has not unbound the node, so do it here
+                unbind(node);
+            }
+        }
+        system.publishSnapshots();
+        completeFutures();
+        return true;
+    }
+
+    /**
+     * Binds the handle to the node holding its request.
+     *
+     * @param node       node which was just added to a queue
+     * @param elevatorID ID of the elevator owning the queue
+     */
+    void bind(RequestsQueue.Node node, Integer elevatorID) {
+        node.setHandle(this);
+        node.setNextBound(firstBound);
+        firstBound = node;
+        if (assignedElevatorID == null) {
+            assignedElevatorID = elevatorID;
+            CompletableFuture<Integer> future = assignment;
+            if (future != null) {
+                future.complete(elevatorID);
+            }
+        }
+    }
+
+    /**
+     * Unbinds the node without resolving the request, so that the request can be moved to another node.
+     *
+     * @param node node to be unbound
+     */
+    void detach(RequestsQueue.Node node) {
+        unbind(node);
+    }
+
+    /**
+     * Called when a node bound to this handle was removed from its queue.
+     * The pending request is resolved with given state once the last bound node is removed,
+     * or as soon as any elevator completes it.
+     *
+     * @param node       removed node
+     * @param outcome    state of the request if it is resolved by this removal
+     * @param elevatorID ID of the elevator owning the queue
+     * @param step       number of the current simulation step
+     */
+    void onNodeRemoved(RequestsQueue.Node node, State outcome, Integer elevatorID, long step) {
+        unbind(node);
+        if (state == State.PENDING && (firstBound == null || outcome == State.COMPLETED)) {
+            completedByElevatorID = elevatorID;
+            waitSteps = (int) Math.min(step - acceptedAtStep, Integer.MAX_VALUE);
+            state = outcome;
+            completeFutures();
+        }
+    }
+
+    /**
+     * Takes over the pending hall call tracked by the handle of its first press, which is about to follow this shared handle.
+     * Nodes holding the request are bound to this handle instead, so that the call remains pending.
+     *
+     * @param handle handle of the first press
+     */
+    void takeOver(RequestHandle handle) {
+        firstBound = handle.firstBound;
+        handle.firstBound = null;
+        for (RequestsQueue.Node node = firstBound; node != null; node = node.getNextBound()) {
+            node.setHandle(this);
+        }
+        assignedElevatorID = handle.assignedElevatorID;
+        expirySteps = handle.expirySteps;
+        passengers = handle.passengers;
+    }
+
+    /**
+     * Assigns the press following a shared hall call to the elevator the call is assigned to, if the press is not assigned yet.
+     *
+     * @param call shared handle of the hall call
+     */
+    void followAssignment(RequestHandle call) {
+        Integer elevatorID = call.assignedElevatorID;
+        if (assignedElevatorID == null && elevatorID != null) {
+            assignedElevatorID = elevatorID;
+            CompletableFuture<Integer> future = assignment;
+            if (future != null) {
+                future.complete(elevatorID);
+            }
+        }
+    }
+
+    /**
+     * Resolves the press following a shared hall call in the same way as the call was resolved.
+     *
+     * @param call shared handle of the resolved hall call
+     */
+    void followOutcome(RequestHandle call) {
+        if (state != State.PENDING) {
+            return;
+        }
+        followAssignment(call);
+        completedByElevatorID = call.completedByElevatorID;
+        //the press waits since it was made, not since the call was
+        waitSteps = (int) Math.max(call.waitSteps - (acceptedAtStep - call.acceptedAtStep), 0);
+        state = call.state;
+        completeFutures();
+    }
+
+    /**
+     * Resolves the handle of a request which did not end up in any queue.
+     *
+     * @param outcome state of the request
+     */
+    void resolve(State outcome) {
+        if (state == State.PENDING) {
+            state = outcome;
+            completeFutures();
+        }
+    }
+
+    /**
+     * Resolves the handle of a request which was not enqueued because the same request is already pending,
+     * so that its futures are the futures of the pending request and they complete together with it.
+     * Only duplicates create futures up front, which keeps handles of other requests small.
+     *
+     * @param pendingHandle handle of the request waiting in the queue
+     */
+    void resolveDuplicateOf(RequestHandle pendingHandle) {
+        if (state != State.PENDING) {
+            return;
+        }
+        synchronized (this) {
+            assignment = pendingHandle.getAssignment();
+            completion = pendingHandle.getCompletion();
+            state = State.DUPLICATE;
+        }
+    }
+
+    /**
+     * Resolves the handle of a request which could not be enqueued because of an exception.
+     * Both futures are created and failed with the cause right away, instead of keeping the cause in a field of every handle.
+     * The state is written after the futures are failed, so a thread which sees the rejection sees the cause as well.
+     *
+     * @param cause exception thrown while the request was being enqueued
+     */
+    void reject(ElevatorsSystemException cause) {
+        if (state != State.PENDING) {
+            return;
+        }
+        synchronized (this) {
+            if (assignment == null) {
+                assignment = new CompletableFuture<>();
+            }
+            if (completion == null) {
+                completion = new CompletableFuture<>();
+            }
+            assignment.completeExceptionally(failure(State.REJECTED, cause));
+            completion.completeExceptionally(failure(State.REJECTED, cause));
+            state = State.REJECTED;
+        }
+    }
+
+    /**
+     * Completes futures which were already requested, after the request was resolved.
+     */
+    private void completeFutures() {
+        CompletableFuture<Integer> assignmentFuture = assignment;
+        if (assignmentFuture != null) {
+            completeAssignment(assignmentFuture);
+        }
+        CompletableFuture<RequestCompletion> completionFuture = completion;
+        if (completionFuture != null) {
+            completeCompletion(completionFuture);
+        }
+    }
+
+    private void completeAssignment(CompletableFuture<Integer> future) {
+        Integer elevatorID = assignedElevatorID;
+        if (elevatorID != null) {
+            future.complete(elevatorID);
+        } else if (state != State.PENDING) {
+            future.completeExceptionally(failure(state, null));
+        }
+    }
+
+    private void completeCompletion(CompletableFuture<RequestCompletion> future) {
+        State currentState = state;
+        if (currentState == State.COMPLETED) {
+            future.complete(new RequestCompletion(completedByElevatorID, waitSteps));
+        } else if (currentState != State.PENDING) {
+            future.completeExceptionally(failure(currentState, null));
+        }
+    }
+
+    private static ElevatorsRequestException failure(State finalState, ElevatorsSystemException cause) {
+        ElevatorsRequestException exception = new ElevatorsRequestException(finalState);
+        if (cause != null) {
+            exception.initCause(cause);
+        }
+        return exception;
+    }
+
+    private void unbind(RequestsQueue.Node node) {
+        if (firstBound == node) {
+            firstBound = node.getNextBound();
+        } else {
+            RequestsQueue.Node previous = firstBound;
+            while (previous != null && previous.getNextBound() != node) {
+                previous = previous.getNextBound();
+            }
+            if (previous != null) {
+                previous.setNextBound(node.getNextBound());
+            }
+        }
+        node.setHandle(null);
+        node.setNextBound(null);
+    }
+}
@@ -0,0 +1,16 @@
+package olliekrk.elevators;
+
+/**
+ * Source of requests, which are collected outside the system (e.g. by other threads) and dispatched in batches.
+ * Every registered source is drained by {@link ElevatorsSystem#dispatchSubmittedRequests()} once per step.
+ */
+public interface RequestSource {
+    /**
+     * Enqueues every request collected by this source since the last call to the given system.
+     * Called by the thread which steps the system.
+     *
+     * @param system system to receive the requests
+     * @return number of dispatched requests
+     */
+    int dispatchRequests(ElevatorsSystem system);
+}
@@ -0,0 +1,405 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.requests.Request;
+
+import java.util.AbstractSequentialList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Doubly-linked queue of requests used by {@link ElevatorController}.
+ * <p>
+ * Behaves like {@link java.util.LinkedList}, but it also counts every modification of its content in its version,
+ * so that the controller can cheaply detect whether the queue has changed since the last published {@link ElevatorSnapshot}.
+ * Like the rest of the controller's state, it should be modified only by the thread which steps the system.
+ * <p>
+ * Every request added to or removed from the queue is reported to its {@link Observer}, no matter which method was used.
+ * The observer receives the {@link Node} holding the request, which can be later removed from the queue in constant time.
+ */
+class RequestsQueue extends AbstractSequentialList<Request> {
+    /**
+     * Sentinel node, its next node is the head of the queue and its previous node is the tail of the queue.
+     */
+    private final Node sentinel;
+    /**
+     * Number of requests in the queue.
+     */
+    private int size;
+    /**
+     * Number of modifications made to the queue since it was created.
+     */
+    private long version;
+    /**
+     * Observer notified about added and removed requests, may be null.
+     */
+    private Observer observer;
+
+    RequestsQueue() {
+        this.sentinel = new Node(null);
+        this.sentinel.prev = sentinel;
+        this.sentinel.next = sentinel;
+    }
+
+    RequestsQueue(Collection<? extends Request> requests) {
+        this();
+        for (Request request : requests) {
+            linkBefore(request, sentinel);
+        }
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Replaces the observer of the queue.
+     * The previous observer is notified that every request was removed, and the new one that every request was added,
+     * so that observers can keep track of the content no matter when they were attached.
+     *
+     * @param observer new observer, may be null
+     */
+    void setObserver(Observer observer) {
+        if (this.observer != null) {
+            for (Node node = sentinel.next; node != sentinel; node = node.next) {
+                this.observer.onRequestRemoved(node);
+            }
+        }
+        this.observer = observer;
+        if (observer != null) {
+            for (Node node = sentinel.next; node != sentinel; node = node.next) {
+                observer.onRequestAdded(node);
+            }
+        }
+    }
+
+    /**
+     * Gets the first node of the queue, which together with {@link Node#getNext()} allows to traverse the queue without an iterator.
+     *
+     * @return first node or null if the queue is empty
+     */
+    Node getFirst() {
+        return size == 0 ? null : sentinel.next;
+    }
+
+    /**
+     * Gets the last node of the queue, which together with {@link Node#getPrevious()} allows to traverse the queue backwards.
+     *
+     * @return last node or null if the queue is empty
+     */
+    Node getLast() {
+        return size == 0 ? null : sentinel.prev;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Request get(int index) {
+        return node(index).request;
+    }
+
+    @Override
+    public boolean add(Request request) {
+        linkBefore(request, sentinel);
+        return true;
+    }
+
+    @Override
+    public void add(int index, Request request) {
+        linkBefore(request, index == size ? sentinel : node(index));
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        for (Node node = sentinel.next; node != sentinel; node = node.next) {
+            if (node.request.equals(o)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void clear() {
+        while (size > 0) {
+            unlink(sentinel.next);
+        }
+    }
+
+    @Override
+    public ListIterator<Request> listIterator(int index) {
+        return new QueueIterator(index);
+    }
+
+    private Node node(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        Node node;
+        if (index < size / 2) {
+            node = sentinel.next;
+            for (int i = 0; i < index; i++) {
+                node = node.next;
+            }
+        } else {
+            node = sentinel.prev;
+            for (int i = size - 1; i > index; i--) {
+                node = node.prev;
+            }
+        }
+        return node;
+    }
+
+    private Node linkBefore(Request request, Node successor) {
+        if (request == null) {
+            throw new NullPointerException("Cannot enqueue an empty request");
+        }
+        Node node = new Node(request);
+        node.owner = this;
+        node.prev = successor.prev;
+        node.next = successor;
+        successor.prev.next = node;
+        successor.prev = node;
+        size++;
+        modCount++;
+        version++;
+        if (observer != null) {
+            observer.onRequestAdded(node);
+        }
+        return node;
+    }
+
+    private void unlink(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+        node.owner = null;
+        size--;
+        modCount++;
+        version++;
+        if (observer != null) {
+            observer.onRequestRemoved(node);
+        }
+    }
+
+    /**
+     * Observer of the queue's content.
+     */
+    interface Observer {
+        /**
+         * Called after a request was added to the queue.
+         *
+         * @param node node holding the added request
+         */
+        void onRequestAdded(Node node);
+
+        /**
+         * Called after a request was removed from the queue.
+         *
+         * @param node node which was holding the removed request, already unlinked from the queue
+         */
+        void onRequestRemoved(Node node);
+    }
+
+    /**
+     * Single node of the queue.
+     * Can be removed from the queue in constant time, without searching for it.
+     */
+    static final class Node {
+        private Request request;
+        private Node prev;
+        private Node next;
+        /**
+         * Queue which the node is linked to, null after the node was removed.
+         */
+        private RequestsQueue owner;
+        /**
+         * Handle of the request bound to this node, may be null.
+         */
+        private RequestHandle handle;
+        /**
+         * Next node bound to the same handle, may be null.
+         */
+        private Node nextBound;
+
+        private Node(Request request) {
+            this.request = request;
+        }
+
+        Request getRequest() {
+            return request;
+        }
+
+        RequestHandle getHandle() {
+            return handle;
+        }
+
+        void setHandle(RequestHandle handle) {
+            this.handle = handle;
+        }
+
+        /**
+         * Gets the next node of the queue.
+         *
+         * @return next node or null if this is the last node or it is not linked to any queue
+         */
+        Node getNext() {
+            return (owner == null || next == owner.sentinel) ? null : next;
+        }
+
+        /**
+         * Gets the previous node of the queue.
+         *
+         * @return previous node or null if this is the first node or it is not linked to any queue
+         */
+        Node getPrevious() {
+            return (owner == null || prev == owner.sentinel) ? null : prev;
+        }
+
+        Node getNextBound() {
+            return nextBound;
+        }
+
+        void setNextBound(Node nextBound) {
+            this.nextBound = nextBound;
+        }
+
+        boolean isLinked() {
+            return owner != null;
+        }
+
+        /**
+         * Removes the node from its queue in constant time.
+         *
+         * @return true if the node was removed, false if it was not linked to any queue
+         */
+        boolean remove() {
+            if (owner == null) {
+                return false;
+            }
+            owner.unlink(this);
+            return true;
+        }
+    }
+
+    /**
+     * Iterator over the queue, which supports every optional {@link ListIterator} operation.
+     */
+    private final class QueueIterator implements ListIterator<Request> {
+        private Node next;
+        private Node lastReturned;
+        private int nextIndex;
+        private int expectedModCount;
+
+        private QueueIterator(int index) {
+            this.next = (index == size) ? sentinel : node(index);
+            this.nextIndex = index;
+            this.expectedModCount = modCount;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex < size;
+        }
+
+        @Override
+        public Request next() {
+            checkForComodification();
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            next = next.next;
+            nextIndex++;
+            return lastReturned.request;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return nextIndex > 0;
+        }
+
+        @Override
+        public Request previous() {
+            checkForComodification();
+            if (!hasPrevious()) {
+                throw new NoSuchElementException();
+            }
+            next = next.prev;
+            lastReturned = next;
+            nextIndex--;
+            return lastReturned.request;
+        }
+
+        @Override
+        public int nextIndex() {
+            return nextIndex;
+        }
+
+        @Override
+        public int previousIndex() {
+            return nextIndex - 1;
+        }
+
+        @Override
+        public void remove() {
+            checkForComodification();
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (lastReturned == next) {
+                next = lastReturned.next;
+            } else {
+                nextIndex--;
+            }
+            unlink(lastReturned);
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+
+        @Override
+        public void set(Request request) {
+            checkForComodification();
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (request == null) {
+                throw new NullPointerException("Cannot enqueue an empty request");
+            }
+            //the replaced request is reported as removed, so the node is no longer bound to its handle
+            if (observer != null) {
+                observer.onRequestRemoved(lastReturned);
+            }
+            lastReturned.request = request;
+            version++;
+            if (observer != null) {
+                observer.onRequestAdded(lastReturned);
+            }
+        }
+
+        @Override
+        public void add(Request request) {
+            checkForComodification();
+            linkBefore(request, next);
+            lastReturned = null;
+            nextIndex++;
+            expectedModCount = modCount;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.exceptions.ElevatorsSchedulerException;
+import olliekrk.elevators.requests.Request;
+import olliekrk.elevators.requests.RequestPriority;
+import olliekrk.elevators.requests.RequestType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+import static olliekrk.elevators.requests.RequestType.FLOOR;
+import static olliekrk.elevators.requests.RequestType.RESTART;
+
+/**
+ * Scheduler implementing {@link ElevatorsScheduler} interface, which chooses both the elevator and the place in its queue
+ * by minimizing a configurable cost function.
+ * <p>
+ * For every elevator and every index of its queue of ordinary requests, the scheduler describes the insertion of the request
+ * as an {@link Insertion} - the passenger's wait, the delay of other passengers, the number of stops and the additional distance -
+ * and scores it with a weighted sum of {@link CostTerm} terms. The insertion with the lowest cost is chosen,
+ * and of equally good ones the first found. Insertions into full elevators are chosen only when every elevator is full.
+ * <p>
+ * The route of an elevator is walked once, reading the primitive state of its controller, so a dispatch takes time linear
+ * in the number of enqueued requests and does not allocate, as long as the controllers are given as a {@link RandomAccess} list.
+ * <p>
+ * By default the cost is the passenger's wait, plus {@link #DEFAULT_LOAD_WEIGHT} steps scaled by the taken fraction of the elevator's capacity,
+ * so that of elevators which come alike the emptier one is sent. Weights can be tuned per building, e.g. to trade the wait for energy:
+ * <pre>{@code
+ * new SchedulerCostFunction()
+ *         .setWeight(CostTerm.RIDE_DELAY, 0.5)
+ *         .setWeight(CostTerm.TRAVEL_DISTANCE, 2.0);
+ * }</pre>
+ * A single instance should be used by a single system, as it reuses its state between dispatches.
+ */
+public class SchedulerCostFunction implements ElevatorsScheduler {
+    /**
+     * Name of the tier reported by {@link DispatchEvent}.
+     */
+    static final String TIER_LOWEST_COST = "LOWEST_COST";
+    /**
+     * Default weight of {@link CostTerm#LOAD}, the wait in steps which a passenger is charged for a full elevator.
+     */
+    public static final double DEFAULT_LOAD_WEIGHT = 5.0;
+
+    private CostTerm[] terms;
+    private double[] weights;
+    /**
+     * Insertion reused for every evaluated candidate.
+     */
+    private final Insertion insertion;
+    /**
+     * Controller and index of the best insertion found by the last evaluation.
+     */
+    private ElevatorController bestController;
+    private int bestIndex;
+    private double bestCost;
+    /**
+     * Flag indicating whether insertions into full elevators are skipped by the current evaluation.
+     */
+    private boolean skipFull;
+
+    /**
+     * Creates a new scheduler minimizing the passenger's wait and preferring elevators with room for passengers.
+     */
+    public SchedulerCostFunction() {
+        this.terms = new CostTerm[]{CostTerm.WAIT_TIME, CostTerm.LOAD};
+        this.weights = new double[]{1.0, DEFAULT_LOAD_WEIGHT};
+        this.insertion = new Insertion();
+    }
+
+    /**
+     * Sets the weight of a term of the cost function, adding the term if it was not used yet.
+     *
+     * @param term   term of the cost function
+     * @param weight weight of the term, 0 to remove the term
+     * @return this scheduler
+     */
+    public SchedulerCostFunction setWeight(CostTerm term, double weight) {
+        if (term == null || Double.isNaN(weight) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("Cost term must be given with a finite weight");
+        }
+        int index = Arrays.asList(terms).indexOf(term);
+        if (index < 0 && weight != 0) {
+            terms = Arrays.copyOf(terms, terms.length + 1);
+            weights = Arrays.copyOf(weights, weights.length + 1);
+            terms[terms.length - 1] = term;
+            weights[weights.length - 1] = weight;
+        } else if (index >= 0 && weight != 0) {
+            weights[index] = weight;
+        } else if (index >= 0) {
+            int last = terms.length - 1;
+            System.arraycopy(terms, index + 1, terms, index, last - index);
+            System.arraycopy(weights, index + 1, weights, index, last - index);
+            terms = Arrays.copyOf(terms, last);
+            weights = Arrays.copyOf(weights, last);
+        }
+        return this;
+    }
+
+    /**
+     * Enqueues pickup request at the insertion of the lowest cost among all elevators.
+     *
+     * @param request             pickup request to be enqueued
+     * @param elevatorControllers elevator controllers available in the system
+     * @throws ElevatorsSchedulerException when the request can not be enqueued to any controller
+     */
+    @Override
+    public void enqueuePickupRequest(Request request, Collection<ElevatorController> elevatorControllers) throws ElevatorsSchedulerException {
+        if (request.getRequestType() != RequestType.UP && request.getRequestType() != RequestType.DOWN) {
+            throw new ElevatorsSchedulerException("Unsupported pickup request received");
+        }
+        DispatchEvent event = DispatchEvent.start();
+        List<ElevatorController> controllers = (elevatorControllers instanceof List && elevatorControllers instanceof RandomAccess)
+                ? (List<ElevatorController>) elevatorControllers
+                : new ArrayList<>(elevatorControllers);
+        bestController = null;
+        bestCost = Double.POSITIVE_INFINITY;
+        skipFull = ElevatorController.anyHasRoom(controllers);
+        for (int i = 0; i < controllers.size(); i++) {
+            if (!evaluate(request, controllers.get(i))) {
+                //the same request is already enqueued, so there is nothing to do
+                bestController = null;
+                DispatchEvent.commit(event, this, request, controllers.get(i), TIER_LOWEST_COST, controllers.size());
+                return;
+            }
+        }
+        DispatchEvent.commit(event, this, request, bestController, TIER_LOWEST_COST, controllers.size());
+        if (bestController == null) {
+            throw new ElevatorsSchedulerException("Failed to find available controller for given request");
+        }
+        insertBest(request);
+    }
+
+    /**
+     * Enqueues internal request of type FLOOR or RESTART to chosen elevator controller.
+     * FLOOR request is inserted at the place of the lowest cost in the controller's queue.
+     *
+     * @param request    internal request to be enqueued
+     * @param controller elevator controller which sent the request
+     * @throws ElevatorsSchedulerException when the request can not be enqueued
+     */
+    @Override
+    public void enqueueInternalRequest(Request request, ElevatorController controller) throws ElevatorsSchedulerException {
+        if (controller == null) {
+            throw new ElevatorsSchedulerException("Controller unavailable to proceed request");
+        }
+        if (request.getRequestType() == RESTART) {
+            enqueueRestartRequest(request, controller);
+            return;
+        }
+        if (request.getRequestType() != FLOOR) {
+            throw new ElevatorsSchedulerException("Unsupported internal request received");
+        }
+        bestController = null;
+        bestCost = Double.POSITIVE_INFINITY;
+        skipFull = false;
+        if (evaluate(request, controller)) {
+            insertBest(request);
+        }
+    }
+
+    private void insertBest(Request request) {
+        bestController.getRequestsQueue().add(bestIndex, request);
+        bestController = null;
+    }
+
+    /**
+     * Walks the route of the controller once, evaluating the insertion of the request at every index of its ordinary queue.
+     * Requests of the priority lanes are served first, so they only delay every candidate insertion.
+     * The whole route of a full elevator is walked as well, so that the request is not enqueued twice.
+     *
+     * @param request    request to be inserted
+     * @param controller evaluated controller
+     * @return false if the request does not need to be inserted, as the controller already has it
+     */
+    private boolean evaluate(Request request, ElevatorController controller) {
+        int requestedFloor = request.getFloor();
+        boolean isFloorRequest = request.getRequestType() == FLOOR;
+        int floor = controller.getCurrentFloor();
+        boolean doorOpened = controller.isDoorOpened();
+        int steps = 0;
+        int stops = 0;
+        int queueLength = controller.numberOfRequestsEnqueued();
+        int passengers = controller.getPassengers();
+        int capacity = controller.getCapacity();
+        //full elevator would leave the passenger behind again, unless it first stops to let somebody out
+        int firstIndex = isFloorRequest ? 0 : controller.firstIndexWithRoom();
+
+        RequestPriority[] priorities = RequestPriority.values();
+        for (int p = priorities.length - 1; p > RequestPriority.NORMAL.ordinal(); p--) {
+            for (RequestsQueue.Node node = controller.getLane(priorities[p]).getFirst(); node != null; node = node.getNext()) {
+                int nextFloor = node.getRequest().getFloor();
+                steps += stepsBetween(floor, nextFloor, stops == 0 && !doorOpened);
+                floor = nextFloor;
+                stops++;
+            }
+        }
+
+        RequestsQueue.Node node = controller.getRequestsQueue().getFirst();
+        int normalRequests = controller.getRequestsQueue().size();
+        for (int index = 0; index <= normalRequests; index++) {
+            boolean closedStart = stops == 0 && !doorOpened;
+            int stepsToRequest = stepsBetween(floor, requestedFloor, closedStart);
+            int delaySteps = 0;
+            int addedDistance = Math.abs(requestedFloor - floor);
+            if (node != null) {
+                Request enqueuedRequest = node.getRequest();
+                if (enqueuedRequest.equals(request) || (isFloorRequest && enqueuedRequest.getFloor() == requestedFloor)) {
+                    return false;
+                }
+                int nextFloor = enqueuedRequest.getFloor();
+                int directSteps = stepsBetween(floor, nextFloor, closedStart);
+                delaySteps = stepsToRequest + stepsBetween(requestedFloor, nextFloor, false) - directSteps;
+                addedDistance += Math.abs(nextFloor - requestedFloor) - Math.abs(nextFloor - floor);
+
+                insertion.set(controller.getElevatorID(), index, queueLength, steps + stepsToRequest, stops,
+                        normalRequests - index, delaySteps, addedDistance, passengers, capacity);
+                if (index >= firstIndex) {
+                    consider(controller, index);
+                }
+
+                steps += directSteps;
+                floor = nextFloor;
+                stops++;
+                node = node.getNext();
+            } else {
+                insertion.set(controller.getElevatorID(), index, queueLength, steps + stepsToRequest, stops,
+                        0, delaySteps, addedDistance, passengers, capacity);
+                consider(controller, index);
+            }
+        }
+        return true;
+    }
+
+    private void consider(ElevatorController controller, int index) {
+        if (skipFull && controller.isFull()) {
+            return;
+        }
+        double cost = 0;
+        for (int i = 0; i < terms.length; i++) {
+            cost += weights[i] * terms[i].cost(insertion);
+        }
+        if (cost < bestCost) {
+            bestCost = cost;
+            bestController = controller;
+            bestIndex = index;
+        }
+    }
+
+    /**
+     * Counts steps needed to serve a stop on given floor after serving the previous one.
+     * Like {@link ElevatorController#calculateStepsToReachFloor(int)}, it assumes that closing and opening the door cost one step each.
+     *
+     * @param fromFloor   floor of the previous stop
+     * @param toFloor     floor of the next stop
+     * @param closedStart true if the elevator starts with already closed door
+     * @return number of steps
+     */
+    private static int stepsBetween(int fromFloor, int toFloor, boolean closedStart) {
+        if (fromFloor == toFloor) {
+            return 1;
+        }
+        return Math.abs(toFloor - fromFloor) + (closedStart ? 1 : 2);
+    }
+}
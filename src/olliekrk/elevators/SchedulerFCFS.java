@@ -16,12 +16,17 @@ import static olliekrk.elevators.requests.RequestType.*;
  * Assigns the requests so that there is a guarantee that the earlier a request comes to be served, the earlier it will be served.
  */
 public class SchedulerFCFS implements ElevatorsScheduler {
+    /**
+     * Name of the tier reported by {@link DispatchEvent}.
+     */
+    static final String TIER_FIRST_TO_REACH = "FIRST_TO_REACH";
+
     /**
      * Enqueues request of type UP or DOWN to one chosen controller.
      * <p>
      * Follows the FC-FS rule:
      * First it calculates how many steps will it take for each elevator to reach requested floor, including steps required for opening and closing doors.
-     * Then it always picks the controller which will reach requested floor first.
+     * Then it always picks the controller which will reach requested floor first, skipping full elevators unless every elevator is full.
      *
      * @param request             pickup request to be enqueued
      * @param elevatorControllers elevator controllers available in the system
@@ -38,10 +43,13 @@ public class SchedulerFCFS implements ElevatorsScheduler {
         }
 
         //find controller which will first reach requested floor
+        DispatchEvent event = DispatchEvent.start();
         ElevatorController chosenController = elevatorControllers
                 .stream()
-                .min(Comparator.comparingInt(controller -> controller.calculateStepsToReachFloor(request.getFloor())))
+                .min(Comparator.comparing(ElevatorController::isFull)
+                        .thenComparingInt(controller -> controller.calculateStepsToReachFloor(request.getFloor())))
                 .orElse(null);
+        DispatchEvent.commit(event, this, request, chosenController, TIER_FIRST_TO_REACH, elevatorControllers.size());
 
         if (chosenController == null) {
             throw new ElevatorsSchedulerException("Failed to find any available elevator controller");
@@ -52,7 +60,7 @@ public class SchedulerFCFS implements ElevatorsScheduler {
                 .getRequestsQueue()
                 .stream()
                 .anyMatch(enqueuedRequest ->
-                        (request.getRequestType() == FLOOR && enqueuedRequest.getFloor().equals(request.getFloor())) || request.equals(enqueuedRequest));
+                        (request.getRequestType() == FLOOR && enqueuedRequest.getFloor() == request.getFloor()) || request.equals(enqueuedRequest));
 
         //if not then put it at the end of chosen controller's queue (FC-FS strategy)
         if (!alreadyEnqueued) {
@@ -87,7 +95,7 @@ public class SchedulerFCFS implements ElevatorsScheduler {
         boolean alreadyEnqueued = controller
                 .getRequestsQueue()
                 .stream()
-                .anyMatch(enqueuedRequest -> enqueuedRequest.getFloor().equals(request.getFloor()));
+                .anyMatch(enqueuedRequest -> enqueuedRequest.getFloor() == request.getFloor());
 
         //if not then put it at the end (FC-FS strategy)
         if (!alreadyEnqueued)
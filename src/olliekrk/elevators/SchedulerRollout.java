@@ -0,0 +1,121 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.exceptions.ElevatorsSchedulerException;
+import olliekrk.elevators.requests.Request;
+import olliekrk.elevators.requests.RequestType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+
+/**
+ * Scheduler extending {@link SchedulerScanner}, which decides every pickup request by looking ahead instead of greedy rules.
+ * <p>
+ * For every candidate elevator it forks the controller into a compact {@link ElevatorFork}, inserts the request in "scanner" order
+ * and simulates the fork forward for a given number of steps, with and without the request.
+ * The request is assigned to the elevator for which it increases the total waiting time of all enqueued requests the least,
+ * which accounts both for the wait of the new passenger and for the delay of passengers who are already waiting.
+ * Rollouts of the candidates read only their forks, so they can run in parallel.
+ * Rollouts are short, so running them in parallel pays off only for long horizons. It is therefore an opt-in,
+ * and it uses the common {@link java.util.concurrent.ForkJoinPool}.
+ * Full elevators are chosen only when every elevator is full.
+ * <p>
+ * Internal requests are enqueued in the same way as by {@link SchedulerScanner}.
+ */
+public class SchedulerRollout extends SchedulerScanner {
+    /**
+     * Name of the tier reported by {@link DispatchEvent}.
+     */
+    static final String TIER_ROLLOUT = "ROLLOUT";
+
+    /**
+     * Number of steps simulated by every rollout.
+     */
+    private final int horizon;
+    /**
+     * Flag indicating whether rollouts of the candidates run in parallel.
+     */
+    private final boolean parallel;
+
+    /**
+     * Creates a new scheduler running rollouts of the candidates one after another on the dispatching thread.
+     *
+     * @param horizon number of steps simulated by every rollout
+     */
+    public SchedulerRollout(int horizon) {
+        this(horizon, false);
+    }
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param horizon  number of steps simulated by every rollout
+     * @param parallel true to run rollouts of the candidates in parallel
+     */
+    public SchedulerRollout(int horizon, boolean parallel) {
+        if (horizon <= 0) {
+            throw new IllegalArgumentException("Rollout horizon must be positive");
+        }
+        this.horizon = horizon;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Enqueues pickup request to the elevator which would serve all enqueued requests with the lowest total waiting time.
+     *
+     * @param request             pickup request to be enqueued
+     * @param elevatorControllers elevator controllers available in the system
+     * @throws ElevatorsSchedulerException when the request can not be enqueued to any controller
+     */
+    @Override
+    public void enqueuePickupRequest(Request request, Collection<ElevatorController> elevatorControllers) throws ElevatorsSchedulerException {
+        if (request.getRequestType() != RequestType.UP && request.getRequestType() != RequestType.DOWN) {
+            throw new ElevatorsSchedulerException("Unsupported pickup request received");
+        }
+        List<ElevatorController> controllers = (elevatorControllers instanceof List && elevatorControllers instanceof RandomAccess)
+                ? (List<ElevatorController>) elevatorControllers
+                : new ArrayList<>(elevatorControllers);
+        int candidates = controllers.size();
+        if (candidates == 0) {
+            throw new ElevatorsSchedulerException("Failed to find available controller for given request");
+        }
+        DispatchEvent event = DispatchEvent.start();
+
+        //forks are taken on the calling thread, as only it may read the live controllers
+        int[] indexes = new int[candidates];
+        ElevatorFork[] forks = new ElevatorFork[candidates];
+        for (int i = 0; i < candidates; i++) {
+            ElevatorController controller = controllers.get(i);
+            indexes[i] = findIndexInScannerOrder(request, controller);
+            if (indexes[i] == ALREADY_ENQUEUED) {
+                DispatchEvent.commit(event, this, request, controller, TIER_ROLLOUT, candidates);
+                return;
+            }
+            forks[i] = ElevatorFork.of(controller);
+        }
+
+        long[] addedWait = new long[candidates];
+        IntStream rollouts = IntStream.range(0, candidates);
+        if (parallel && candidates > 1) {
+            rollouts = rollouts.parallel();
+        }
+        int requestedFloor = request.getFloor();
+        rollouts.forEach(i -> addedWait[i] = forks[i].rollout(horizon, indexes[i], requestedFloor) - forks[i].rollout(horizon, -1, 0));
+
+        boolean skipFull = ElevatorController.anyHasRoom(controllers);
+        int best = -1;
+        for (int i = 0; i < candidates; i++) {
+            if (skipFull && controllers.get(i).isFull()) {
+                continue;
+            }
+            if (best < 0 || addedWait[i] < addedWait[best]) {
+                best = i;
+            }
+        }
+        ElevatorController chosenController = controllers.get(best);
+        DispatchEvent.commit(event, this, request, chosenController, TIER_ROLLOUT, candidates);
+        chosenController.getRequestsQueue().add(indexes[best], request);
+    }
+}
@@ -4,10 +4,10 @@ import olliekrk.elevators.exceptions.ElevatorsSchedulerException;
 import olliekrk.elevators.requests.Request;
 import olliekrk.elevators.requests.RequestType;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.RandomAccess;
 
 import static olliekrk.elevators.requests.RequestType.FLOOR;
 import static olliekrk.elevators.requests.RequestType.RESTART;
@@ -25,12 +25,23 @@ import static olliekrk.elevators.requests.RequestType.RESTART;
  * 3. If there are none, pick elevator which is moving towards the requested floor in the direction identical to requested direction.
  * 4. If there are none, for every elevator calculate which one will move towards requested floor first.
  * <p>
- *
+ * Full elevators are not considered, unless every elevator is full.
  * <p>
  * Every times it has to assign a request to a chosen elevator, it checks if on a chosen queue, there are any requests pending in the elevator direction.
  * Then it places the request in the chosen place of a queue, so that the elevator will change its direction only after every request in its current direction is completed.
  */
 public class SchedulerScanner implements ElevatorsScheduler {
+    /**
+     * Index returned when the same request is already in the queue.
+     */
+    static final int ALREADY_ENQUEUED = -1;
+    /**
+     * Names of the tiers reported by {@link DispatchEvent}.
+     */
+    static final String TIER_INACTIVE_ON_FLOOR = "INACTIVE_ON_FLOOR";
+    static final String TIER_CLOSEST_INACTIVE = "CLOSEST_INACTIVE";
+    static final String TIER_CLOSEST_PASSING = "CLOSEST_PASSING";
+    static final String TIER_FASTEST = "FASTEST";
 
     /**
      * Among all available elevator controllers chooses one which would be optimal to enqueue pickup request to.
@@ -40,6 +51,8 @@ public class SchedulerScanner implements ElevatorsScheduler {
      * 2. If there are none, pick closest elevator which is standing on other floor.
      * 3. If there are none, pick elevator which is moving towards the requested floor in the direction identical to requested direction.
      * 4. If there are none, for every elevator calculate which one will move towards requested floor first.
+     * <p>
+     * Full elevators are not considered, unless every elevator is full.
      *
      * @param request             pickup request to be enqueued
      * @param elevatorControllers elevator controllers available in the system
@@ -47,37 +60,107 @@ public class SchedulerScanner implements ElevatorsScheduler {
      */
     @Override
     public void enqueuePickupRequest(Request request, Collection<ElevatorController> elevatorControllers) throws ElevatorsSchedulerException {
-        ElevatorController chosenController;
-
-        //if there is any elevator standing on requested floor, add this request to its queue
-        chosenController = findInactiveControllerOnRequestedFloor(request, elevatorControllers);
+        ElevatorController chosenController = chooseControllerForPickup(request, elevatorControllers);
         if (chosenController != null) {
             enqueueRequestInScannerOrder(request, chosenController);
-            return;
+        } else {
+            throw new ElevatorsSchedulerException("Failed to find available controller for given request");
         }
+    }
 
-        //if not, search for standing elevator on other floor, and pick the closest
-        chosenController = findClosestInactiveController(request, elevatorControllers);
-        if (chosenController != null) {
-            enqueueRequestInScannerOrder(request, chosenController);
-            return;
-        }
+    /**
+     * Evaluates every tier of candidates in a single pass over the controllers, reading their primitive state only.
+     * The choice is the same as if the tiers were searched one after another:
+     * within a tier the first of equally good controllers is chosen,
+     * and the steps for the 4th tier are counted only as long as no controller matched any higher tier.
+     * <p>
+     * Evaluation does not allocate, as long as the controllers are given as a {@link RandomAccess} list,
+     * which is how {@link ElevatorsSystem} passes them.
+     *
+     * @param request             pickup request to be enqueued
+     * @param elevatorControllers elevator controllers available in the system
+     * @return chosen controller or null if there are no controllers
+     * @throws ElevatorsSchedulerException if the request is not a pickup request
+     */
+    ElevatorController chooseControllerForPickup(Request request, Collection<ElevatorController> elevatorControllers) throws ElevatorsSchedulerException {
+        DispatchEvent event = DispatchEvent.start();
+        List<ElevatorController> controllers = (elevatorControllers instanceof List && elevatorControllers instanceof RandomAccess)
+                ? (List<ElevatorController>) elevatorControllers
+                : new ArrayList<>(elevatorControllers);
+        RequestType requestType = request.getRequestType();
+        boolean isPickupRequest = requestType == RequestType.UP || requestType == RequestType.DOWN;
+        int requestedFloor = request.getFloor();
+        boolean skipFull = ElevatorController.anyHasRoom(controllers);
+
+        //1. inactive elevator on requested floor
+        ElevatorController inactiveOnFloor = null;
+        //2. closest inactive elevator
+        ElevatorController closestInactive = null;
+        int closestInactiveDistance = Integer.MAX_VALUE;
+        //3. closest elevator passing requested floor in requested direction
+        ElevatorController closestPassing = null;
+        int closestPassingDistance = Integer.MAX_VALUE;
+        //4. elevator which would first reach requested floor
+        ElevatorController fastest = null;
+        int fastestSteps = Integer.MAX_VALUE;
+
+        for (int i = 0; i < controllers.size(); i++) {
+            ElevatorController controller = controllers.get(i);
+            if (skipFull && controller.isFull()) {
+                continue;
+            }
+            int currentFloor = controller.getCurrentFloor();
+            int distance = Math.abs(currentFloor - requestedFloor);
+
+            if (controller.isInactive()) {
+                if (inactiveOnFloor == null && distance == 0) {
+                    inactiveOnFloor = controller;
+                }
+                if (distance < closestInactiveDistance) {
+                    closestInactive = controller;
+                    closestInactiveDistance = distance;
+                }
+            } else if (isPickupRequest && distance < closestPassingDistance) {
+                //inactive elevator has its destination on the current floor, so it can never be passing
+                int destinationFloor = controller.getDestinationFloor();
+                boolean passing = (requestType == RequestType.UP)
+                        ? currentFloor < destinationFloor && currentFloor <= requestedFloor
+                        : currentFloor > destinationFloor && currentFloor >= requestedFloor;
+                if (passing) {
+                    closestPassing = controller;
+                    closestPassingDistance = distance;
+                }
+            }
 
-        //if not, search for elevators passing through requested floor
-        chosenController = findClosestPassingController(request, elevatorControllers);
-        if (chosenController != null) {
-            enqueueRequestInScannerOrder(request, chosenController);
-            return;
+            //steps are needed only if no controller has matched any higher tier so far
+            if (closestInactive == null && closestPassing == null) {
+                int steps = calculateStepsToCompleteRequestInScannerOrder(request, controller);
+                if (steps < fastestSteps) {
+                    fastest = controller;
+                    fastestSteps = steps;
+                }
+            }
         }
 
-        //if none is found pick elevator which will first reach requested floor
-        chosenController = findFastestAvailableController(request, elevatorControllers);
-
-        if (chosenController != null) {
-            enqueueRequestInScannerOrder(request, chosenController);
+        ElevatorController chosenController;
+        String tier;
+        if (inactiveOnFloor != null) {
+            chosenController = inactiveOnFloor;
+            tier = TIER_INACTIVE_ON_FLOOR;
+        } else if (closestInactive != null) {
+            chosenController = closestInactive;
+            tier = TIER_CLOSEST_INACTIVE;
+        } else if (!isPickupRequest) {
+            throw new ElevatorsSchedulerException("Unsupported pickup request received");
+        } else if (closestPassing != null) {
+            chosenController = closestPassing;
+            tier = TIER_CLOSEST_PASSING;
         } else {
-            throw new ElevatorsSchedulerException("Failed to find available controller for given request");
+            chosenController = fastest;
+            tier = TIER_FASTEST;
         }
+        DispatchEvent.commit(event, this, request, chosenController, tier, controllers.size());
+        return chosenController;
     }
 
     /**
@@ -89,6 +172,9 @@ public class SchedulerScanner implements ElevatorsScheduler {
      */
     @Override
     public void enqueueInternalRequest(Request request, ElevatorController controller) throws ElevatorsSchedulerException {
+        if (controller == null) {
+            throw new ElevatorsSchedulerException("Controller unavailable to proceed request");
+        }
         if (request.getRequestType() == RESTART) {
             enqueueRestartRequest(request, controller);
             return;
@@ -99,15 +185,14 @@ public class SchedulerScanner implements ElevatorsScheduler {
         }
 
         //check if requested floor is already enqueued
-        boolean alreadyEnqueued = controller
-                .getRequestsQueue()
-                .stream()
-                .anyMatch(enqueuedRequest -> enqueuedRequest.getFloor().equals(request.getFloor()));
-
-        //if requested floor is already on the queue, do nothing, otherwise insert it at the right index
-        if (!alreadyEnqueued) {
-            enqueueRequestInScannerOrder(request, controller);
+        for (RequestsQueue.Node node = controller.getRequestsQueue().getFirst(); node != null; node = node.getNext()) {
+            if (node.getRequest().getFloor() == request.getFloor()) {
+                return;
+            }
         }
+
+        //if requested floor is not on the queue, insert it at the right index
+        enqueueRequestInScannerOrder(request, controller);
     }
 
     /**
@@ -128,26 +213,58 @@ public class SchedulerScanner implements ElevatorsScheduler {
      * @throws ElevatorsSchedulerException if the request is of an unsupported type
      */
     private void enqueueRequestInScannerOrder(Request request, ElevatorController controller) throws ElevatorsSchedulerException {
-        List<Request> queue = controller.getRequestsQueue();
+        int queueIndex = findIndexInScannerOrder(request, controller);
+        if (queueIndex != ALREADY_ENQUEUED) {
+            controller.getRequestsQueue().add(queueIndex, request);
+        }
+    }
+
+    /**
+     * Finds the index at which the request would be inserted to the controller's queue in "scanner" order.
+     * Pickups of a full elevator are moved behind its first FLOOR stop, see {@link ElevatorController#firstIndexWithRoom()}.
+     * The index is cached for the current version of the controller, so it is not searched again until the controller changes.
+     *
+     * @param request    request to be enqueued
+     * @param controller controller to receive the request
+     * @return index in the queue or {@link #ALREADY_ENQUEUED} if the same request is already in the queue
+     * @throws ElevatorsSchedulerException if the request is of an unsupported type
+     * @see #enqueueRequestInScannerOrder(Request, ElevatorController) for description of the "scanner" order
+     */
+    int findIndexInScannerOrder(Request request, ElevatorController controller) throws ElevatorsSchedulerException {
+        InsertionCache cache = controller.getInsertionCache();
+        long version = controller.getVersion();
+        int queueIndex = cache.getIndex(version, request.getRequestType(), request.getFloor());
+        if (queueIndex == InsertionCache.MISSING) {
+            queueIndex = calculateIndexInScannerOrder(request, controller);
+            if (queueIndex != ALREADY_ENQUEUED && request.getRequestType() != FLOOR) {
+                //full elevator would leave the passenger behind again, unless it first stops to let somebody out
+                queueIndex = Math.max(queueIndex, controller.firstIndexWithRoom());
+            }
+            cache.putIndex(version, request.getRequestType(), request.getFloor(), queueIndex);
+        }
+        return queueIndex;
+    }
+
+    private int calculateIndexInScannerOrder(Request request, ElevatorController controller) throws ElevatorsSchedulerException {
+        RequestsQueue queue = controller.getRequestsQueue();
         if (queue.contains(request)) {
-            return;
+            return ALREADY_ENQUEUED;
         }
         if (queue.isEmpty()) {
-            controller.getRequestsQueue().add(request);
-            return;
+            return 0;
         }
 
         int queueIndex = 0;
         int requestedFloor = request.getFloor();
-        int fromFloor = controller.getElevatorStatus().getCurrentFloor();
-        int toFloor = controller.getElevatorStatus().getDestinationFloor();
+        int fromFloor = controller.getCurrentFloor();
+        int toFloor = controller.getDestinationFloor();
 
         boolean isMovingUP = fromFloor < toFloor;
         boolean wasMovingUp = isMovingUP;
 
         //for every two next requests we check for 2 situations: missing requested floor or direction change before reaching requested floor
-        for (Request enqueuedRequest : queue) {
-            toFloor = enqueuedRequest.getFloor();
+        for (RequestsQueue.Node node = queue.getFirst(); node != null; node = node.getNext()) {
+            toFloor = node.getRequest().getFloor();
             isMovingUP = fromFloor < toFloor;
 
             boolean passingUpwards = fromFloor < requestedFloor && requestedFloor < toFloor;
@@ -177,8 +294,7 @@ public class SchedulerScanner implements ElevatorsScheduler {
 
             //if any of those events happen, insert request just before it would have happen
             if (passingRequestedFloor || insertBeforeSwitch) {
-                controller.getRequestsQueue().add(queueIndex, request);
-                return;
+                return queueIndex;
             }
 
             wasMovingUp = isMovingUP;
@@ -187,93 +303,12 @@ public class SchedulerScanner implements ElevatorsScheduler {
         }
 
         //else add at the end of a queue
-        controller.getRequestsQueue().add(request);
-    }
-
-    /**
-     * Finds an elevator, which is standing inactive on requested floor.
-     *
-     * @param request             request to be enqueued
-     * @param elevatorControllers all available controllers
-     * @return an {@link ElevatorController} of an elevator if it satisfies the criteria, otherwise null
-     */
-    private ElevatorController findInactiveControllerOnRequestedFloor(Request request, Collection<ElevatorController> elevatorControllers) {
-        return elevatorControllers
-                .stream()
-                .filter(controller -> controller.getElevatorStatus().getCurrentFloor() == request.getFloor())
-                .filter(ElevatorController::isInactive)
-                .findAny()
-                .orElse(null);
-    }
-
-    /**
-     * Finds an closest elevator, which is moving towards requested floor in the same direction as requested direction.
-     *
-     * @param request             request to be enqueued
-     * @param elevatorControllers all available controllers
-     * @return an {@link ElevatorController} of an closest elevator that satisfies the criteria, otherwise null
-     * @throws ElevatorsSchedulerException if the request is invalid
-     */
-    private ElevatorController findClosestPassingController(Request request, Collection<ElevatorController> elevatorControllers) throws ElevatorsSchedulerException {
-        Stream<ElevatorController> passingElevators;
-
-        switch (request.getRequestType()) {
-            case UP:
-                passingElevators = elevatorControllers
-                        .stream()
-                        .filter(controller -> {
-                            ElevatorStatus status = controller.getElevatorStatus();
-                            return status.getCurrentFloor() < status.getDestinationFloor() && status.getCurrentFloor() <= request.getFloor();
-                        });
-                break;
-            case DOWN:
-                passingElevators = elevatorControllers
-                        .stream()
-                        .filter(controller -> {
-                            ElevatorStatus status = controller.getElevatorStatus();
-                            return status.getCurrentFloor() > status.getDestinationFloor() && status.getCurrentFloor() >= request.getFloor();
-                        });
-                break;
-            default:
-                throw new ElevatorsSchedulerException("Unsupported pickup request received");
-        }
-
-        return passingElevators
-                .min(Comparator.comparingInt(controller -> Math.abs(controller.getElevatorStatus().getCurrentFloor() - request.getFloor())))
-                .orElse(null);
-    }
-
-    /**
-     * Finds an closest elevator, which is inactive but is standing on the other floor than requested.
-     *
-     * @param request             request to be enqueued
-     * @param elevatorControllers all available controllers
-     * @return an {@link ElevatorController} of an closest elevator that satisfies the criteria, otherwise null
-     */
-    private ElevatorController findClosestInactiveController(Request request, Collection<ElevatorController> elevatorControllers) {
-        return elevatorControllers
-                .stream()
-                .filter(ElevatorController::isInactive)
-                .min(Comparator.comparingInt(controller -> Math.abs(controller.getElevatorStatus().getCurrentFloor() - request.getFloor())))
-                .orElse(null);
-    }
-
-    /**
-     * For all given elevator controllers, checks which would be the first to reach requested floor in the "scanner" order and return it.
-     *
-     * @param request             request to be enqueued
-     * @param elevatorControllers all available controllers
-     * @return an {@link ElevatorController} of an elevator which would first reach requested floor
-     */
-    private ElevatorController findFastestAvailableController(Request request, Collection<ElevatorController> elevatorControllers) {
-        return elevatorControllers
-                .stream()
-                .min(Comparator.comparingInt(controller -> calculateStepsToCompleteRequestInScannerOrder(request, controller)))
-                .orElse(null);
+        return queue.size();
     }
 
     /**
      * For given controller, calculates how many steps would it need to reach requested floor by the specific "scanner" order.
+     * The result is cached for the current version of the controller, so it is not computed again until the controller changes.
      *
      * @param request    request to be enqueued
      * @param controller controller to be checked
@@ -281,7 +316,18 @@ public class SchedulerScanner implements ElevatorsScheduler {
      * @see SchedulerScanner class JavaDoc for "scanner" order description
      */
     private int calculateStepsToCompleteRequestInScannerOrder(Request request, ElevatorController controller) {
-        List<Request> queue = controller.getRequestsQueue();
+        InsertionCache cache = controller.getInsertionCache();
+        long version = controller.getVersion();
+        int stepsRequired = cache.getSteps(version, request.getRequestType(), request.getFloor());
+        if (stepsRequired == InsertionCache.MISSING) {
+            stepsRequired = countStepsToCompleteRequestInScannerOrder(request, controller);
+            cache.putSteps(version, request.getRequestType(), request.getFloor(), stepsRequired);
+        }
+        return stepsRequired;
+    }
+
+    private int countStepsToCompleteRequestInScannerOrder(Request request, ElevatorController controller) {
+        RequestsQueue queue = controller.getRequestsQueue();
 
         //case when such request is already in the queue
         if (queue.contains(request))
@@ -289,13 +335,13 @@ public class SchedulerScanner implements ElevatorsScheduler {
 
         //case when there are no requests in the queue
         if (queue.isEmpty()) {
-            return Math.abs(controller.getElevatorStatus().getCurrentFloor() - request.getFloor());
+            return Math.abs(controller.getCurrentFloor() - request.getFloor());
         }
 
         int stepsRequired = 0;
         int requestedFloor = request.getFloor();
-        int fromFloor = controller.getElevatorStatus().getCurrentFloor();
-        int toFloor = controller.getElevatorStatus().getDestinationFloor();
+        int fromFloor = controller.getCurrentFloor();
+        int toFloor = controller.getDestinationFloor();
 
         boolean isMovingUP = fromFloor < toFloor;
         boolean wasMovingUP;
@@ -303,9 +349,9 @@ public class SchedulerScanner implements ElevatorsScheduler {
         boolean insertBeforeSwitch = false;
 
         //case when there are other requests in the queue
-        for (Request enqueuedRequest : queue) {
+        for (RequestsQueue.Node node = queue.getFirst(); node != null; node = node.getNext()) {
             fromFloor = toFloor;
-            toFloor = enqueuedRequest.getFloor();
+            toFloor = node.getRequest().getFloor();
 
             wasMovingUP = isMovingUP;
             isMovingUP = fromFloor < toFloor;
@@ -0,0 +1,57 @@
+package olliekrk.elevators;
+
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder event describing a single {@link ElevatorsSystem#makeSimulationStep()}.
+ * <p>
+ * Disabled by default, enable it in the recording settings with {@code olliekrk.elevators.SimulationStep#enabled=true}.
+ * While disabled, {@link #start()} returns null and no event object is created.
+ */
+@Name("olliekrk.elevators.SimulationStep")
+@Label("Simulation Step")
+@Category({"Elevators"})
+@Description("Single simulation step of an elevators system")
+@Enabled(false)
+@StackTrace(false)
+final class SimulationStepEvent extends Event {
+    private static final EventType EVENT_TYPE = EventType.getEventType(SimulationStepEvent.class);
+
+    @Label("Active Elevators")
+    @Description("Number of elevators stepped, idle elevators are skipped")
+    int activeElevators;
+
+    @Label("Completed Requests")
+    int completedRequests;
+
+    @Label("Enqueued Requests")
+    @Description("Number of requests enqueued after the step")
+    int enqueuedRequests;
+
+    /**
+     * Starts timing of a new event, if the event is enabled.
+     *
+     * @return started event or null if the event is disabled
+     */
+    static SimulationStepEvent start() {
+        if (!EVENT_TYPE.isEnabled()) {
+            return null;
+        }
+        SimulationStepEvent event = new SimulationStepEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits the event started by {@link #start()}, doing nothing if it was disabled.
+     */
+    static void commit(SimulationStepEvent event, int activeElevators, int completedRequests, int enqueuedRequests) {
+        if (event == null || !event.shouldCommit()) {
+            return;
+        }
+        event.activeElevators = activeElevators;
+        event.completedRequests = completedRequests;
+        event.enqueuedRequests = enqueuedRequests;
+        event.commit();
+    }
+}
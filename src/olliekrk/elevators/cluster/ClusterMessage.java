@@ -0,0 +1,257 @@
+package olliekrk.elevators.cluster;
+
+import olliekrk.elevators.requests.Request;
+import olliekrk.elevators.requests.RequestFactory;
+import olliekrk.elevators.requests.RequestPriority;
+import olliekrk.elevators.requests.RequestType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Message exchanged between nodes of a cluster, either a single request for a building or the whole state of a building.
+ * <p>
+ * Every message is sent as a frame prefixed by its int length, in big-endian byte order:
+ * <pre>
+ * offset 0: int   length of the rest of the frame
+ * offset 4: byte  kind of the message (1 - request, 2 - building)
+ * offset 5: byte  number of times the message was forwarded
+ * offset 6: short length of the building ID, followed by the ID in UTF-8
+ * </pre>
+ * A request is followed by its 10-byte encoding: byte type, byte priority, int elevator ID (-1 for external requests)
+ * and int floor. A building is followed by the int number of elevators, and for every elevator by its int ID, int current floor,
+ * int capacity, int number of passengers inside, int number of its enqueued requests and the encoded requests in the order of the queue.
+ * A request made by several passengers is repeated once per passenger.
+ */
+final class ClusterMessage {
+    static final byte KIND_REQUEST = 1;
+    static final byte KIND_BUILDING = 2;
+    /**
+     * Limit of forwards, which stops messages bouncing between nodes with different views of the cluster.
+     */
+    static final int MAX_HOPS = 8;
+    /**
+     * Limit of the length of a single frame.
+     */
+    static final int MAX_FRAME_SIZE = 1 << 24;
+    private static final int REQUEST_SIZE = 10;
+    private static final int NO_ELEVATOR = -1;
+
+    private final byte kind;
+    private final int hops;
+    private final String buildingID;
+    /**
+     * Request of a request message, null for building messages.
+     */
+    private final Request request;
+    /**
+     * Elevators of a building message, null for request messages.
+     */
+    private final List<ElevatorState> elevators;
+
+    private ClusterMessage(byte kind, int hops, String buildingID, Request request, List<ElevatorState> elevators) {
+        this.kind = kind;
+        this.hops = hops;
+        this.buildingID = buildingID;
+        this.request = request;
+        this.elevators = elevators;
+    }
+
+    static ClusterMessage request(String buildingID, Request request) {
+        return new ClusterMessage(KIND_REQUEST, 0, buildingID, request, null);
+    }
+
+    static ClusterMessage building(String buildingID, List<ElevatorState> elevators) {
+        return new ClusterMessage(KIND_BUILDING, 0, buildingID, null, elevators);
+    }
+
+    /**
+     * Creates a copy of the message to be forwarded to another node.
+     */
+    ClusterMessage forwarded() {
+        return new ClusterMessage(kind, hops + 1, buildingID, request, elevators);
+    }
+
+    byte getKind() {
+        return kind;
+    }
+
+    int getHops() {
+        return hops;
+    }
+
+    String getBuildingID() {
+        return buildingID;
+    }
+
+    Request getRequest() {
+        return request;
+    }
+
+    List<ElevatorState> getElevators() {
+        return elevators;
+    }
+
+    /**
+     * Encodes the message as a frame, including its length prefix.
+     *
+     * @return buffer ready to be written
+     */
+    ByteBuffer encode() {
+        byte[] id = buildingID.getBytes(StandardCharsets.UTF_8);
+        int size = Integer.BYTES + 2 + Short.BYTES + id.length;
+        if (kind == KIND_REQUEST) {
+            size += REQUEST_SIZE;
+        } else {
+            size += Integer.BYTES;
+            for (ElevatorState elevator : elevators) {
+                size += 5 * Integer.BYTES + elevator.requests.size() * REQUEST_SIZE;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(size - Integer.BYTES);
+        buffer.put(kind);
+        buffer.put((byte) hops);
+        buffer.putShort((short) id.length);
+        buffer.put(id);
+        if (kind == KIND_REQUEST) {
+            putRequest(buffer, request);
+        } else {
+            buffer.putInt(elevators.size());
+            for (ElevatorState elevator : elevators) {
+                buffer.putInt(elevator.elevatorID);
+                buffer.putInt(elevator.currentFloor);
+                buffer.putInt(elevator.capacity);
+                buffer.putInt(elevator.passengers);
+                buffer.putInt(elevator.requests.size());
+                for (Request enqueuedRequest : elevator.requests) {
+                    putRequest(buffer, enqueuedRequest);
+                }
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Decodes a single frame.
+     *
+     * @param frame content of the frame, without its length prefix
+     * @return decoded message or null if the frame is malformed
+     */
+    static ClusterMessage decode(ByteBuffer frame) {
+        try {
+            byte kind = frame.get();
+            int hops = frame.get();
+            byte[] id = new byte[frame.getShort()];
+            frame.get(id);
+            String buildingID = new String(id, StandardCharsets.UTF_8);
+            if (kind == KIND_REQUEST) {
+                Request request = getRequest(frame);
+                return request == null ? null : new ClusterMessage(kind, hops, buildingID, request, null);
+            } else if (kind == KIND_BUILDING) {
+                int elevatorCount = frame.getInt();
+                List<ElevatorState> elevators = new ArrayList<>(Math.min(elevatorCount, frame.remaining()));
+                for (int i = 0; i < elevatorCount; i++) {
+                    int elevatorID = frame.getInt();
+                    int currentFloor = frame.getInt();
+                    int capacity = frame.getInt();
+                    int passengers = frame.getInt();
+                    int requestCount = frame.getInt();
+                    List<Request> requests = new ArrayList<>(Math.min(requestCount, frame.remaining()));
+                    for (int j = 0; j < requestCount; j++) {
+                        Request request = getRequest(frame);
+                        if (request == null) {
+                            return null;
+                        }
+                        requests.add(request);
+                    }
+                    elevators.add(new ElevatorState(elevatorID, currentFloor, capacity, passengers, requests));
+                }
+                return new ClusterMessage(kind, hops, buildingID, null, elevators);
+            }
+            return null;
+        } catch (RuntimeException e) {
+            //buffer underflow or negative length
+            return null;
+        }
+    }
+
+    private static void putRequest(ByteBuffer buffer, Request request) {
+        buffer.put((byte) request.getRequestType().ordinal());
+        buffer.put((byte) request.getPriority().ordinal());
+        buffer.putInt(request.getElevatorID() == null ? NO_ELEVATOR : request.getElevatorID());
+        buffer.putInt(request.getFloor());
+    }
+
+    private static Request getRequest(ByteBuffer buffer) {
+        byte type = buffer.get();
+        byte priority = buffer.get();
+        int elevatorID = buffer.getInt();
+        int floor = buffer.getInt();
+        if (type < 0 || type >= RequestType.values().length || priority < 0 || priority >= RequestPriority.values().length) {
+            return null;
+        }
+        switch (RequestType.values()[type]) {
+            case UP:
+            case DOWN:
+                if (priority != RequestPriority.NORMAL.ordinal()) {
+                    //the system creates hall calls of NORMAL priority only
+                    return null;
+                }
+                return type == RequestType.UP.ordinal() ? RequestFactory.createUpRequest(floor) : RequestFactory.createDownRequest(floor);
+            case FLOOR:
+                return RequestFactory.createPriorityRequest(elevatorID, floor, RequestPriority.values()[priority]);
+            case RESTART:
+                return RequestFactory.createRestartRequest(elevatorID, floor);
+            default:
+                return RequestFactory.createEvacuationRequest();
+        }
+    }
+
+    /**
+     * State of a single elevator of a migrated building.
+     */
+    static final class ElevatorState {
+        private final int elevatorID;
+        private final int currentFloor;
+        private final int capacity;
+        /**
+         * Number of passengers inside the elevator.
+         */
+        private final int passengers;
+        /**
+         * Enqueued requests, each repeated once per passenger who has made it.
+         */
+        private final List<Request> requests;
+
+        ElevatorState(int elevatorID, int currentFloor, int capacity, int passengers, List<Request> requests) {
+            this.elevatorID = elevatorID;
+            this.currentFloor = currentFloor;
+            this.capacity = capacity;
+            this.passengers = passengers;
+            this.requests = requests;
+        }
+
+        int getElevatorID() {
+            return elevatorID;
+        }
+
+        int getCurrentFloor() {
+            return currentFloor;
+        }
+
+        int getCapacity() {
+            return capacity;
+        }
+
+        int getPassengers() {
+            return passengers;
+        }
+
+        List<Request> getRequests() {
+            return requests;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package olliekrk.elevators.cluster;
+
+import olliekrk.elevators.Elevator;
+import olliekrk.elevators.ElevatorSnapshot;
+import olliekrk.elevators.ElevatorsScheduler;
+import olliekrk.elevators.ElevatorsSystem;
+import olliekrk.elevators.requests.Request;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Node of a cluster of dispatchers, running in its own process and hosting a part of the buildings of the cluster.
+ * <p>
+ * Every building is an independent {@link ElevatorsSystem}, owned by the node chosen by a consistent {@link HashRing}
+ * of the cluster members. Requests and new buildings can be submitted to any node, which routes them to the owner
+ * over a {@link LoopbackTransport}, so a single process never hosts every building and its pauses affect only its own buildings.
+ * <p>
+ * Membership is changed with {@link #join(String, InetSocketAddress)} and {@link #leave(String)}, which should be called
+ * on every node. Afterwards each node migrates buildings it no longer owns to their new owners: the state of the building,
+ * that is current floors, capacities and passengers of its elevators and their enqueued requests, is sent to the new owner,
+ * which registers the elevators and replays the requests through its scheduler, once per passenger who has made them. Requests which arrive before their building are buffered
+ * by the owner and replayed after the building. Handles of migrated requests are not carried over.
+ * <p>
+ * Buildings are stepped by the thread calling {@link #step()}, other methods can be called by any thread.
+ */
+public class ClusterNode implements Closeable {
+    private final String nodeID;
+    /**
+     * Supplier of schedulers of hosted buildings.
+     */
+    private final Supplier<? extends ElevatorsScheduler> schedulers;
+    private final LoopbackTransport transport;
+    /**
+     * Addresses of cluster members, the key is ID of a node.
+     */
+    private final Map<String, InetSocketAddress> members;
+    private volatile HashRing ring;
+    private volatile boolean membershipChanged;
+    /**
+     * Messages addressed to this node, processed by the stepping thread.
+     */
+    private final Queue<ClusterMessage> inbox;
+    /**
+     * Hosted buildings, modified only by the stepping thread.
+     */
+    private final Map<String, ElevatorsSystem> buildings;
+    /**
+     * Requests of buildings owned by this node which have not arrived yet, used only by the stepping thread.
+     */
+    private final Map<String, List<Request>> bufferedRequests;
+    /**
+     * Number of requests which could not be delivered to any node.
+     */
+    private final AtomicLong droppedRequests;
+
+    /**
+     * Creates a new node, which joins the cluster once started.
+     *
+     * @param nodeID     ID of the node, unique in the cluster
+     * @param schedulers supplier of schedulers of hosted buildings
+     */
+    public ClusterNode(String nodeID, Supplier<? extends ElevatorsScheduler> schedulers) {
+        this.nodeID = nodeID;
+        this.schedulers = schedulers;
+        this.transport = new LoopbackTransport(this::receive);
+        this.members = new ConcurrentHashMap<>();
+        this.ring = new HashRing(HashRing.DEFAULT_VIRTUAL_NODES);
+        this.inbox = new ConcurrentLinkedQueue<>();
+        this.buildings = new ConcurrentHashMap<>();
+        this.bufferedRequests = new HashMap<>();
+        this.droppedRequests = new AtomicLong();
+    }
+
+    /**
+     * Starts the transport and adds this node to its own view of the cluster.
+     *
+     * @param port port of the loopback interface to listen on, 0 picks any free port
+     * @throws IOException if the transport could not be started
+     */
+    public void start(int port) throws IOException {
+        transport.start(port);
+        join(nodeID, transport.getLocalAddress());
+    }
+
+    /**
+     * Gets the address other nodes should use to join this node to their views of the cluster.
+     *
+     * @return local address of the transport
+     * @throws IOException if the address could not be read
+     */
+    public InetSocketAddress getAddress() throws IOException {
+        return transport.getLocalAddress();
+    }
+
+    public String getNodeID() {
+        return nodeID;
+    }
+
+    /**
+     * Adds a node to this node's view of the cluster.
+     * Buildings which now belong to the added node are migrated to it during the next step.
+     *
+     * @param memberID ID of the node
+     * @param address  address of the node's transport
+     */
+    public synchronized void join(String memberID, InetSocketAddress address) {
+        members.put(memberID, address);
+        ring = ring.withNode(memberID);
+        membershipChanged = true;
+    }
+
+    /**
+     * Removes a node from this node's view of the cluster.
+     * When this node leaves, every building it hosts is migrated to the remaining nodes during the next step.
+     *
+     * @param memberID ID of the node
+     */
+    public synchronized void leave(String memberID) {
+        ring = ring.withoutNode(memberID);
+        membershipChanged = true;
+    }
+
+    /**
+     * Creates a new building, with every elevator on the ground floor, on the node owning it.
+     *
+     * @param buildingID ID of the building, unique in the cluster
+     * @param elevators  number of elevators, which get IDs from 0
+     */
+    public void createBuilding(String buildingID, int elevators) {
+        createBuilding(buildingID, elevators, Elevator.UNLIMITED_CAPACITY);
+    }
+
+    /**
+     * Creates a new building of elevators carrying a limited number of passengers, with every elevator on the ground floor, on the node owning it.
+     *
+     * @param buildingID ID of the building, unique in the cluster
+     * @param elevators  number of elevators, which get IDs from 0
+     * @param capacity   maximum number of passengers of every elevator
+     */
+    public void createBuilding(String buildingID, int elevators, int capacity) {
+        if (elevators <= 0 || elevators > ElevatorsSystem.ELEVATORS_LIMIT) {
+            throw new IllegalArgumentException("Number of elevators must be between 1 and " + ElevatorsSystem.ELEVATORS_LIMIT);
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity of elevators must be positive");
+        }
+        List<ClusterMessage.ElevatorState> elevatorStates = new ArrayList<>(elevators);
+        for (int i = 0; i < elevators; i++) {
+            elevatorStates.add(new ClusterMessage.ElevatorState(i, 0, capacity, 0, Collections.emptyList()));
+        }
+        route(ClusterMessage.building(buildingID, elevatorStates));
+    }
+
+    /**
+     * Routes the request to the node owning given building.
+     *
+     * @param buildingID ID of the building
+     * @param request    request to be enqueued to the building
+     */
+    public void submitRequest(String buildingID, Request request) {
+        if (request == null) {
+            System.err.println("Failed to submit an empty request");
+            return;
+        }
+        route(ClusterMessage.request(buildingID, request));
+    }
+
+    /**
+     * Dispatches messages received since the last step, migrates buildings after membership changes
+     * and makes a single simulation step of every hosted building.
+     * Should be called by a single thread.
+     */
+    public void step() {
+        ClusterMessage message;
+        while ((message = inbox.poll()) != null) {
+            if (message.getKind() == ClusterMessage.KIND_REQUEST) {
+                dispatchRequest(message);
+            } else {
+                dispatchBuilding(message);
+            }
+        }
+        if (membershipChanged) {
+            membershipChanged = false;
+            migrateBuildings();
+        }
+        for (ElevatorsSystem system : buildings.values()) {
+            system.makeSimulationStep();
+        }
+    }
+
+    /**
+     * Gets IDs of buildings hosted by this node.
+     */
+    public Set<String> getHostedBuildings() {
+        return new HashSet<>(buildings.keySet());
+    }
+
+    /**
+     * Gets a building hosted by this node.
+     * It is stepped by the thread calling {@link #step()}, so other threads should only read its published state,
+     * for example with {@link ElevatorsSystem#forEachSnapshot(java.util.function.Consumer)}.
+     *
+     * @param buildingID ID of the building
+     * @return hosted building or null if this node does not host it
+     */
+    public ElevatorsSystem getBuilding(String buildingID) {
+        return buildings.get(buildingID);
+    }
+
+    /**
+     * Gets the number of requests which could not be delivered to any node.
+     */
+    public long getDroppedRequests() {
+        return droppedRequests.get();
+    }
+
+    /**
+     * Stops the transport. Buildings still hosted by the node are lost, so the node should first leave the cluster.
+     *
+     * @throws IOException if the transport could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        transport.close();
+    }
+
+    private void receive(ClusterMessage message) {
+        inbox.add(message);
+    }
+
+    /**
+     * Sends the message to the node owning its building, or puts it to the inbox if this node is the owner.
+     */
+    private void route(ClusterMessage message) {
+        String owner = ring.ownerOf(message.getBuildingID());
+        if (owner == null || owner.equals(nodeID)) {
+            inbox.add(message);
+            return;
+        }
+        InetSocketAddress address = members.get(owner);
+        try {
+            if (address == null) {
+                throw new IOException("Address of node " + owner + " is unknown");
+            }
+            transport.send(address, message);
+        } catch (IOException e) {
+            System.err.println("Failed to send message to node " + owner + ": " + e.getMessage());
+            if (message.getKind() == ClusterMessage.KIND_REQUEST) {
+                droppedRequests.incrementAndGet();
+            } else {
+                //buildings are never dropped, this node hosts it until the next migration
+                inbox.add(message);
+            }
+        }
+    }
+
+    private void dispatchRequest(ClusterMessage message) {
+        String buildingID = message.getBuildingID();
+        ElevatorsSystem system = buildings.get(buildingID);
+        if (system != null) {
+            system.enqueueRequest(message.getRequest());
+        } else if (nodeID.equals(ring.ownerOf(buildingID))) {
+            //the building is still being migrated to this node
+            bufferedRequests.computeIfAbsent(buildingID, id -> new ArrayList<>()).add(message.getRequest());
+        } else if (message.getHops() < ClusterMessage.MAX_HOPS) {
+            route(message.forwarded());
+        } else {
+            System.err.println("Request for building " + buildingID + " was dropped after " + message.getHops() + " forwards");
+            droppedRequests.incrementAndGet();
+        }
+    }
+
+    private void dispatchBuilding(ClusterMessage message) {
+        String buildingID = message.getBuildingID();
+        String owner = ring.ownerOf(buildingID);
+        if (owner != null && !owner.equals(nodeID) && message.getHops() < ClusterMessage.MAX_HOPS) {
+            route(message.forwarded());
+            return;
+        }
+        ElevatorsSystem system = new ElevatorsSystem(schedulers.get());
+        for (ClusterMessage.ElevatorState elevator : message.getElevators()) {
+            system.registerElevator(elevator.getElevatorID(), elevator.getCurrentFloor(), elevator.getCapacity(), elevator.getPassengers());
+        }
+        //requests are replayed in the order of the queues, then the ones which have arrived before the building
+        List<Request> replayedBuildingRequests = new ArrayList<>();
+        for (ClusterMessage.ElevatorState elevator : message.getElevators()) {
+            List<Request> buildingRequests = new ArrayList<>();
+            for (Request request : elevator.getRequests()) {
+                if (request.getElevatorID() == null) {
+                    //requests of the whole building, such as evacuation, are held by the queue of every elevator they were enqueued to
+                    if (replayedBuildingRequests.contains(request)) {
+                        continue;
+                    }
+                    buildingRequests.add(request);
+                }
+                system.enqueueRequest(request);
+            }
+            replayedBuildingRequests.addAll(buildingRequests);
+        }
+        List<Request> requests = bufferedRequests.remove(buildingID);
+        if (requests != null) {
+            for (Request request : requests) {
+                system.enqueueRequest(request);
+            }
+        }
+        buildings.put(buildingID, system);
+    }
+
+    /**
+     * Sends snapshots of buildings which belong to other nodes to their owners, together with buffered requests of those buildings.
+     */
+    private void migrateBuildings() {
+        Iterator<Map.Entry<String, ElevatorsSystem>> iterator = buildings.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, ElevatorsSystem> building = iterator.next();
+            String owner = ring.ownerOf(building.getKey());
+            if (owner == null || owner.equals(nodeID)) {
+                continue;
+            }
+            ElevatorsSystem system = building.getValue();
+            system.dispatchSubmittedRequests();
+            List<ClusterMessage.ElevatorState> elevatorStates = new ArrayList<>();
+            for (ElevatorSnapshot snapshot : system.getElevatorsSnapshots()) {
+                elevatorStates.add(new ClusterMessage.ElevatorState(snapshot.getElevatorID(), snapshot.getCurrentFloor(),
+                        snapshot.getCapacity(), snapshot.getPassengers(), system.getPassengerRequests(snapshot.getElevatorID())));
+            }
+            iterator.remove();
+            route(ClusterMessage.building(building.getKey(), elevatorStates));
+        }
+
+        Iterator<Map.Entry<String, List<Request>>> buffered = bufferedRequests.entrySet().iterator();
+        while (buffered.hasNext()) {
+            Map.Entry<String, List<Request>> requests = buffered.next();
+            String owner = ring.ownerOf(requests.getKey());
+            if (owner != null && !owner.equals(nodeID)) {
+                buffered.remove();
+                for (Request request : requests.getValue()) {
+                    route(ClusterMessage.request(requests.getKey(), request));
+                }
+            }
+        }
+    }
+}
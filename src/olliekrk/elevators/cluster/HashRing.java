@@ -0,0 +1,118 @@
+package olliekrk.elevators.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Consistent hashing ring assigning keys, such as IDs of buildings, to nodes of a cluster.
+ * <p>
+ * Every node is placed on the ring at several points (virtual nodes), and a key belongs to the first node found
+ * clockwise from the hash of the key. Thus when a node joins or leaves, only the keys between its points and their
+ * predecessors change their owner, and the keys are spread evenly even between few nodes.
+ * <p>
+ * The ring is immutable, so it can be shared between threads - adding or removing a node creates a new ring.
+ */
+public final class HashRing {
+    /**
+     * Default number of points of every node.
+     */
+    public static final int DEFAULT_VIRTUAL_NODES = 64;
+
+    private final int virtualNodes;
+    private final NavigableMap<Long, String> points;
+    private final Set<String> nodes;
+
+    /**
+     * Creates an empty ring.
+     *
+     * @param virtualNodes number of points of every node
+     */
+    public HashRing(int virtualNodes) {
+        this(virtualNodes, new TreeMap<>(), new TreeSet<>());
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("Number of virtual nodes must be positive");
+        }
+    }
+
+    private HashRing(int virtualNodes, NavigableMap<Long, String> points, Set<String> nodes) {
+        this.virtualNodes = virtualNodes;
+        this.points = points;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Creates a ring with given node added.
+     *
+     * @param node ID of the node
+     * @return new ring, or this ring if it already contains the node
+     */
+    public HashRing withNode(String node) {
+        if (nodes.contains(node)) {
+            return this;
+        }
+        TreeMap<Long, String> newPoints = new TreeMap<>(points);
+        for (int i = 0; i < virtualNodes; i++) {
+            newPoints.put(hash(node + '#' + i), node);
+        }
+        Set<String> newNodes = new TreeSet<>(nodes);
+        newNodes.add(node);
+        return new HashRing(virtualNodes, newPoints, newNodes);
+    }
+
+    /**
+     * Creates a ring with given node removed.
+     *
+     * @param node ID of the node
+     * @return new ring, or this ring if it does not contain the node
+     */
+    public HashRing withoutNode(String node) {
+        if (!nodes.contains(node)) {
+            return this;
+        }
+        TreeMap<Long, String> newPoints = new TreeMap<>(points);
+        newPoints.values().removeIf(node::equals);
+        Set<String> newNodes = new TreeSet<>(nodes);
+        newNodes.remove(node);
+        return new HashRing(virtualNodes, newPoints, newNodes);
+    }
+
+    /**
+     * Finds the node owning given key.
+     *
+     * @param key key, such as ID of a building
+     * @return ID of the owner, or null if the ring is empty
+     */
+    public String ownerOf(String key) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> point = points.ceilingEntry(hash(key));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    public Set<String> getNodes() {
+        return Collections.unmodifiableSet(nodes);
+    }
+
+    public boolean contains(String node) {
+        return nodes.contains(node);
+    }
+
+    /**
+     * Hashes given string with 64-bit FNV-1a, followed by a finalizer spreading the bits of similar strings.
+     */
+    static long hash(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,218 @@
+package olliekrk.elevators.cluster;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Transport of {@link ClusterMessage} frames between processes on the same host, over TCP connections bound to the loopback interface.
+ * <p>
+ * A single I/O thread accepts connections and decodes received frames, passing every message to the receiver.
+ * Messages are sent over one connection per peer, opened on the first message and written by the sending thread.
+ * Connections are opened without holding any lock, so a peer which is slow to accept does not block sending to other peers.
+ */
+class LoopbackTransport implements Closeable {
+    /**
+     * Initial size of a read buffer of every connection, it grows for larger frames.
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Consumer<ClusterMessage> receiver;
+    /**
+     * Outgoing connections, the key is the address of the peer.
+     * A connection opened concurrently for the same peer is closed, and the published one is used instead.
+     */
+    private final Map<InetSocketAddress, SocketChannel> connections;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread ioThread;
+    private volatile boolean running;
+
+    LoopbackTransport(Consumer<ClusterMessage> receiver) {
+        this.receiver = receiver;
+        this.connections = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Binds the server to the loopback interface and starts the I/O thread.
+     *
+     * @param port port to bind to, 0 picks any free port
+     * @throws IOException if the server could not be bound
+     */
+    synchronized void start(int port) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        ioThread = new Thread(this::serve, "elevators-cluster-transport");
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    /**
+     * Sends the message to the peer listening on given address, blocking until the whole frame is written.
+     *
+     * @param address address of the peer
+     * @param message message to be sent
+     * @throws IOException if the message could not be sent, the connection is then closed
+     */
+    void send(InetSocketAddress address, ClusterMessage message) throws IOException {
+        SocketChannel channel = connections.get(address);
+        if (channel == null) {
+            SocketChannel openedChannel = SocketChannel.open(address);
+            channel = connections.putIfAbsent(address, openedChannel);
+            if (channel != null) {
+                openedChannel.close();
+            } else {
+                channel = openedChannel;
+                if (!running) {
+                    //the transport was closed while the connection was being opened
+                    connections.remove(address, channel);
+                    channel.close();
+                    throw new IOException("Cluster transport is closed");
+                }
+            }
+        }
+        ByteBuffer frame = message.encode();
+        synchronized (channel) {
+            try {
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            } catch (IOException e) {
+                connections.remove(address, channel);
+                channel.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Stops the I/O thread and closes every connection.
+     *
+     * @throws IOException if the server could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            ioThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+        for (SocketChannel channel : connections.values()) {
+            channel.close();
+        }
+        connections.clear();
+    }
+
+    /**
+     * Main loop of the I/O thread.
+     */
+    private void serve() {
+        while (running) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        read(key);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Cluster transport failure: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(READ_BUFFER_SIZE));
+    }
+
+    private void read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+        int bytesRead;
+        try {
+            bytesRead = channel.read(buffer);
+        } catch (IOException e) {
+            bytesRead = -1;
+        }
+
+        buffer.flip();
+        boolean malformed = false;
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt(buffer.position());
+            if (length <= 0 || length > ClusterMessage.MAX_FRAME_SIZE) {
+                malformed = true;
+                break;
+            }
+            if (buffer.remaining() < Integer.BYTES + length) {
+                break;
+            }
+            ByteBuffer frame = buffer.slice();
+            frame.position(Integer.BYTES).limit(Integer.BYTES + length);
+            buffer.position(buffer.position() + Integer.BYTES + length);
+            ClusterMessage message = ClusterMessage.decode(frame.slice());
+            if (message == null) {
+                System.err.println("Cluster transport has received a malformed message");
+            } else {
+                receiver.accept(message);
+            }
+        }
+        //keep incomplete frame for the next read, growing the buffer if the frame does not fit
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            ByteBuffer grownBuffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            grownBuffer.put(buffer.flip());
+            key.attach(grownBuffer);
+        }
+
+        if (bytesRead < 0 || malformed) {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close cluster connection: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package olliekrk.elevators.exceptions;
+
+import olliekrk.elevators.RequestHandle;
+
+/**
+ * Class for representing failure of a request which was not completed by any elevator,
+ * passed to futures of {@link RequestHandle}.
+ */
+public class ElevatorsRequestException extends ElevatorsSystemException {
+    private final RequestHandle.State state;
+
+    public ElevatorsRequestException(RequestHandle.State state) {
+        super("Request was not completed: " + state);
+        this.state = state;
+    }
+
+    /**
+     * Gets the final state of the request.
+     */
+    public RequestHandle.State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,59 @@
+package olliekrk.elevators.gateway;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Batch of decoded requests, stored in primitive arrays so that decoding does not create any objects.
+ */
+class RequestBatch {
+    private byte[] types;
+    private int[] elevatorIDs;
+    private int[] floors;
+    private int size;
+
+    RequestBatch(int initialCapacity) {
+        this.types = new byte[initialCapacity];
+        this.elevatorIDs = new int[initialCapacity];
+        this.floors = new int[initialCapacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte getType(int index) {
+        return types[index];
+    }
+
+    int getElevatorID(int index) {
+        return elevatorIDs[index];
+    }
+
+    int getFloor(int index) {
+        return floors[index];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Decodes a single frame from the buffer's current position and appends it to the batch.
+     *
+     * @param buffer buffer with at least {@link RequestFrame#FRAME_SIZE} bytes remaining
+     */
+    void decode(ByteBuffer buffer) {
+        if (size == types.length) {
+            int capacity = types.length * 2;
+            types = Arrays.copyOf(types, capacity);
+            elevatorIDs = Arrays.copyOf(elevatorIDs, capacity);
+            floors = Arrays.copyOf(floors, capacity);
+        }
+        types[size] = buffer.get();
+        buffer.get();
+        elevatorIDs[size] = buffer.getShort();
+        floors[size] = buffer.getInt();
+        size++;
+    }
+}
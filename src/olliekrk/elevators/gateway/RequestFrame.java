@@ -0,0 +1,60 @@
+package olliekrk.elevators.gateway;
+
+import olliekrk.elevators.requests.RequestType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary framing of requests received by {@link RequestGateway}.
+ * <p>
+ * Every request is sent as a fixed-size frame of {@link #FRAME_SIZE} bytes, in big-endian byte order:
+ * <pre>
+ * offset 0: byte  request type (0 - UP, 1 - DOWN, 2 - FLOOR)
+ * offset 1: byte  reserved, should be 0
+ * offset 2: short elevator ID, only for FLOOR requests (otherwise ignored)
+ * offset 4: int   requested floor
+ * </pre>
+ */
+public final class RequestFrame {
+    /**
+     * Size of a single frame in bytes.
+     */
+    public static final int FRAME_SIZE = 8;
+    /**
+     * Codes of supported request types.
+     */
+    public static final byte TYPE_UP = 0;
+    public static final byte TYPE_DOWN = 1;
+    public static final byte TYPE_FLOOR = 2;
+
+    private RequestFrame() {
+    }
+
+    /**
+     * Writes a single frame to given buffer.
+     *
+     * @param buffer      buffer with at least {@link #FRAME_SIZE} bytes remaining
+     * @param requestType type of a request, one of UP, DOWN or FLOOR
+     * @param elevatorID  ID of an elevator for FLOOR requests
+     * @param floor       requested floor
+     */
+    public static void write(ByteBuffer buffer, RequestType requestType, int elevatorID, int floor) {
+        buffer.put(encodeType(requestType));
+        buffer.put((byte) 0);
+        buffer.putShort((short) elevatorID);
+        buffer.putInt(floor);
+    }
+
+    static byte encodeType(RequestType requestType) {
+        switch (requestType) {
+            case UP:
+                return TYPE_UP;
+            case DOWN:
+                return TYPE_DOWN;
+            case FLOOR:
+                return TYPE_FLOOR;
+            default:
+                throw new IllegalArgumentException("Request type cannot be framed: " + requestType);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package olliekrk.elevators.gateway;
+
+import olliekrk.elevators.ElevatorsSystem;
+import olliekrk.elevators.RequestSource;
+import olliekrk.elevators.requests.Request;
+import olliekrk.elevators.requests.RequestFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking TCP server receiving requests from external panels, framed as described in {@link RequestFrame}.
+ * <p>
+ * A single I/O thread accepts connections and decodes frames straight from direct buffers into a batch of primitive values.
+ * The batch is handed off to the system once per step - the gateway is a {@link RequestSource},
+ * so after being registered with {@link ElevatorsSystem#addRequestSource(RequestSource)}
+ * it is drained together with other submitted requests.
+ * <p>
+ * When the number of pending requests exceeds the limit, new requests are dropped and counted, until the batch is drained.
+ */
+public class RequestGateway implements RequestSource, Closeable {
+    /**
+     * Default limit of requests awaiting to be dispatched.
+     */
+    public static final int DEFAULT_MAX_PENDING_REQUESTS = 1 << 16;
+    /**
+     * Size of a read buffer of every connection.
+     */
+    private static final int READ_BUFFER_SIZE = RequestFrame.FRAME_SIZE * 8192;
+
+    /**
+     * Address the server is bound to.
+     */
+    private final InetSocketAddress address;
+    /**
+     * Limit of requests awaiting to be dispatched.
+     */
+    private final int maxPendingRequests;
+    /**
+     * Lock guarding the swap of batches.
+     */
+    private final Object batchLock;
+    /**
+     * Batch being filled by the I/O thread.
+     */
+    private RequestBatch fillingBatch;
+    /**
+     * Batch being dispatched by the thread stepping the system.
+     */
+    private RequestBatch drainingBatch;
+    /**
+     * Counters of received, dropped and malformed requests.
+     */
+    private final AtomicLong receivedRequests;
+    private final AtomicLong droppedRequests;
+    private final AtomicLong malformedRequests;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread ioThread;
+    private volatile boolean running;
+
+    /**
+     * Creates a new gateway, which will listen on given address once started.
+     *
+     * @param address address to bind to, port 0 picks any free port
+     */
+    public RequestGateway(InetSocketAddress address) {
+        this(address, DEFAULT_MAX_PENDING_REQUESTS);
+    }
+
+    /**
+     * Creates a new gateway, which will listen on given address once started.
+     *
+     * @param address            address to bind to, port 0 picks any free port
+     * @param maxPendingRequests limit of requests awaiting to be dispatched
+     */
+    public RequestGateway(InetSocketAddress address, int maxPendingRequests) {
+        this.address = address;
+        this.maxPendingRequests = maxPendingRequests;
+        this.batchLock = new Object();
+        this.fillingBatch = new RequestBatch(1024);
+        this.drainingBatch = new RequestBatch(1024);
+        this.receivedRequests = new AtomicLong();
+        this.droppedRequests = new AtomicLong();
+        this.malformedRequests = new AtomicLong();
+    }
+
+    /**
+     * Binds the server and starts the I/O thread.
+     *
+     * @throws IOException if the server could not be bound
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            throw new IllegalStateException("Gateway is already running");
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(address);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        ioThread = new Thread(this::serve, "elevators-gateway");
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    /**
+     * Gets the address the server is bound to, useful when it was started on port 0.
+     *
+     * @return local address of the server
+     * @throws IOException if the address could not be read
+     */
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    /**
+     * Enqueues every request received since the last call to given system.
+     *
+     * @param system system to receive the requests
+     * @return number of dispatched requests
+     */
+    @Override
+    public int dispatchRequests(ElevatorsSystem system) {
+        RequestBatch batch;
+        synchronized (batchLock) {
+            batch = fillingBatch;
+            fillingBatch = drainingBatch;
+            drainingBatch = batch;
+        }
+
+        int dispatched = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Request request = toRequest(batch.getType(i), batch.getElevatorID(i), batch.getFloor(i));
+            if (request == null) {
+                malformedRequests.incrementAndGet();
+                continue;
+            }
+            system.enqueueRequest(request);
+            dispatched++;
+        }
+        batch.clear();
+        return dispatched;
+    }
+
+    /**
+     * Stops the I/O thread and closes every connection.
+     *
+     * @throws IOException if the server could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            ioThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    public long getReceivedRequests() {
+        return receivedRequests.get();
+    }
+
+    public long getDroppedRequests() {
+        return droppedRequests.get();
+    }
+
+    public long getMalformedRequests() {
+        return malformedRequests.get();
+    }
+
+    /**
+     * Main loop of the I/O thread.
+     */
+    private void serve() {
+        while (running) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        read(key);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Request gateway failure: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+    }
+
+    private void read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+        int bytesRead;
+        try {
+            bytesRead = channel.read(buffer);
+        } catch (IOException e) {
+            bytesRead = -1;
+        }
+
+        buffer.flip();
+        int frames = buffer.remaining() / RequestFrame.FRAME_SIZE;
+        if (frames > 0) {
+            synchronized (batchLock) {
+                for (int i = 0; i < frames; i++) {
+                    if (fillingBatch.size() < maxPendingRequests) {
+                        fillingBatch.decode(buffer);
+                    } else {
+                        buffer.position(buffer.position() + RequestFrame.FRAME_SIZE);
+                        droppedRequests.incrementAndGet();
+                    }
+                }
+            }
+            receivedRequests.addAndGet(frames);
+        }
+        //keep incomplete frame for the next read
+        buffer.compact();
+
+        if (bytesRead < 0) {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close panel connection: " + e.getMessage());
+            }
+        }
+    }
+
+    private static Request toRequest(byte type, int elevatorID, int floor) {
+        switch (type) {
+            case RequestFrame.TYPE_UP:
+                return RequestFactory.createUpRequest(floor);
+            case RequestFrame.TYPE_DOWN:
+                return RequestFactory.createDownRequest(floor);
+            case RequestFrame.TYPE_FLOOR:
+                return RequestFactory.createFloorRequest(elevatorID, floor);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package olliekrk.elevators.monitoring;
+
+/**
+ * Single event read from a dump of {@link FlightRecorder}.
+ */
+public final class FlightRecord {
+    /**
+     * Types of recorded events.
+     */
+    public enum Type {
+        REQUEST_ACCEPTED,
+        REQUEST_ASSIGNED,
+        REQUEST_COMPLETED,
+        REQUEST_WITHDRAWN,
+        DOOR_OPENED,
+        DOOR_CLOSED,
+        FLOOR_CHANGED
+    }
+
+    private final long sequence;
+    private final long tick;
+    private final Type type;
+    private final int elevatorID;
+    private final int floor;
+    private final int value;
+
+    FlightRecord(long sequence, long tick, Type type, int elevatorID, int floor, int value) {
+        this.sequence = sequence;
+        this.tick = tick;
+        this.type = type;
+        this.elevatorID = elevatorID;
+        this.floor = floor;
+        this.value = value;
+    }
+
+    /**
+     * Gets the number of the event, counted from the creation of the recorder.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the number of steps the system had made before the event.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets ID of the elevator, -1 for requests which are not assigned to any elevator.
+     */
+    public int getElevatorID() {
+        return elevatorID;
+    }
+
+    /**
+     * Gets the requested floor, or the floor of the elevator for door and floor changes.
+     */
+    public int getFloor() {
+        return floor;
+    }
+
+    /**
+     * Gets additional value of the event: for request events the request type and priority packed as
+     * {@code type << 8 | priority} ordinals, for floor changes the previous floor, otherwise 0.
+     */
+    public int getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "FlightRecord{" +
+                "sequence=" + sequence +
+                ", tick=" + tick +
+                ", type=" + type +
+                ", elevatorID=" + elevatorID +
+                ", floor=" + floor +
+                ", value=" + value +
+                '}';
+    }
+}
@@ -0,0 +1,320 @@
+package olliekrk.elevators.monitoring;
+
+import olliekrk.elevators.ElevatorSnapshot;
+import olliekrk.elevators.ElevatorsSystem;
+import olliekrk.elevators.ElevatorsSystemListener;
+import olliekrk.elevators.RequestHandle;
+import olliekrk.elevators.requests.Request;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Flight recorder keeping the latest events of a system in a fixed-size ring buffer outside of the heap,
+ * so that they can be dumped to a file for analysis after an incident.
+ * <p>
+ * Once registered as a listener of {@link ElevatorsSystem}, it records accepted, assigned, completed and withdrawn requests,
+ * and after every step it records which elevators have opened or closed their door and which have changed their floor.
+ * Every event is a fixed-width binary record, written by the thread stepping the system without any locks or allocations,
+ * and the oldest records are overwritten once the buffer is full. Thus the recorder can stay enabled permanently.
+ * Door and floor changes are found by comparing snapshots of consecutive steps, so the first step observed for an elevator
+ * only sets its initial state. Elevators are looked up by a linear scan of their IDs, which is bounded by the number of elevators
+ * the recorder has seen, and only the first elevator seen beyond {@link ElevatorsSystem#ELEVATORS_LIMIT} grows the arrays of their state.
+ * <p>
+ * Records are laid out as follows, in little-endian byte order:
+ * <pre>
+ * offset 0:  long tick - number of steps completed before the event
+ * offset 8:  byte type of the event - ordinal of {@link FlightRecord.Type}
+ * offset 12: int  elevator ID, -1 if there is none
+ * offset 16: int  floor
+ * offset 20: int  value specific for the type of the event
+ * </pre>
+ * A dump starts with a header holding the sequence number of its first record and the number of records.
+ */
+public class FlightRecorder implements ElevatorsSystemListener {
+    static final int MAGIC = 0x454C4652;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 24;
+    /**
+     * Maximum number of records, so that the whole buffer can be addressed with int offsets.
+     */
+    public static final int MAX_CAPACITY = 1 << 26;
+
+    private static final int TICK_OFFSET = 0;
+    private static final int TYPE_OFFSET = 8;
+    private static final int ELEVATOR_ID_OFFSET = 12;
+    private static final int FLOOR_OFFSET = 16;
+    private static final int VALUE_OFFSET = 20;
+    private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final FlightRecord.Type[] TYPES = FlightRecord.Type.values();
+    private static final VarHandle POSITION;
+
+    static {
+        try {
+            POSITION = MethodHandles.lookup().findVarHandle(FlightRecorder.class, "position", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Ring buffer of records, allocated outside of the heap.
+     */
+    private final ByteBuffer records;
+    private final int capacity;
+    /**
+     * Number of records written since the recorder was created, published with release semantics for dumping threads.
+     */
+    @SuppressWarnings("unused")
+    private long position;
+    /**
+     * Number of steps the recorded system has made.
+     */
+    private long tick;
+    /**
+     * IDs of elevators seen so far, the index of an ID is the slot of the elevator in the arrays of their last known state.
+     */
+    private int[] elevatorIDs;
+    private int slotsCount;
+    private int[] floors;
+    private boolean[] doorsOpened;
+    /**
+     * Recorder of changes of a single elevator, created once to avoid allocations on every step.
+     */
+    private final Consumer<ElevatorSnapshot> changeRecorder;
+    /**
+     * Path of the dump written on an uncaught exception, null until {@link #dumpOnUncaughtException(Path)} is called.
+     */
+    private volatile Path uncaughtExceptionDumpPath;
+
+    /**
+     * Allocates the ring buffer.
+     *
+     * @param capacity number of records kept in the buffer, rounded up to a power of two
+     */
+    public FlightRecorder(int capacity) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be positive and not greater than " + MAX_CAPACITY);
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.records = ByteBuffer.allocateDirect(this.capacity * RECORD_SIZE).order(BYTE_ORDER);
+        this.elevatorIDs = new int[ElevatorsSystem.ELEVATORS_LIMIT];
+        this.floors = new int[ElevatorsSystem.ELEVATORS_LIMIT];
+        this.doorsOpened = new boolean[ElevatorsSystem.ELEVATORS_LIMIT];
+        this.changeRecorder = this::recordChanges;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of events recorded so far, including the overwritten ones.
+     */
+    public long getRecordedEvents() {
+        return (long) POSITION.getAcquire(this);
+    }
+
+    @Override
+    public void onRequestAccepted(Request request) {
+        recordRequest(FlightRecord.Type.REQUEST_ACCEPTED, request.getElevatorID(), request);
+    }
+
+    @Override
+    public void onRequestAssigned(Integer elevatorID, Request request) {
+        recordRequest(FlightRecord.Type.REQUEST_ASSIGNED, elevatorID, request);
+    }
+
+    @Override
+    public void onRequestCompleted(Integer elevatorID, Request request) {
+        recordRequest(FlightRecord.Type.REQUEST_COMPLETED, elevatorID, request);
+    }
+
+    @Override
+    public void onRequestWithdrawn(Request request, RequestHandle.State state) {
+        recordRequest(FlightRecord.Type.REQUEST_WITHDRAWN, request.getElevatorID(), request);
+    }
+
+    @Override
+    public void onSimulationStep(ElevatorsSystem system) {
+        system.forEachSnapshot(changeRecorder);
+        tick++;
+    }
+
+    private void recordRequest(FlightRecord.Type type, Integer elevatorID, Request request) {
+        int value = request.getRequestType().ordinal() << 8 | request.getPriority().ordinal();
+        append(type, elevatorID == null ? -1 : elevatorID, request.getFloor(), value);
+    }
+
+    private void recordChanges(ElevatorSnapshot snapshot) {
+        int elevatorID = snapshot.getElevatorID();
+        int slot = slotOf(elevatorID);
+        if (slot == slotsCount) {
+            //the first state of an elevator is only remembered
+            if (slot == elevatorIDs.length) {
+                elevatorIDs = Arrays.copyOf(elevatorIDs, slot * 2);
+                floors = Arrays.copyOf(floors, slot * 2);
+                doorsOpened = Arrays.copyOf(doorsOpened, slot * 2);
+            }
+            elevatorIDs[slot] = elevatorID;
+            floors[slot] = snapshot.getCurrentFloor();
+            doorsOpened[slot] = snapshot.isDoorOpened();
+            slotsCount++;
+            return;
+        }
+        int currentFloor = snapshot.getCurrentFloor();
+        if (floors[slot] != currentFloor) {
+            append(FlightRecord.Type.FLOOR_CHANGED, elevatorID, currentFloor, floors[slot]);
+            floors[slot] = currentFloor;
+        }
+        if (doorsOpened[slot] != snapshot.isDoorOpened()) {
+            doorsOpened[slot] = snapshot.isDoorOpened();
+            append(doorsOpened[slot] ? FlightRecord.Type.DOOR_OPENED : FlightRecord.Type.DOOR_CLOSED, elevatorID, currentFloor, 0);
+        }
+    }
+
+    /**
+     * Finds the slot of an elevator.
+     *
+     * @return slot of the elevator, or the number of slots if the elevator has not been seen yet
+     */
+    private int slotOf(int elevatorID) {
+        int slot = 0;
+        while (slot < slotsCount && elevatorIDs[slot] != elevatorID) {
+            slot++;
+        }
+        return slot;
+    }
+
+    /**
+     * Appends a single record, overwriting the oldest one if the buffer is full.
+     * Called only by the thread stepping the system.
+     */
+    private void append(FlightRecord.Type type, int elevatorID, int floor, int value) {
+        long next = position;
+        int offset = (int) (next & (capacity - 1)) * RECORD_SIZE;
+        records.putLong(offset + TICK_OFFSET, tick);
+        records.put(offset + TYPE_OFFSET, (byte) type.ordinal());
+        records.putInt(offset + ELEVATOR_ID_OFFSET, elevatorID);
+        records.putInt(offset + FLOOR_OFFSET, floor);
+        records.putInt(offset + VALUE_OFFSET, value);
+        POSITION.setRelease(this, next + 1);
+    }
+
+    /**
+     * Writes records kept in the buffer to a file, from the oldest to the newest.
+     * It can be called by any thread, and once the buffer is full it dumps all but the oldest record. Records which might have been overwritten while they were being written to the file
+     * are excluded from the dump by its header.
+     *
+     * @param path path of the dump file
+     * @throws IOException if the dump could not be written
+     */
+    public void dump(Path path) throws IOException {
+        //the slot of the oldest record may be just overwritten by the next record, so it is never dumped
+        long end = (long) POSITION.getAcquire(this);
+        long start = Math.max(0, end - capacity + 1);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE);
+            ByteBuffer source = records.duplicate();
+            long sequence = start;
+            while (sequence < end) {
+                int index = (int) (sequence & (capacity - 1));
+                int count = (int) Math.min(end - sequence, capacity - index);
+                source.limit((index + count) * RECORD_SIZE).position(index * RECORD_SIZE);
+                while (source.hasRemaining()) {
+                    channel.write(source);
+                }
+                sequence += count;
+            }
+
+            //records overwritten in the meantime are skipped by readers
+            long firstValid = (long) POSITION.getAcquire(this) - capacity + 1;
+            long skipped = Math.max(0, Math.min(end, firstValid) - start);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+            header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt((int) skipped);
+            header.putLong(start).putLong(end - start).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+
+    /**
+     * Makes the recorder dump itself when any thread of the JVM terminates due to an uncaught exception.
+     * <p>
+     * Note that this replaces the JVM-wide default handler of uncaught exceptions with one which dumps the recorder
+     * before passing the exception to the handler it has replaced. The handler is installed only by the first call for a recorder,
+     * and subsequent calls only change the path of the dump. Threads with their own handlers are not covered.
+     *
+     * @param path path of the dump file
+     */
+    public synchronized void dumpOnUncaughtException(Path path) {
+        boolean installed = uncaughtExceptionDumpPath != null;
+        uncaughtExceptionDumpPath = path;
+        if (installed) {
+            return;
+        }
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, exception) -> {
+            try {
+                dump(uncaughtExceptionDumpPath);
+            } catch (IOException e) {
+                System.err.println("Failed to dump flight recorder: " + e.getMessage());
+            }
+            if (previous != null) {
+                previous.uncaughtException(thread, exception);
+            } else {
+                System.err.print("Exception in thread \"" + thread.getName() + "\" ");
+                exception.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Reads records from a dump file.
+     *
+     * @param path path of the dump file
+     * @return valid records of the dump, from the oldest to the newest
+     * @throws IOException if the file could not be read or it is not a valid dump
+     */
+    public static List<FlightRecord> readDump(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != RECORD_SIZE) {
+                throw new IOException("File is not a valid flight recorder dump: " + path);
+            }
+            int skipped = header.getInt();
+            long firstSequence = header.getLong();
+            long count = header.getLong();
+
+            List<FlightRecord> result = new ArrayList<>();
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(BYTE_ORDER);
+            channel.position(HEADER_SIZE + (long) skipped * RECORD_SIZE);
+            for (long i = skipped; i < count; i++) {
+                record.clear();
+                while (record.hasRemaining()) {
+                    if (channel.read(record) < 0) {
+                        throw new IOException("Flight recorder dump is truncated: " + path);
+                    }
+                }
+                result.add(new FlightRecord(firstSequence + i, record.getLong(TICK_OFFSET), TYPES[record.get(TYPE_OFFSET)],
+                        record.getInt(ELEVATOR_ID_OFFSET), record.getInt(FLOOR_OFFSET), record.getInt(VALUE_OFFSET)));
+            }
+            return result;
+        }
+    }
+}
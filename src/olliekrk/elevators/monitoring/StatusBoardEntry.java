@@ -0,0 +1,41 @@
+package olliekrk.elevators.monitoring;
+
+/**
+ * Mutable container for a single slot read from the status board by {@link StatusBoardReader}.
+ * It is meant to be reused between reads, so that reading the board does not allocate.
+ */
+public class StatusBoardEntry {
+    private int elevatorID;
+    private int currentFloor;
+    private int destinationFloor;
+    private boolean doorOpened;
+    private int queueLength;
+
+    public int getElevatorID() {
+        return elevatorID;
+    }
+
+    public int getCurrentFloor() {
+        return currentFloor;
+    }
+
+    public int getDestinationFloor() {
+        return destinationFloor;
+    }
+
+    public boolean isDoorOpened() {
+        return doorOpened;
+    }
+
+    public int getQueueLength() {
+        return queueLength;
+    }
+
+    void set(int elevatorID, int currentFloor, int destinationFloor, boolean doorOpened, int queueLength) {
+        this.elevatorID = elevatorID;
+        this.currentFloor = currentFloor;
+        this.destinationFloor = destinationFloor;
+        this.doorOpened = doorOpened;
+        this.queueLength = queueLength;
+    }
+}
@@ -0,0 +1,63 @@
+package olliekrk.elevators.monitoring;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Layout of the memory-mapped status board shared by {@link StatusBoardPublisher} and {@link StatusBoardReader}.
+ * <p>
+ * All values are stored in little-endian byte order. The file starts with a header:
+ * <pre>
+ * offset 0:  int  magic number
+ * offset 4:  int  layout version
+ * offset 8:  int  number of slots
+ * offset 12: int  size of a slot in bytes
+ * offset 16: long number of published ticks
+ * </pre>
+ * It is followed by fixed-size slots, one per elevator:
+ * <pre>
+ * offset 0:  long sequence counter, odd while the slot is being written
+ * offset 8:  int  elevator ID
+ * offset 12: int  current floor
+ * offset 16: int  destination floor
+ * offset 20: int  1 if the door are opened, otherwise 0
+ * offset 24: int  number of enqueued requests
+ * </pre>
+ */
+final class StatusBoardLayout {
+    static final int MAGIC = 0x454C5642;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int SLOT_SIZE = 32;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int SLOT_COUNT_OFFSET = 8;
+    static final int SLOT_SIZE_OFFSET = 12;
+    static final int TICK_OFFSET = 16;
+
+    static final int SEQUENCE_OFFSET = 0;
+    static final int ELEVATOR_ID_OFFSET = 8;
+    static final int CURRENT_FLOOR_OFFSET = 12;
+    static final int DESTINATION_FLOOR_OFFSET = 16;
+    static final int DOOR_OPENED_OFFSET = 20;
+    static final int QUEUE_LENGTH_OFFSET = 24;
+
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    /**
+     * Handle used for ordered access to sequence counters and to the tick counter.
+     */
+    static final VarHandle LONG_HANDLE = MethodHandles.byteBufferViewVarHandle(long[].class, BYTE_ORDER);
+
+    private StatusBoardLayout() {
+    }
+
+    static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    static int fileSize(int slotCount) {
+        return HEADER_SIZE + slotCount * SLOT_SIZE;
+    }
+}
@@ -0,0 +1,138 @@
+package olliekrk.elevators.monitoring;
+
+import olliekrk.elevators.ElevatorSnapshot;
+import olliekrk.elevators.ElevatorsSystem;
+import olliekrk.elevators.ElevatorsSystemListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static olliekrk.elevators.monitoring.StatusBoardLayout.*;
+
+/**
+ * Publishes statuses of elevators to a memory-mapped file, so that other local processes can read them
+ * without calling the system - see {@link StatusBoardReader}.
+ * <p>
+ * Once registered as a listener of {@link ElevatorsSystem}, after every simulation step it writes the state of every elevator
+ * to its own fixed slot of the file. Every slot is guarded by a sequence counter (seqlock),
+ * so readers can detect and retry reads which overlapped with a write, without any locks or system calls.
+ * Slots are assigned to elevators in order in which they are first seen.
+ */
+public class StatusBoardPublisher implements ElevatorsSystemListener, Closeable {
+    /**
+     * Channel of the board file.
+     */
+    private final FileChannel channel;
+    /**
+     * Memory-mapped content of the board file.
+     */
+    private final MappedByteBuffer board;
+    /**
+     * Number of slots in the board.
+     */
+    private final int slotCount;
+    /**
+     * Slots assigned to elevators, the key is elevator ID.
+     */
+    private final Map<Integer, Integer> slots;
+    /**
+     * Writer of a single snapshot, created once to avoid allocations on every step.
+     */
+    private final Consumer<ElevatorSnapshot> slotWriter;
+    /**
+     * Number of published ticks.
+     */
+    private long ticks;
+
+    /**
+     * Creates the board file and maps it to the memory.
+     *
+     * @param path      path of the board file
+     * @param slotCount maximum number of published elevators
+     * @throws IOException if the file could not be created or mapped
+     */
+    public StatusBoardPublisher(Path path, int slotCount) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.board = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(slotCount));
+        this.board.order(BYTE_ORDER);
+        this.slotCount = slotCount;
+        this.slots = new HashMap<>(slotCount * 2);
+        this.slotWriter = this::writeSlot;
+
+        board.putInt(VERSION_OFFSET, VERSION);
+        board.putInt(SLOT_COUNT_OFFSET, slotCount);
+        board.putInt(SLOT_SIZE_OFFSET, SLOT_SIZE);
+        LONG_HANDLE.setRelease(board, TICK_OFFSET, 0L);
+        //magic number is written last, so that readers never see incomplete header
+        VarHandle.storeStoreFence();
+        board.putInt(MAGIC_OFFSET, MAGIC);
+    }
+
+    /**
+     * Creates a board with a slot for every elevator the system can manage.
+     *
+     * @param path path of the board file
+     * @throws IOException if the file could not be created or mapped
+     */
+    public StatusBoardPublisher(Path path) throws IOException {
+        this(path, ElevatorsSystem.ELEVATORS_LIMIT);
+    }
+
+    @Override
+    public void onSimulationStep(ElevatorsSystem system) {
+        publish(system);
+    }
+
+    /**
+     * Writes current state of every elevator of the system to the board.
+     *
+     * @param system system to be published
+     */
+    public void publish(ElevatorsSystem system) {
+        system.forEachSnapshot(slotWriter);
+        LONG_HANDLE.setRelease(board, TICK_OFFSET, ++ticks);
+    }
+
+    /**
+     * Forces the content of the board to the disk and closes the file.
+     * The mapping stays valid until it is garbage collected, but it is no longer updated.
+     *
+     * @throws IOException if the file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        board.force();
+        channel.close();
+    }
+
+    private void writeSlot(ElevatorSnapshot snapshot) {
+        Integer slot = slots.get(snapshot.getElevatorID());
+        if (slot == null) {
+            if (slots.size() == slotCount) {
+                return;
+            }
+            slot = slots.size();
+            slots.put(snapshot.getElevatorID(), slot);
+        }
+
+        int offset = slotOffset(slot);
+        long sequence = (long) LONG_HANDLE.get(board, offset + SEQUENCE_OFFSET);
+        //odd sequence marks the slot as being written
+        LONG_HANDLE.setOpaque(board, offset + SEQUENCE_OFFSET, sequence + 1);
+        VarHandle.storeStoreFence();
+        board.putInt(offset + ELEVATOR_ID_OFFSET, snapshot.getElevatorID());
+        board.putInt(offset + CURRENT_FLOOR_OFFSET, snapshot.getCurrentFloor());
+        board.putInt(offset + DESTINATION_FLOOR_OFFSET, snapshot.getDestinationFloor());
+        board.putInt(offset + DOOR_OPENED_OFFSET, snapshot.isDoorOpened() ? 1 : 0);
+        board.putInt(offset + QUEUE_LENGTH_OFFSET, snapshot.getRequests().size());
+        LONG_HANDLE.setRelease(board, offset + SEQUENCE_OFFSET, sequence + 2);
+    }
+}
@@ -0,0 +1,90 @@
+package olliekrk.elevators.monitoring;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static olliekrk.elevators.monitoring.StatusBoardLayout.*;
+
+/**
+ * Reads statuses of elevators from the memory-mapped file written by {@link StatusBoardPublisher}.
+ * Can be used by any local process, reads do not allocate nor make any system calls.
+ */
+public class StatusBoardReader implements Closeable {
+    private final FileChannel channel;
+    private final MappedByteBuffer board;
+    private final int slotCount;
+
+    /**
+     * Maps the board file to the memory.
+     *
+     * @param path path of the board file
+     * @throws IOException if the file could not be mapped or it is not a valid status board
+     */
+    public StatusBoardReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.board = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        this.board.order(BYTE_ORDER);
+        if (channel.size() < HEADER_SIZE || board.getInt(MAGIC_OFFSET) != MAGIC || board.getInt(VERSION_OFFSET) != VERSION) {
+            channel.close();
+            throw new IOException("File is not a valid status board: " + path);
+        }
+        this.slotCount = board.getInt(SLOT_COUNT_OFFSET);
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Gets the number of ticks published so far.
+     *
+     * @return number of published ticks
+     */
+    public long getTicks() {
+        return (long) LONG_HANDLE.getAcquire(board, TICK_OFFSET);
+    }
+
+    /**
+     * Reads a consistent state of the elevator from given slot, retrying when the slot is being written at the same time.
+     *
+     * @param slot  index of the slot
+     * @param entry entry to be filled with the state
+     * @return true if the slot was already written by the publisher, false if it is still empty
+     */
+    public boolean readSlot(int slot, StatusBoardEntry entry) {
+        if (slot < 0 || slot >= slotCount) {
+            throw new IndexOutOfBoundsException("Slot: " + slot + ", slots: " + slotCount);
+        }
+        int offset = slotOffset(slot);
+        while (true) {
+            long sequence = (long) LONG_HANDLE.getAcquire(board, offset + SEQUENCE_OFFSET);
+            if (sequence == 0) {
+                return false;
+            }
+            if ((sequence & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            int elevatorID = board.getInt(offset + ELEVATOR_ID_OFFSET);
+            int currentFloor = board.getInt(offset + CURRENT_FLOOR_OFFSET);
+            int destinationFloor = board.getInt(offset + DESTINATION_FLOOR_OFFSET);
+            int doorOpened = board.getInt(offset + DOOR_OPENED_OFFSET);
+            int queueLength = board.getInt(offset + QUEUE_LENGTH_OFFSET);
+            VarHandle.loadLoadFence();
+            if (sequence == (long) LONG_HANDLE.get(board, offset + SEQUENCE_OFFSET)) {
+                entry.set(elevatorID, currentFloor, destinationFloor, doorOpened != 0, queueLength);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,353 @@
+package olliekrk.elevators.monitoring;
+
+import olliekrk.elevators.ElevatorSnapshot;
+import olliekrk.elevators.ElevatorsSystem;
+import olliekrk.elevators.ElevatorsSystemListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Exports the state of every elevator after every simulation step to files, for analysis in external tools.
+ * <p>
+ * Once registered as a listener of {@link ElevatorsSystem}, it copies the snapshots of elevators into blocks of primitive columns
+ * on the stepping thread. Full blocks are passed to a background thread, which encodes them and writes them to the file
+ * through a direct buffer, so that stepping never waits for the disk. Blocks come from a fixed pool allocated up front
+ * and are recycled by the writer, so exporting allocates nothing. When the writer falls behind and the pool is exhausted,
+ * rows are dropped until a block is recycled, and their number is reported by {@link #getDroppedRows()}.
+ * <p>
+ * Files are rotated once they reach the configured size, and every file can be read on its own.
+ * Rows of {@link Format#CSV} files have the columns {@code tick,elevator,floor,door,destination,queue},
+ * with the door written as 1 when it is opened. {@link Format#COLUMNAR} files start with the int magic number {@link #MAGIC}
+ * and the int version, followed by blocks of rows. Every block holds the int number of rows {@code n}, then the columns:
+ * {@code n} long ticks, {@code n} int elevator IDs, {@code n} int floors, {@code n} int destinations,
+ * {@code n} int queue lengths and {@code n} door bytes. Numbers are written in little-endian byte order.
+ */
+public class TrajectoryExporter implements ElevatorsSystemListener, Closeable {
+    /**
+     * Formats of exported files.
+     */
+    public enum Format {
+        CSV(".csv"),
+        COLUMNAR(".cols");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    public static final int MAGIC = 0x454C5452;
+    public static final int VERSION = 1;
+    /**
+     * Maximum number of rows in a single block.
+     */
+    static final int BLOCK_ROWS = 4096;
+    /**
+     * Default number of blocks in the pool.
+     */
+    static final int POOL_BLOCKS = 8;
+    private static final byte[] CSV_HEADER = "tick,elevator,floor,door,destination,queue\n".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Upper bound of the length of a single CSV row.
+     */
+    private static final int MAX_CSV_ROW = 20 + 4 * 11 + 1 + 6;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+
+    private final Path directory;
+    private final String name;
+    private final Format format;
+    private final long rotationSize;
+
+    /**
+     * Block being filled by the stepping thread, null while every block of the pool is waiting for the writer.
+     */
+    private Block currentBlock;
+    private final BlockingQueue<Block> filledBlocks;
+    private final BlockingQueue<Block> freeBlocks;
+    /**
+     * Number of rows dropped because no block was free.
+     */
+    private final AtomicLong droppedRows;
+    private final Consumer<ElevatorSnapshot> rowCopier;
+    /**
+     * Number of steps the exported system has made.
+     */
+    private long tick;
+
+    /**
+     * Buffer of encoded bytes, used only by the writing thread.
+     */
+    private final ByteBuffer output;
+    private FileChannel channel;
+    /**
+     * Number of bytes written to the current file.
+     */
+    private long fileSize;
+    private final List<Path> files;
+    /**
+     * Background thread encoding and writing filled blocks.
+     */
+    private final Thread writer;
+    private volatile boolean running;
+
+    /**
+     * Creates the first file and starts the background thread.
+     *
+     * @param directory    directory of exported files
+     * @param name         prefix of names of exported files, which are numbered from 0
+     * @param format       format of exported files
+     * @param rotationSize size in bytes after which a new file is started
+     * @throws IOException if the first file could not be created
+     */
+    public TrajectoryExporter(Path directory, String name, Format format, long rotationSize) throws IOException {
+        this(directory, name, format, rotationSize, POOL_BLOCKS);
+    }
+
+    TrajectoryExporter(Path directory, String name, Format format, long rotationSize, int poolBlocks) throws IOException {
+        if (rotationSize <= 0) {
+            throw new IllegalArgumentException("Rotation size must be positive");
+        }
+        if (poolBlocks <= 0) {
+            throw new IllegalArgumentException("Pool of blocks must not be empty");
+        }
+        this.directory = directory;
+        this.name = name;
+        this.format = format;
+        this.rotationSize = rotationSize;
+        //array-backed queues do not allocate nodes when blocks are passed between threads
+        this.filledBlocks = new ArrayBlockingQueue<>(poolBlocks);
+        this.freeBlocks = new ArrayBlockingQueue<>(poolBlocks);
+        for (int i = 1; i < poolBlocks; i++) {
+            freeBlocks.offer(new Block());
+        }
+        this.currentBlock = new Block();
+        this.droppedRows = new AtomicLong();
+        this.rowCopier = this::copyRow;
+        this.output = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.files = new CopyOnWriteArrayList<>();
+        openNextFile();
+        this.running = true;
+        this.writer = new Thread(this::writeFilledBlocks, "elevators-trajectory-exporter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Gets paths of files created so far, in the order of creation.
+     */
+    public List<Path> getFiles() {
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * Gets the number of rows which were not exported because the writer had fallen behind.
+     */
+    public long getDroppedRows() {
+        return droppedRows.get();
+    }
+
+    @Override
+    public void onSimulationStep(ElevatorsSystem system) {
+        system.forEachSnapshot(rowCopier);
+        tick++;
+    }
+
+    private void copyRow(ElevatorSnapshot snapshot) {
+        Block block = currentBlock;
+        if (block == null) {
+            block = currentBlock = freeBlocks.poll();
+            if (block == null) {
+                droppedRows.incrementAndGet();
+                return;
+            }
+        }
+        int row = block.rows++;
+        block.ticks[row] = tick;
+        block.elevatorIDs[row] = snapshot.getElevatorID();
+        block.floors[row] = snapshot.getCurrentFloor();
+        block.destinations[row] = snapshot.getDestinationFloor();
+        block.queueLengths[row] = snapshot.getRequests().size();
+        block.doors[row] = (byte) (snapshot.isDoorOpened() ? 1 : 0);
+        if (block.rows == BLOCK_ROWS) {
+            filledBlocks.offer(block);
+            LockSupport.unpark(writer);
+            currentBlock = freeBlocks.poll();
+        }
+    }
+
+    /**
+     * Stops the background thread, writes every remaining row and closes the current file.
+     *
+     * @throws IOException if the rows could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        //the writer has finished, so the remaining blocks are written by this thread
+        Block block;
+        while ((block = filledBlocks.poll()) != null) {
+            writeBlock(block);
+        }
+        if (currentBlock != null) {
+            writeBlock(currentBlock);
+        }
+        flushOutput();
+        channel.close();
+    }
+
+    private void writeFilledBlocks() {
+        while (true) {
+            Block block = filledBlocks.poll();
+            if (block == null) {
+                if (!running) {
+                    return;
+                }
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                writeBlock(block);
+            } catch (IOException e) {
+                System.err.println("Failed to export trajectory: " + e.getMessage());
+            }
+            block.rows = 0;
+            freeBlocks.offer(block);
+        }
+    }
+
+    private void writeBlock(Block block) throws IOException {
+        if (block.rows == 0) {
+            return;
+        }
+        if (fileSize + output.position() >= rotationSize) {
+            flushOutput();
+            channel.close();
+            openNextFile();
+        }
+        if (format == Format.CSV) {
+            writeCsv(block);
+        } else {
+            writeColumnar(block);
+        }
+    }
+
+    private void writeCsv(Block block) throws IOException {
+        for (int row = 0; row < block.rows; row++) {
+            if (output.remaining() < MAX_CSV_ROW) {
+                flushOutput();
+            }
+            putDecimal(block.ticks[row]);
+            output.put((byte) ',');
+            putDecimal(block.elevatorIDs[row]);
+            output.put((byte) ',');
+            putDecimal(block.floors[row]);
+            output.put((byte) ',');
+            output.put((byte) ('0' + block.doors[row]));
+            output.put((byte) ',');
+            putDecimal(block.destinations[row]);
+            output.put((byte) ',');
+            putDecimal(block.queueLengths[row]);
+            output.put((byte) '\n');
+        }
+    }
+
+    private void writeColumnar(Block block) throws IOException {
+        int rows = block.rows;
+        if (output.remaining() < Integer.BYTES + rows * (Long.BYTES + 4 * Integer.BYTES + 1)) {
+            flushOutput();
+        }
+        output.putInt(rows);
+        output.asLongBuffer().put(block.ticks, 0, rows);
+        output.position(output.position() + rows * Long.BYTES);
+        putInts(block.elevatorIDs, rows);
+        putInts(block.floors, rows);
+        putInts(block.destinations, rows);
+        putInts(block.queueLengths, rows);
+        output.put(block.doors, 0, rows);
+    }
+
+    private void putInts(int[] column, int rows) {
+        output.asIntBuffer().put(column, 0, rows);
+        output.position(output.position() + rows * Integer.BYTES);
+    }
+
+    /**
+     * Writes the decimal representation of a number, without creating a string.
+     */
+    private void putDecimal(long value) {
+        if (value < 0) {
+            output.put((byte) '-');
+            if (value == Long.MIN_VALUE) {
+                output.put("9223372036854775808".getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            value = -value;
+        }
+        int start = output.position();
+        do {
+            output.put((byte) ('0' + value % 10));
+            value /= 10;
+        } while (value != 0);
+        //digits were written from the least significant one
+        for (int left = start, right = output.position() - 1; left < right; left++, right--) {
+            byte digit = output.get(left);
+            output.put(left, output.get(right));
+            output.put(right, digit);
+        }
+    }
+
+    private void flushOutput() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            fileSize += channel.write(output);
+        }
+        output.clear();
+    }
+
+    private void openNextFile() throws IOException {
+        Path path = directory.resolve(String.format("%s-%05d%s", name, files.size(), format.extension));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        fileSize = 0;
+        files.add(path);
+        if (format == Format.CSV) {
+            output.put(CSV_HEADER);
+        } else {
+            output.putInt(MAGIC).putInt(VERSION);
+        }
+    }
+
+    /**
+     * Rows of exported states, stored in primitive columns.
+     */
+    private static final class Block {
+        private final long[] ticks = new long[BLOCK_ROWS];
+        private final int[] elevatorIDs = new int[BLOCK_ROWS];
+        private final int[] floors = new int[BLOCK_ROWS];
+        private final int[] destinations = new int[BLOCK_ROWS];
+        private final int[] queueLengths = new int[BLOCK_ROWS];
+        private final byte[] doors = new byte[BLOCK_ROWS];
+        private int rows;
+    }
+}
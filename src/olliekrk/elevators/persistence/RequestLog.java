@@ -0,0 +1,373 @@
+package olliekrk.elevators.persistence;
+
+import olliekrk.elevators.ElevatorsSystem;
+import olliekrk.elevators.ElevatorsSystemListener;
+import olliekrk.elevators.RequestHandle;
+import olliekrk.elevators.requests.Request;
+import olliekrk.elevators.requests.RequestFactory;
+import olliekrk.elevators.requests.RequestPriority;
+import olliekrk.elevators.requests.RequestType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Append-only write-ahead log of requests accepted and completed by {@link ElevatorsSystem}.
+ * <p>
+ * Once registered as a listener of the system, every accepted and completed request is appended to an in-memory buffer,
+ * which is a cheap operation on the stepping thread. A background thread writes the buffered records to the file
+ * and forces them to the disk once per durability window, so that many records share a single fsync (group commit).
+ * When the buffer fills up before the window ends, the background thread is woken to write it at once,
+ * so the stepping thread waits at most for a single write of the other buffer.
+ * Hence, after a crash, at most the records from the last durability window are lost.
+ * <p>
+ * After restart, {@link #recover(Path, ElevatorsSystem, long, TimeUnit)} replays the log to find requests which were
+ * accepted but not completed, and enqueues them again to the system.
+ * The log is then compacted to the records of pending requests only. The compacted log is written to a temporary file,
+ * forced to the disk and atomically moved over the old one, so a crash during recovery never loses pending requests.
+ * Every record has a fixed size of {@link #RECORD_SIZE} bytes:
+ * <pre>
+ * offset 0:  byte record kind (1 - accepted, 2 - completed, 3 - cancelled or expired)
+ * offset 1:  byte request type (ordinal of {@link RequestType})
+ * offset 2:  byte request priority (ordinal of {@link RequestPriority})
+ * offset 3:  byte reserved
+ * offset 4:  int  elevator ID of the request, -1 for external requests
+ * offset 8:  int  requested floor
+ * offset 12: int  checksum of the record
+ * </pre>
+ */
+public class RequestLog implements ElevatorsSystemListener, Closeable {
+    /**
+     * Size of a single record in bytes.
+     */
+    public static final int RECORD_SIZE = 16;
+    /**
+     * Number of records which fit in a single in-memory buffer.
+     */
+    private static final int BUFFERED_RECORDS = 8192;
+    private static final byte RECORD_ACCEPTED = 1;
+    private static final byte RECORD_COMPLETED = 2;
+    private static final byte RECORD_WITHDRAWN = 3;
+    private static final int NO_ELEVATOR = -1;
+
+    /**
+     * Channel of the log file.
+     */
+    private final FileChannel channel;
+    /**
+     * Maximum time in nanoseconds between appending a record and forcing it to the disk.
+     */
+    private final long durabilityWindowNanos;
+    /**
+     * Buffer to which new records are appended.
+     */
+    private ByteBuffer appendBuffer;
+    /**
+     * Buffer being written to the file by the background thread.
+     */
+    private ByteBuffer writeBuffer;
+    /**
+     * Background thread writing and forcing buffered records.
+     */
+    private final Thread flusher;
+    private volatile boolean running;
+
+    /**
+     * Creates a new, empty log in given file. Previous content of the file is discarded,
+     * so existing log should be first replayed with {@link #recover(Path, ElevatorsSystem, long, TimeUnit)}.
+     *
+     * @param path              path of the log file
+     * @param durabilityWindow  maximum time between accepting a request and forcing it to the disk
+     * @param unit              time unit of the durability window
+     * @throws IOException if the file could not be opened
+     */
+    public RequestLog(Path path, long durabilityWindow, TimeUnit unit) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING),
+                durabilityWindow, unit);
+    }
+
+    private RequestLog(FileChannel channel, long durabilityWindow, TimeUnit unit) {
+        this.channel = channel;
+        this.durabilityWindowNanos = unit.toNanos(durabilityWindow);
+        this.appendBuffer = ByteBuffer.allocate(BUFFERED_RECORDS * RECORD_SIZE);
+        this.writeBuffer = ByteBuffer.allocate(BUFFERED_RECORDS * RECORD_SIZE);
+        this.running = true;
+        this.flusher = new Thread(this::flushPeriodically, "elevators-request-log");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Replays the log in given file and enqueues every request which was accepted, but not completed, to the system.
+     * Before the requests are enqueued, the file is atomically replaced with a compacted log holding only their records,
+     * which is then continued by the new log registered as a listener of the system.
+     * <p>
+     * Elevators have to be registered in the system before recovery.
+     * Requests are enqueued again through the system's scheduler, so they may be assigned to other elevators than before.
+     *
+     * @param path             path of the log file
+     * @param system           system to receive the recovered requests
+     * @param durabilityWindow maximum time between accepting a request and forcing it to the disk
+     * @param unit             time unit of the durability window
+     * @return new log, already listening to the system
+     * @throws IOException if the log could not be read or the new log could not be created
+     */
+    public static RequestLog recover(Path path, ElevatorsSystem system, long durabilityWindow, TimeUnit unit) throws IOException {
+        List<Request> pendingRequests = Files.exists(path) ? readPendingRequests(path) : new LinkedList<>();
+        compact(path, pendingRequests);
+        RequestLog log = new RequestLog(FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND), durabilityWindow, unit);
+        //recovered requests are already in the compacted log, so the log starts listening once they are enqueued
+        for (Request request : pendingRequests) {
+            system.enqueueRequest(request);
+        }
+        system.addListener(log);
+        return log;
+    }
+
+    /**
+     * Replaces the log with records of pending requests only.
+     * They are written to a temporary file which is forced to the disk before it atomically replaces the log,
+     * so at any moment the log on the disk holds every pending request.
+     *
+     * @param path            path of the log file
+     * @param pendingRequests requests to be kept in the log
+     * @throws IOException if the compacted log could not be written
+     */
+    private static void compact(Path path, List<Request> pendingRequests) throws IOException {
+        Path compactedPath = path.resolveSibling(path.getFileName() + ".compacting");
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFERED_RECORDS * RECORD_SIZE);
+        try (FileChannel output = FileChannel.open(compactedPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Request request : pendingRequests) {
+                if (buffer.remaining() < RECORD_SIZE) {
+                    writeFully(output, buffer);
+                }
+                putRecord(buffer, RECORD_ACCEPTED, request);
+            }
+            writeFully(output, buffer);
+            output.force(true);
+        }
+        Files.move(compactedPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeFully(FileChannel output, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads the log and finds requests which were accepted, but not completed, withdrawn or cancelled by later requests.
+     * Reading stops at the first incomplete or corrupted record, which could have been written during a crash.
+     * <p>
+     * The log does not record to which elevator pickup requests were assigned,
+     * so pickups cancelled by a RESTART of their elevator are still considered pending.
+     *
+     * @param path path of the log file
+     * @return pending requests in the order they were accepted
+     * @throws IOException if the log could not be read
+     */
+    static List<Request> readPendingRequests(Path path) throws IOException {
+        List<Request> pendingRequests = new LinkedList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFERED_RECORDS * RECORD_SIZE);
+        try (FileChannel input = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (input.read(buffer) > 0 || buffer.position() > 0) {
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    byte kind = buffer.get();
+                    byte type = buffer.get();
+                    byte priority = buffer.get();
+                    buffer.get();
+                    int elevatorID = buffer.getInt();
+                    int floor = buffer.getInt();
+                    int checksum = buffer.getInt();
+                    if (checksum != checksum(kind, type, priority, elevatorID, floor)
+                            || type < 0 || type >= RequestType.values().length
+                            || priority < 0 || priority >= RequestPriority.values().length) {
+                        return pendingRequests;
+                    }
+                    Request request = toRequest(RequestType.values()[type], RequestPriority.values()[priority], elevatorID, floor);
+                    if (kind == RECORD_ACCEPTED) {
+                        applyAccepted(pendingRequests, request);
+                    } else if (kind == RECORD_COMPLETED) {
+                        //evacuation is completed by every elevator, but only its first completion finds it pending
+                        pendingRequests.remove(request);
+                    } else if (kind == RECORD_WITHDRAWN) {
+                        pendingRequests.remove(request);
+                    } else {
+                        return pendingRequests;
+                    }
+                }
+                if (buffer.hasRemaining() && input.position() == input.size()) {
+                    //incomplete record at the end of the log
+                    return pendingRequests;
+                }
+                buffer.compact();
+            }
+        }
+        return pendingRequests;
+    }
+
+    /**
+     * Appends accepted request to the list of pending requests, applying the effect it had on previously accepted ones.
+     */
+    private static void applyAccepted(List<Request> pendingRequests, Request request) {
+        if (request.getRequestType() == RequestType.RESTART) {
+            //restart replaces queue of its elevator, evacuation only suspends the queues
+            Iterator<Request> iterator = pendingRequests.iterator();
+            while (iterator.hasNext()) {
+                Request pendingRequest = iterator.next();
+                if (request.getElevatorID().equals(pendingRequest.getElevatorID())) {
+                    iterator.remove();
+                }
+            }
+        }
+        pendingRequests.add(request);
+    }
+
+    @Override
+    public void onRequestAccepted(Request request) {
+        append(RECORD_ACCEPTED, request);
+    }
+
+    @Override
+    public void onRequestCompleted(Integer elevatorID, Request request) {
+        append(RECORD_COMPLETED, request);
+    }
+
+    @Override
+    public void onRequestWithdrawn(Request request, RequestHandle.State state) {
+        append(RECORD_WITHDRAWN, request);
+    }
+
+    /**
+     * Writes every buffered record to the file and forces it to the disk, without waiting for the durability window.
+     *
+     * @throws IOException if the records could not be written
+     */
+    public void sync() throws IOException {
+        synchronized (channel) {
+            ByteBuffer buffer;
+            synchronized (this) {
+                buffer = appendBuffer;
+                appendBuffer = writeBuffer;
+                writeBuffer = buffer;
+                notifyAll();
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Stops the background thread, forces every buffered record to the disk and closes the file.
+     *
+     * @throws IOException if the records could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+        channel.close();
+    }
+
+    private synchronized void append(byte kind, Request request) {
+        //when the buffer fills up within a durability window, wake the flusher to swap it at once instead of waiting for the window
+        while (appendBuffer.remaining() < RECORD_SIZE) {
+            LockSupport.unpark(flusher);
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Request log record was lost due to interruption");
+                return;
+            }
+        }
+        putRecord(appendBuffer, kind, request);
+    }
+
+    private static void putRecord(ByteBuffer buffer, byte kind, Request request) {
+        byte type = (byte) request.getRequestType().ordinal();
+        byte priority = (byte) request.getPriority().ordinal();
+        int elevatorID = request.getElevatorID() == null ? NO_ELEVATOR : request.getElevatorID();
+        int floor = request.getFloor();
+        buffer.put(kind)
+                .put(type)
+                .put(priority)
+                .put((byte) 0)
+                .putInt(elevatorID)
+                .putInt(floor)
+                .putInt(checksum(kind, type, priority, elevatorID, floor));
+    }
+
+    private void flushPeriodically() {
+        long deadline = System.nanoTime();
+        while (running) {
+            deadline += durabilityWindowNanos;
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0) {
+                //parking instead of sleeping, as interrupting a thread which is writing to the file would close the channel,
+                //the thread is also unparked early by an append which has found the buffer full
+                LockSupport.parkNanos(this, remaining);
+                if (!running) {
+                    break;
+                }
+            } else {
+                deadline = System.nanoTime();
+            }
+            try {
+                sync();
+            } catch (IOException e) {
+                System.err.println("Failed to write request log: " + e.getMessage());
+            }
+        }
+    }
+
+    private static int checksum(byte kind, byte type, byte priority, int elevatorID, int floor) {
+        int hash = 0x7A5F0E1D;
+        hash = (hash ^ kind) * 0x01000193;
+        hash = (hash ^ type) * 0x01000193;
+        hash = (hash ^ priority) * 0x01000193;
+        hash = (hash ^ elevatorID) * 0x01000193;
+        hash = (hash ^ floor) * 0x01000193;
+        return hash;
+    }
+
+    private static Request toRequest(RequestType type, RequestPriority priority, int elevatorID, int floor) {
+        switch (type) {
+            case UP:
+                return RequestFactory.createUpRequest(floor);
+            case DOWN:
+                return RequestFactory.createDownRequest(floor);
+            case FLOOR:
+                return RequestFactory.createPriorityRequest(elevatorID, floor, priority);
+            case RESTART:
+                return RequestFactory.createRestartRequest(elevatorID, floor);
+            default:
+                return RequestFactory.createEvacuationRequest();
+        }
+    }
+}
@@ -18,11 +18,20 @@ public class Request {
      * Floor requested by the request.
      */
     private final int floor;
+    /**
+     * Priority of a request, {@link RequestPriority#NORMAL} for ordinary requests.
+     */
+    private final RequestPriority priority;
 
     Request(RequestType requestType, Integer elevatorID, int floor) {
+        this(requestType, elevatorID, floor, RequestPriority.NORMAL);
+    }
+
+    Request(RequestType requestType, Integer elevatorID, int floor, RequestPriority priority) {
         this.requestType = requestType;
         this.elevatorID = elevatorID;
         this.floor = floor;
+        this.priority = priority;
     }
 
     public RequestType getRequestType() {
@@ -33,10 +42,14 @@ public class Request {
         return elevatorID;
     }
 
-    public Integer getFloor() {
+    public int getFloor() {
         return floor;
     }
 
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -46,6 +59,7 @@ public class Request {
 
         if (floor != request.floor) return false;
         if (requestType != request.requestType) return false;
+        if (priority != request.priority) return false;
         return Objects.equals(elevatorID, request.elevatorID);
     }
 }
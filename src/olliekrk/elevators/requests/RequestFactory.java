@@ -19,11 +19,23 @@ public class RequestFactory {
         return new Request(RequestType.FLOOR, elevatorID, floor);
     }
 
+    /**
+     * Creates a request for specific elevator to stop on specific floor, which preempts requests of lower priority.
+     *
+     * @param elevatorID ID of the elevator
+     * @param floor      requested floor
+     * @param priority   priority of the request, for {@link RequestPriority#NORMAL} it is an ordinary FLOOR request
+     * @return request of type FLOOR with given priority
+     */
+    public static Request createPriorityRequest(int elevatorID, int floor, RequestPriority priority) {
+        return new Request(RequestType.FLOOR, elevatorID, floor, priority);
+    }
+
     public static Request createRestartRequest(int elevatorID, int restartFloor) {
         return new Request(RequestType.RESTART, elevatorID, restartFloor);
     }
 
     public static Request createEvacuationRequest() {
-        return new Request(RequestType.EVACUATION, null, 0);
+        return new Request(RequestType.EVACUATION, null, 0, RequestPriority.FIRE_SERVICE);
     }
 }
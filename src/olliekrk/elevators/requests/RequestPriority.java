@@ -0,0 +1,26 @@
+package olliekrk.elevators.requests;
+
+/**
+ * Represents priorities of requests {@link Request}, from the lowest to the highest.
+ * <p>
+ * Every elevator controller keeps a separate lane of requests for every priority.
+ * Requests of higher priority preempt requests of lower priority, which are suspended until higher lanes are empty.
+ */
+public enum RequestPriority {
+    /**
+     * Priority of every ordinary request, scheduled by the system's scheduler.
+     */
+    NORMAL,
+    /**
+     * Priority of requests of very important passengers.
+     */
+    VIP,
+    /**
+     * Priority of requests of medical staff.
+     */
+    MEDICAL,
+    /**
+     * Priority of requests of fire service, including evacuation.
+     */
+    FIRE_SERVICE
+}
@@ -23,7 +23,8 @@ public enum RequestType {
     RESTART,
     /**
      * External request for evacuation.
-     * Causes every elevator in the system to restart its queue and to go to the ground floor.
+     * Causes every elevator in the system to go to the ground floor before any other request.
+     * Previously enqueued requests are suspended and resumed after the evacuation.
      */
     EVACUATION
 }
@@ -0,0 +1,50 @@
+package olliekrk.elevators.workload;
+
+import olliekrk.elevators.requests.Request;
+
+/**
+ * Hall call made by a single passenger of a {@link Workload}, together with the step in which the passenger arrived
+ * and the floor the passenger travels to, which should be requested with a FLOOR request after boarding an elevator.
+ */
+public final class TimedRequest {
+    /**
+     * Number of the simulation step in which the passenger arrived.
+     */
+    private final long step;
+    /**
+     * UP or DOWN request made on the passenger's arrival floor.
+     */
+    private final Request request;
+    /**
+     * Floor the passenger travels to.
+     */
+    private final int destinationFloor;
+
+    TimedRequest(long step, Request request, int destinationFloor) {
+        this.step = step;
+        this.request = request;
+        this.destinationFloor = destinationFloor;
+    }
+
+    public long getStep() {
+        return step;
+    }
+
+    public Request getRequest() {
+        return request;
+    }
+
+    public int getDestinationFloor() {
+        return destinationFloor;
+    }
+
+    @Override
+    public String toString() {
+        return "TimedRequest{" +
+                "step=" + step +
+                ", requestType=" + request.getRequestType() +
+                ", floor=" + request.getFloor() +
+                ", destinationFloor=" + destinationFloor +
+                '}';
+    }
+}
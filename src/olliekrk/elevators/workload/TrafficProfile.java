@@ -0,0 +1,52 @@
+package olliekrk.elevators.workload;
+
+/**
+ * Profile of traffic in a building, describing where passengers arrive and where they travel to.
+ * <p>
+ * Every passenger either travels from the lobby (floor 0) to an upper floor, from an upper floor to the lobby,
+ * or between two floors chosen uniformly at random. Profiles differ in the shares of these three kinds of trips.
+ */
+public enum TrafficProfile {
+    /**
+     * Morning up-peak, most passengers arrive in the lobby and travel up.
+     */
+    UP_PEAK(0.85, 0.05),
+    /**
+     * Lunch-time two-way traffic, passengers leave for lunch and come back at the same time.
+     */
+    LUNCH(0.45, 0.45),
+    /**
+     * Evening down-peak, most passengers leave their floors and travel to the lobby.
+     */
+    DOWN_PEAK(0.05, 0.85),
+    /**
+     * Interfloor traffic, passengers arrive on every floor at the same rate and travel to random floors.
+     */
+    INTERFLOOR(0.0, 0.0);
+
+    /**
+     * Share of passengers travelling from the lobby to an upper floor.
+     */
+    private final double upFromLobbyShare;
+    /**
+     * Share of passengers travelling from an upper floor to the lobby.
+     */
+    private final double downToLobbyShare;
+
+    TrafficProfile(double upFromLobbyShare, double downToLobbyShare) {
+        this.upFromLobbyShare = upFromLobbyShare;
+        this.downToLobbyShare = downToLobbyShare;
+    }
+
+    public double getUpFromLobbyShare() {
+        return upFromLobbyShare;
+    }
+
+    public double getDownToLobbyShare() {
+        return downToLobbyShare;
+    }
+
+    public double getInterfloorShare() {
+        return 1.0 - upFromLobbyShare - downToLobbyShare;
+    }
+}
@@ -0,0 +1,98 @@
+package olliekrk.elevators.workload;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reproducible stream of passengers arriving to a building, generated lazily.
+ * <p>
+ * Passengers arrive as a Poisson process with given rate, so the arrivals on every single floor are also a Poisson process,
+ * with the rate proportional to the floor's share in the {@link TrafficProfile}.
+ * Requests are generated one by one while they are consumed, so a workload of any length is processed in constant memory.
+ * <p>
+ * The timeline is divided into blocks of {@link #BLOCK_STEPS} steps and arrivals of every block are drawn from
+ * a random generator seeded with the workload's seed and the block's index. Therefore the same seed always gives
+ * the same requests, no matter whether they are consumed by an iterator or by a parallel stream split into any parts.
+ */
+public class Workload implements Iterable<TimedRequest> {
+    /**
+     * Number of steps in a single block of the timeline, which is the smallest part generated independently.
+     */
+    static final int BLOCK_STEPS = 4096;
+
+    private final long seed;
+    private final int topFloor;
+    private final TrafficProfile profile;
+    private final double arrivalsPerStep;
+    private final long steps;
+
+    /**
+     * Creates a new workload. Nothing is generated until the workload is iterated.
+     *
+     * @param seed            seed of the random generator
+     * @param topFloor        highest floor of the building, the lobby is floor 0
+     * @param profile         profile of the traffic
+     * @param arrivalsPerStep expected number of passengers arriving to the whole building during a single step
+     * @param steps           number of steps covered by the workload
+     */
+    public Workload(long seed, int topFloor, TrafficProfile profile, double arrivalsPerStep, long steps) {
+        if (topFloor < 1) {
+            throw new IllegalArgumentException("Building must have at least one floor above the lobby");
+        }
+        if (!(arrivalsPerStep > 0) || Double.isInfinite(arrivalsPerStep) || steps < 0) {
+            throw new IllegalArgumentException("Arrival rate must be positive and number of steps cannot be negative");
+        }
+        this.seed = seed;
+        this.topFloor = topFloor;
+        this.profile = profile;
+        this.arrivalsPerStep = arrivalsPerStep;
+        this.steps = steps;
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    int getTopFloor() {
+        return topFloor;
+    }
+
+    TrafficProfile getProfile() {
+        return profile;
+    }
+
+    double getArrivalsPerStep() {
+        return arrivalsPerStep;
+    }
+
+    long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Creates a spliterator over the requests, ordered by their steps.
+     * It can be split between blocks of the timeline for parallel generation.
+     *
+     * @return new spliterator over all requests of the workload
+     */
+    @Override
+    public Spliterator<TimedRequest> spliterator() {
+        return new WorkloadSpliterator(this, 0, steps / BLOCK_STEPS + (steps % BLOCK_STEPS == 0 ? 0 : 1));
+    }
+
+    @Override
+    public Iterator<TimedRequest> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    public Stream<TimedRequest> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<TimedRequest> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+}
@@ -0,0 +1,126 @@
+package olliekrk.elevators.workload;
+
+import olliekrk.elevators.requests.Request;
+import olliekrk.elevators.requests.RequestFactory;
+
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator generating requests of a {@link Workload} from a range of blocks of its timeline.
+ * Every block is generated by its own random generator, so splitting does not change the generated requests.
+ */
+class WorkloadSpliterator implements Spliterator<TimedRequest> {
+    private final Workload workload;
+    /**
+     * Block which is being generated.
+     */
+    private long block;
+    /**
+     * Block following the last block of this spliterator.
+     */
+    private final long endBlock;
+    /**
+     * Generator of the current block, null if the block was not started yet.
+     */
+    private SplittableRandom random;
+    /**
+     * Time of the last arrival, in steps.
+     */
+    private double time;
+
+    WorkloadSpliterator(Workload workload, long block, long endBlock) {
+        this.workload = workload;
+        this.block = block;
+        this.endBlock = endBlock;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super TimedRequest> action) {
+        while (block < endBlock) {
+            if (random == null) {
+                random = new SplittableRandom(blockSeed(workload.getSeed(), block));
+                time = (double) block * Workload.BLOCK_STEPS;
+            }
+            //inter-arrival times of a Poisson process are exponentially distributed
+            time -= Math.log(1.0 - random.nextDouble()) / workload.getArrivalsPerStep();
+            long blockStart = block * Workload.BLOCK_STEPS;
+            long blockEnd = blockStart + Math.min(Workload.BLOCK_STEPS, workload.getSteps() - blockStart);
+            if (time < blockEnd) {
+                action.accept(nextPassenger((long) time));
+                return true;
+            }
+            //arrivals are memoryless, so the next block can start its own process
+            random = null;
+            block++;
+        }
+        return false;
+    }
+
+    /**
+     * Splits off the first half of the remaining blocks, including the block which is being generated.
+     */
+    @Override
+    public Spliterator<TimedRequest> trySplit() {
+        long middle = block + (endBlock - block) / 2;
+        if (middle == block) {
+            return null;
+        }
+        WorkloadSpliterator prefix = new WorkloadSpliterator(workload, block, middle);
+        prefix.random = random;
+        prefix.time = time;
+        block = middle;
+        random = null;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        double start = (random == null) ? (double) block * Workload.BLOCK_STEPS : time;
+        double end = Math.min((double) endBlock * Workload.BLOCK_STEPS, workload.getSteps());
+        double expected = Math.max(0.0, end - start) * workload.getArrivalsPerStep();
+        return (expected >= Long.MAX_VALUE) ? Long.MAX_VALUE : (long) Math.ceil(expected);
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    private TimedRequest nextPassenger(long step) {
+        TrafficProfile profile = workload.getProfile();
+        int topFloor = workload.getTopFloor();
+        int arrivalFloor;
+        int destinationFloor;
+        double trip = random.nextDouble();
+        if (trip < profile.getUpFromLobbyShare()) {
+            arrivalFloor = 0;
+            destinationFloor = random.nextInt(1, topFloor + 1);
+        } else if (trip < profile.getUpFromLobbyShare() + profile.getDownToLobbyShare()) {
+            arrivalFloor = random.nextInt(1, topFloor + 1);
+            destinationFloor = 0;
+        } else {
+            arrivalFloor = random.nextInt(topFloor + 1);
+            //any other floor, chosen uniformly
+            destinationFloor = random.nextInt(topFloor);
+            if (destinationFloor >= arrivalFloor) {
+                destinationFloor++;
+            }
+        }
+        Request request = (destinationFloor > arrivalFloor)
+                ? RequestFactory.createUpRequest(arrivalFloor)
+                : RequestFactory.createDownRequest(arrivalFloor);
+        return new TimedRequest(step, request, destinationFloor);
+    }
+
+    /**
+     * Mixes the seed of the workload with the index of the block, so that consecutive blocks get unrelated generators.
+     */
+    private static long blockSeed(long seed, long block) {
+        long z = seed + (block + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
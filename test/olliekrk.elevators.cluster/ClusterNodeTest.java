@@ -0,0 +1,128 @@
+package olliekrk.elevators.cluster;
+
+import olliekrk.elevators.ElevatorsSystem;
+import olliekrk.elevators.SchedulerScanner;
+import olliekrk.elevators.requests.RequestFactory;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class ClusterNodeTest {
+    private static final long TIMEOUT_MILLIS = 10_000;
+    private static final int BUILDINGS = 12;
+    private final List<ClusterNode> nodes = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (ClusterNode node : nodes) {
+            node.close();
+        }
+    }
+
+    @Test
+    public void joiningNodeTakesOverOnlyItsKeysTest() {
+        HashRing ring = new HashRing(HashRing.DEFAULT_VIRTUAL_NODES).withNode("a").withNode("b").withNode("c");
+        HashRing grownRing = ring.withNode("d");
+        int movedKeys = 0;
+        for (int i = 0; i < 1000; i++) {
+            String key = "building-" + i;
+            if (!ring.ownerOf(key).equals(grownRing.ownerOf(key))) {
+                assertEquals("d", grownRing.ownerOf(key));
+                movedKeys++;
+            }
+        }
+        //the new node takes over about a quarter of the keys
+        assertTrue(movedKeys > 150 && movedKeys < 350);
+        assertEquals(ring.getNodes(), grownRing.withoutNode("d").getNodes());
+    }
+
+    @Test
+    public void buildingsMigrateWithTheirRequestsTest() throws IOException, InterruptedException {
+        for (String nodeID : new String[]{"a", "b", "c"}) {
+            startNode(nodeID);
+        }
+        for (int i = 0; i < BUILDINGS; i++) {
+            nodes.get(0).createBuilding("building-" + i, 2);
+        }
+        stepUntil(() -> hostedBuildings() == BUILDINGS);
+
+        //requests are routed from any node to the owner of the building
+        for (int i = 0; i < BUILDINGS; i++) {
+            nodes.get(2).submitRequest("building-" + i, RequestFactory.createFloorRequest(1, 1000));
+        }
+        stepUntil(() -> pendingRequests() == BUILDINGS && lowestFloorOfElevator(1) > 0);
+
+        //the joining node receives its buildings, with their elevators still on their way
+        ClusterNode joiningNode = startNode("d");
+        stepUntil(() -> !joiningNode.getHostedBuildings().isEmpty() && hostedBuildings() == BUILDINGS && pendingRequests() == BUILDINGS);
+        String migratedBuilding = joiningNode.getHostedBuildings().iterator().next();
+        assertTrue(joiningNode.getBuilding(migratedBuilding).getElevatorsSnapshots().get(1).getCurrentFloor() > 0);
+
+        //the leaving node hands over every building
+        ClusterNode leavingNode = nodes.get(1);
+        for (ClusterNode node : nodes) {
+            node.leave(leavingNode.getNodeID());
+        }
+        stepUntil(() -> leavingNode.getHostedBuildings().isEmpty() && hostedBuildings() == BUILDINGS && pendingRequests() == BUILDINGS);
+        for (ClusterNode node : nodes) {
+            assertEquals(0, node.getDroppedRequests());
+        }
+    }
+
+    private ClusterNode startNode(String nodeID) throws IOException {
+        ClusterNode newNode = new ClusterNode(nodeID, SchedulerScanner::new);
+        newNode.start(0);
+        for (ClusterNode node : nodes) {
+            node.join(nodeID, newNode.getAddress());
+            newNode.join(node.getNodeID(), node.getAddress());
+        }
+        nodes.add(newNode);
+        return newNode;
+    }
+
+    private void stepUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Cluster has not reached expected state in time", System.currentTimeMillis() < deadline);
+            for (ClusterNode node : nodes) {
+                node.step();
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private int hostedBuildings() {
+        int hosted = 0;
+        for (ClusterNode node : nodes) {
+            hosted += node.getHostedBuildings().size();
+        }
+        return hosted;
+    }
+
+    private int lowestFloorOfElevator(int elevatorID) {
+        int lowestFloor = Integer.MAX_VALUE;
+        for (ClusterNode node : nodes) {
+            for (String buildingID : node.getHostedBuildings()) {
+                lowestFloor = Math.min(lowestFloor, node.getBuilding(buildingID).getElevatorsSnapshots().get(elevatorID).getCurrentFloor());
+            }
+        }
+        return lowestFloor;
+    }
+
+    private int pendingRequests() {
+        int pending = 0;
+        for (ClusterNode node : nodes) {
+            for (String buildingID : node.getHostedBuildings()) {
+                ElevatorsSystem building = node.getBuilding(buildingID);
+                pending += building.numberOfRequestsEnqueued();
+            }
+        }
+        return pending;
+    }
+}
@@ -0,0 +1,105 @@
+package olliekrk.elevators.cluster;
+
+import olliekrk.elevators.requests.Request;
+import olliekrk.elevators.requests.RequestFactory;
+import olliekrk.elevators.requests.RequestPriority;
+import olliekrk.elevators.requests.RequestType;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LoopbackTransportTest {
+    private static final int SENDERS = 4;
+    private static final int MESSAGES_PER_SENDER = 100;
+    private final BlockingQueue<ClusterMessage> received = new LinkedBlockingQueue<>();
+    private final LoopbackTransport receiver = new LoopbackTransport(received::add);
+    private final LoopbackTransport sender = new LoopbackTransport(message -> {
+    });
+
+    @After
+    public void tearDown() throws IOException {
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    public void messagesAreSentConcurrentlyOverSocketsTest() throws IOException, InterruptedException {
+        receiver.start(0);
+        sender.start(0);
+        List<Thread> threads = new ArrayList<>();
+        List<IOException> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < SENDERS; i++) {
+            String buildingID = "building-" + i;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int floor = 0; floor < MESSAGES_PER_SENDER; floor++) {
+                        Request request = RequestFactory.createUpRequest(floor);
+                        sender.send(receiver.getLocalAddress(), ClusterMessage.request(buildingID, request));
+                    }
+                } catch (IOException e) {
+                    failures.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.isEmpty());
+
+        //frames of every sender arrive whole and in order
+        int[] nextFloors = new int[SENDERS];
+        for (int i = 0; i < SENDERS * MESSAGES_PER_SENDER; i++) {
+            ClusterMessage message = received.poll(10, TimeUnit.SECONDS);
+            assertNotNull(message);
+            assertEquals(ClusterMessage.KIND_REQUEST, message.getKind());
+            int senderIndex = Integer.parseInt(message.getBuildingID().substring("building-".length()));
+            Request request = message.getRequest();
+            assertEquals(RequestType.UP, request.getRequestType());
+            assertEquals(RequestPriority.NORMAL, request.getPriority());
+            assertEquals(nextFloors[senderIndex]++, request.getFloor());
+        }
+
+        //building messages carry the load and the queue of every elevator
+        List<Request> queue = Arrays.asList(RequestFactory.createEvacuationRequest(), RequestFactory.createFloorRequest(1, 4));
+        sender.send(receiver.getLocalAddress(), ClusterMessage.building("building", Collections.singletonList(
+                new ClusterMessage.ElevatorState(1, 3, 8, 2, queue))).forwarded());
+        ClusterMessage building = received.poll(10, TimeUnit.SECONDS);
+        assertNotNull(building);
+        assertEquals(ClusterMessage.KIND_BUILDING, building.getKind());
+        assertEquals(1, building.getHops());
+        assertEquals(3, building.getElevators().get(0).getCurrentFloor());
+        assertEquals(8, building.getElevators().get(0).getCapacity());
+        assertEquals(2, building.getElevators().get(0).getPassengers());
+        assertEquals(queue, building.getElevators().get(0).getRequests());
+    }
+
+    @Test
+    public void hallCallsOfHigherPriorityAreCorruptTest() {
+        String buildingID = "building";
+        ByteBuffer frame = ClusterMessage.request(buildingID, RequestFactory.createDownRequest(3)).encode();
+        frame.position(Integer.BYTES);
+        ByteBuffer content = frame.slice();
+        Request request = ClusterMessage.decode(content.duplicate()).getRequest();
+        assertEquals(RequestFactory.createDownRequest(3), request);
+        assertEquals(RequestPriority.NORMAL, request.getPriority());
+
+        //the system never creates hall calls of other priorities, so such a frame must have been corrupted
+        int priorityOffset = 2 + Short.BYTES + buildingID.getBytes(StandardCharsets.UTF_8).length + 1;
+        content.put(priorityOffset, (byte) RequestPriority.MEDICAL.ordinal());
+        assertNull(ClusterMessage.decode(content));
+    }
+}
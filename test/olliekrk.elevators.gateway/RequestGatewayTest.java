@@ -0,0 +1,102 @@
+package olliekrk.elevators.gateway;
+
+import olliekrk.elevators.ElevatorsSystem;
+import olliekrk.elevators.SchedulerFCFS;
+import olliekrk.elevators.requests.RequestType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.Assert.*;
+
+public class RequestGatewayTest {
+    private RequestGateway gateway;
+    private ElevatorsSystem system;
+
+    @Before
+    public void setUp() throws IOException {
+        gateway = new RequestGateway(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        gateway.start();
+        system = new ElevatorsSystem(new SchedulerFCFS());
+        system.registerElevator(0, 0);
+        system.registerElevator(1, 0);
+        system.addRequestSource(gateway);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        gateway.close();
+    }
+
+    @Test
+    public void framesAreDecodedAndDispatchedInBatchTest() throws Exception {
+        ByteBuffer frames = ByteBuffer.allocate(RequestFrame.FRAME_SIZE * 4);
+        RequestFrame.write(frames, RequestType.UP, 0, 3);
+        RequestFrame.write(frames, RequestType.DOWN, 0, 7);
+        RequestFrame.write(frames, RequestType.FLOOR, 1, 5);
+        //malformed frame with unknown request type
+        frames.put((byte) 42).put((byte) 0).putShort((short) 0).putInt(1);
+        frames.flip();
+
+        try (SocketChannel client = SocketChannel.open(gateway.getLocalAddress())) {
+            //send the first frame split in two parts, to check that incomplete frames are kept
+            ByteBuffer part = frames.duplicate();
+            part.limit(RequestFrame.FRAME_SIZE / 2);
+            writeFully(client, part);
+            Thread.sleep(20);
+            frames.position(RequestFrame.FRAME_SIZE / 2);
+            writeFully(client, frames);
+            awaitReceived(4);
+        }
+
+        assertEquals(0, system.numberOfRequestsEnqueued());
+        assertEquals(3, system.dispatchSubmittedRequests());
+        assertEquals(3, system.numberOfRequestsEnqueued());
+        assertEquals(1, gateway.getMalformedRequests());
+        assertEquals(0, gateway.getDroppedRequests());
+
+        //batch was already handed off
+        assertEquals(0, system.dispatchSubmittedRequests());
+    }
+
+    @Test
+    public void requestsAboveLimitAreDroppedTest() throws Exception {
+        gateway.close();
+        gateway = new RequestGateway(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2);
+        gateway.start();
+
+        ByteBuffer frames = ByteBuffer.allocate(RequestFrame.FRAME_SIZE * 3);
+        for (int floor = 1; floor <= 3; floor++) {
+            RequestFrame.write(frames, RequestType.UP, 0, floor);
+        }
+        frames.flip();
+
+        try (SocketChannel client = SocketChannel.open(gateway.getLocalAddress())) {
+            writeFully(client, frames);
+            awaitReceived(3);
+        }
+
+        assertEquals(2, gateway.dispatchRequests(system));
+        assertEquals(1, gateway.getDroppedRequests());
+    }
+
+    private void awaitReceived(long expected) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (gateway.getReceivedRequests() < expected && System.currentTimeMillis() < timeout) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, gateway.getReceivedRequests());
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package olliekrk.elevators.monitoring;
+
+import olliekrk.elevators.ElevatorsSystem;
+import olliekrk.elevators.SchedulerScanner;
+import olliekrk.elevators.requests.RequestFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FlightRecorderTest {
+    private Path dumpFile;
+
+    @Before
+    public void setUp() throws IOException {
+        dumpFile = Files.createTempFile("elevators", ".flight");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(dumpFile);
+    }
+
+    @Test
+    public void recordedEventsAreReadFromDumpTest() throws IOException {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerScanner());
+        system.registerElevator(3, 0);
+        FlightRecorder recorder = new FlightRecorder(1000);
+        system.addListener(recorder);
+        assertEquals(1024, recorder.getCapacity());
+
+        system.enqueueRequest(RequestFactory.createFloorRequest(3, 2));
+        //close the door, which is remembered as the initial state of the elevator, move two floors up and open the door
+        for (int step = 0; step < 4; step++) {
+            system.makeSimulationStep();
+        }
+        recorder.dump(dumpFile);
+
+        List<FlightRecord> records = FlightRecorder.readDump(dumpFile);
+        assertEquals(6, records.size());
+        //scheduled request is assigned before it is accepted
+        assertEquals(FlightRecord.Type.REQUEST_ASSIGNED, records.get(0).getType());
+        assertEquals(3, records.get(0).getElevatorID());
+        assertEquals(2, records.get(0).getFloor());
+        assertEquals(FlightRecord.Type.REQUEST_ACCEPTED, records.get(1).getType());
+        assertEquals(0, records.get(1).getTick());
+
+        FlightRecord floorChange = records.get(2);
+        assertEquals(FlightRecord.Type.FLOOR_CHANGED, floorChange.getType());
+        assertEquals(1, floorChange.getTick());
+        assertEquals(1, floorChange.getFloor());
+        assertEquals(0, floorChange.getValue());
+        assertEquals(FlightRecord.Type.FLOOR_CHANGED, records.get(3).getType());
+        assertEquals(FlightRecord.Type.REQUEST_COMPLETED, records.get(4).getType());
+        assertEquals(FlightRecord.Type.DOOR_OPENED, records.get(5).getType());
+        assertEquals(3, records.get(5).getTick());
+        assertEquals(2, records.get(5).getFloor());
+    }
+
+    @Test
+    public void oldestEventsAreOverwrittenTest() throws IOException {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerScanner());
+        system.registerElevator(0, 0);
+        FlightRecorder recorder = new FlightRecorder(3);
+        system.addListener(recorder);
+        assertEquals(4, recorder.getCapacity());
+
+        system.enqueueRequest(RequestFactory.createFloorRequest(0, 5));
+        while (system.isAnyRequestUnprocessed()) {
+            system.makeSimulationStep();
+        }
+        long recordedEvents = recorder.getRecordedEvents();
+        assertTrue(recordedEvents > 4);
+        recorder.dump(dumpFile);
+
+        //only the latest records are kept, from the oldest to the newest
+        List<FlightRecord> records = FlightRecorder.readDump(dumpFile);
+        assertEquals(3, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(recordedEvents - 3 + i, records.get(i).getSequence());
+        }
+        assertEquals(FlightRecord.Type.DOOR_OPENED, records.get(2).getType());
+        assertEquals(5, records.get(2).getFloor());
+    }
+
+    @Test
+    public void uncaughtExceptionHandlerIsInstalledOnceTest() throws IOException {
+        Thread.UncaughtExceptionHandler original = Thread.getDefaultUncaughtExceptionHandler();
+        try {
+            Thread.UncaughtExceptionHandler silent = (thread, exception) -> {
+            };
+            Thread.setDefaultUncaughtExceptionHandler(silent);
+            FlightRecorder recorder = new FlightRecorder(4);
+            recorder.dumpOnUncaughtException(dumpFile.resolveSibling(dumpFile.getFileName() + ".old"));
+            Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+            assertNotSame(silent, handler);
+
+            //the handler is kept and it dumps to the latest path
+            recorder.dumpOnUncaughtException(dumpFile);
+            assertSame(handler, Thread.getDefaultUncaughtExceptionHandler());
+            Files.delete(dumpFile);
+            handler.uncaughtException(Thread.currentThread(), new IllegalStateException());
+            assertTrue(Files.exists(dumpFile));
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(original);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package olliekrk.elevators.monitoring;
+
+import olliekrk.elevators.ElevatorsSystem;
+import olliekrk.elevators.SchedulerScanner;
+import olliekrk.elevators.requests.RequestFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class StatusBoardTest {
+    private Path boardFile;
+
+    @Before
+    public void setUp() throws IOException {
+        boardFile = Files.createTempFile("elevators", ".board");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(boardFile);
+    }
+
+    @Test
+    public void publishedStatusesAreReadFromBoardTest() throws IOException {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerScanner());
+        system.registerElevator(7, 0);
+        StatusBoardPublisher publisher = new StatusBoardPublisher(boardFile, 4);
+        system.addListener(publisher);
+
+        StatusBoardReader reader = new StatusBoardReader(boardFile);
+        StatusBoardEntry entry = new StatusBoardEntry();
+        assertEquals(4, reader.getSlotCount());
+        assertFalse(reader.readSlot(0, entry));
+
+        system.enqueueRequest(RequestFactory.createUpRequest(5));
+        //close the door and move two floors up
+        for (int step = 0; step < 3; step++) {
+            system.makeSimulationStep();
+        }
+
+        assertEquals(3, reader.getTicks());
+        assertTrue(reader.readSlot(0, entry));
+        assertEquals(7, entry.getElevatorID());
+        assertEquals(2, entry.getCurrentFloor());
+        assertEquals(5, entry.getDestinationFloor());
+        assertFalse(entry.isDoorOpened());
+        assertEquals(1, entry.getQueueLength());
+        assertFalse(reader.readSlot(1, entry));
+
+        reader.close();
+        publisher.close();
+    }
+}
@@ -0,0 +1,112 @@
+package olliekrk.elevators.monitoring;
+
+import olliekrk.elevators.ElevatorsSystem;
+import olliekrk.elevators.SchedulerScanner;
+import olliekrk.elevators.requests.RequestFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class TrajectoryExporterTest {
+    private static final int STEPS = 3000;
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("elevators");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void csvFilesAreRotatedTest() throws IOException {
+        TrajectoryExporter exporter = exportSimulation(TrajectoryExporter.Format.CSV, 32 * 1024);
+
+        List<String> rows = new ArrayList<>();
+        List<Path> files = exporter.getFiles();
+        assertTrue(files.size() > 1);
+        for (Path file : files) {
+            List<String> lines = Files.readAllLines(file);
+            assertEquals("tick,elevator,floor,door,destination,queue", lines.get(0));
+            rows.addAll(lines.subList(1, lines.size()));
+        }
+        assertEquals(2 * STEPS, rows.size());
+        assertEquals(0, exporter.getDroppedRows());
+        //after the first step the first elevator has closed its door on the way to the 5th floor
+        assertEquals("0,0,0,0,5,1", rows.get(0));
+        assertEquals("0,1,10,1,10,0", rows.get(1));
+        assertEquals((STEPS - 1) + ",1,10,1,10,0", rows.get(rows.size() - 1));
+    }
+
+    @Test
+    public void columnarFileHoldsBlocksOfColumnsTest() throws IOException {
+        TrajectoryExporter exporter = exportSimulation(TrajectoryExporter.Format.COLUMNAR, Long.MAX_VALUE);
+        assertEquals(1, exporter.getFiles().size());
+
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(exporter.getFiles().get(0))).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(TrajectoryExporter.MAGIC, content.getInt());
+        assertEquals(TrajectoryExporter.VERSION, content.getInt());
+        int totalRows = 0;
+        long lastTick = -1;
+        while (content.hasRemaining()) {
+            int rows = content.getInt();
+            assertTrue(rows <= TrajectoryExporter.BLOCK_ROWS);
+            long[] ticks = new long[rows];
+            content.asLongBuffer().get(ticks);
+            assertTrue(ticks[0] >= lastTick);
+            lastTick = ticks[rows - 1];
+            //skip the columns of IDs, floors, destinations, queue lengths and doors
+            content.position(content.position() + rows * (Long.BYTES + 4 * Integer.BYTES + 1));
+            totalRows += rows;
+        }
+        assertEquals(2 * STEPS, totalRows);
+        assertEquals(STEPS - 1, lastTick);
+    }
+
+    @Test
+    public void rowsAreDroppedInsteadOfAllocatingBlocksTest() throws IOException {
+        //with a single block, rows are dropped while the filled block is being written
+        TrajectoryExporter exporter = exportSimulation(TrajectoryExporter.Format.CSV, Long.MAX_VALUE, 1);
+
+        List<String> lines = Files.readAllLines(exporter.getFiles().get(0));
+        assertTrue(lines.size() - 1 >= TrajectoryExporter.BLOCK_ROWS);
+        assertEquals(2 * STEPS, lines.size() - 1 + exporter.getDroppedRows());
+    }
+
+    private TrajectoryExporter exportSimulation(TrajectoryExporter.Format format, long rotationSize) throws IOException {
+        return exportSimulation(format, rotationSize, TrajectoryExporter.POOL_BLOCKS);
+    }
+
+    private TrajectoryExporter exportSimulation(TrajectoryExporter.Format format, long rotationSize, int poolBlocks) throws IOException {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerScanner());
+        system.registerElevator(0, 0);
+        system.registerElevator(1, 10);
+        TrajectoryExporter exporter = new TrajectoryExporter(directory, "trajectory", format, rotationSize, poolBlocks);
+        system.addListener(exporter);
+        system.enqueueRequest(RequestFactory.createFloorRequest(0, 5));
+        for (int step = 0; step < STEPS; step++) {
+            system.makeSimulationStep();
+        }
+        exporter.close();
+        return exporter;
+    }
+}
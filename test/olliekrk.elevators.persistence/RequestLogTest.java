@@ -0,0 +1,174 @@
+package olliekrk.elevators.persistence;
+
+import olliekrk.elevators.ElevatorsSystem;
+import olliekrk.elevators.RequestHandle;
+import olliekrk.elevators.SchedulerFCFS;
+import olliekrk.elevators.requests.Request;
+import olliekrk.elevators.requests.RequestFactory;
+import olliekrk.elevators.requests.RequestPriority;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RequestLogTest {
+    private Path logFile;
+
+    @Before
+    public void setUp() throws IOException {
+        logFile = Files.createTempFile("elevators", ".log");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(logFile);
+    }
+
+    @Test
+    public void pendingRequestsAreRecoveredTest() throws IOException {
+        ElevatorsSystem system = createSystem();
+        RequestLog log = RequestLog.recover(logFile, system, 5, TimeUnit.MILLISECONDS);
+        system.enqueueRequest(RequestFactory.createFloorRequest(0, 1));
+        system.enqueueRequest(RequestFactory.createFloorRequest(0, 8));
+        system.enqueueRequest(RequestFactory.createUpRequest(6));
+
+        //elevator 0 completes the request on the first floor
+        for (int step = 0; step < 3; step++) {
+            system.makeSimulationStep();
+        }
+        assertEquals(2, system.numberOfRequestsEnqueued());
+        log.close();
+
+        List<Request> pendingRequests = RequestLog.readPendingRequests(logFile);
+        assertEquals(2, pendingRequests.size());
+        assertEquals(RequestFactory.createFloorRequest(0, 8), pendingRequests.get(0));
+        assertEquals(RequestFactory.createUpRequest(6), pendingRequests.get(1));
+
+        //the dispatcher restarts with a new system
+        ElevatorsSystem recoveredSystem = createSystem();
+        RequestLog recoveredLog = RequestLog.recover(logFile, recoveredSystem, 5, TimeUnit.MILLISECONDS);
+        //the compacted log is durable before anything is synced by the new log
+        assertEquals(2, RequestLog.readPendingRequests(logFile).size());
+        recoveredLog.sync();
+        assertEquals(2, recoveredSystem.numberOfRequestsEnqueued());
+        assertEquals(2, RequestLog.readPendingRequests(logFile).size());
+        recoveredLog.close();
+    }
+
+    @Test
+    public void appendsDoNotWaitForDurabilityWindowTest() throws IOException {
+        RequestLog log = new RequestLog(logFile, 1, TimeUnit.HOURS);
+        Request request = RequestFactory.createFloorRequest(0, 8);
+        //several times more records than fit in a buffer, all within a single durability window
+        int records = 4 * 8192 + 1;
+        long start = System.nanoTime();
+        for (int i = 0; i < records; i++) {
+            log.onRequestAccepted(request);
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue("Appends took " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms", elapsed < TimeUnit.SECONDS.toNanos(10));
+        log.close();
+        assertEquals(records, RequestLog.readPendingRequests(logFile).size());
+    }
+
+    @Test
+    public void recoveryStopsAtTornRecordTest() throws IOException {
+        ElevatorsSystem system = createSystem();
+        RequestLog log = RequestLog.recover(logFile, system, 5, TimeUnit.MILLISECONDS);
+        system.enqueueRequest(RequestFactory.createDownRequest(4));
+        system.enqueueRequest(RequestFactory.createDownRequest(5));
+        log.close();
+
+        //cut the last record in half, as if the process died while writing it
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+            channel.truncate(RequestLog.RECORD_SIZE + RequestLog.RECORD_SIZE / 2);
+        }
+        List<Request> pendingRequests = RequestLog.readPendingRequests(logFile);
+        assertEquals(1, pendingRequests.size());
+        assertEquals(RequestFactory.createDownRequest(4), pendingRequests.get(0));
+    }
+
+    @Test
+    public void recoveryStopsAtCorruptedPriorityTest() throws IOException {
+        ElevatorsSystem system = createSystem();
+        RequestLog log = RequestLog.recover(logFile, system, 5, TimeUnit.MILLISECONDS);
+        system.enqueueRequest(RequestFactory.createDownRequest(4));
+        system.enqueueRequest(RequestFactory.createPriorityRequest(1, 5, RequestPriority.MEDICAL));
+        log.close();
+
+        //clear the priority byte of the second record, which is covered by the checksum
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0}), RequestLog.RECORD_SIZE + 2);
+        }
+        List<Request> pendingRequests = RequestLog.readPendingRequests(logFile);
+        assertEquals(1, pendingRequests.size());
+        assertEquals(RequestFactory.createDownRequest(4), pendingRequests.get(0));
+    }
+
+    @Test
+    public void evacuationSuspendsPreviousRequestsTest() throws IOException {
+        ElevatorsSystem system = createSystem();
+        RequestLog log = RequestLog.recover(logFile, system, 5, TimeUnit.MILLISECONDS);
+        system.enqueueRequest(RequestFactory.createUpRequest(3));
+        system.enqueueRequest(RequestFactory.createPriorityRequest(1, 5, RequestPriority.MEDICAL));
+        system.enqueueRequest(RequestFactory.createEvacuationRequest());
+        log.close();
+
+        List<Request> pendingRequests = RequestLog.readPendingRequests(logFile);
+        assertEquals(3, pendingRequests.size());
+        assertEquals(RequestFactory.createUpRequest(3), pendingRequests.get(0));
+        assertEquals(RequestFactory.createPriorityRequest(1, 5, RequestPriority.MEDICAL), pendingRequests.get(1));
+        assertEquals(RequestFactory.createEvacuationRequest(), pendingRequests.get(2));
+    }
+
+    @Test
+    public void cancelledRequestsAreNotRecoveredTest() throws IOException {
+        ElevatorsSystem system = createSystem();
+        RequestLog log = RequestLog.recover(logFile, system, 5, TimeUnit.MILLISECONDS);
+        RequestHandle handle = system.enqueueRequest(RequestFactory.createFloorRequest(1, 7));
+        system.enqueueRequest(RequestFactory.createFloorRequest(0, 2));
+        handle.cancel();
+        log.close();
+
+        List<Request> pendingRequests = RequestLog.readPendingRequests(logFile);
+        assertEquals(1, pendingRequests.size());
+        assertEquals(RequestFactory.createFloorRequest(0, 2), pendingRequests.get(0));
+    }
+
+    @Test
+    public void completionRemovesSingleIdenticalRequestTest() throws IOException {
+        ElevatorsSystem system = createSystem();
+        RequestLog log = RequestLog.recover(logFile, system, 5, TimeUnit.MILLISECONDS);
+        //a duplicate is withdrawn right after it is accepted, so only one of the requests is pending
+        system.enqueueRequest(RequestFactory.createFloorRequest(0, 3));
+        system.enqueueRequest(RequestFactory.createFloorRequest(0, 3));
+        //two identical requests accepted by the log and completed only once
+        Request request = RequestFactory.createUpRequest(6);
+        log.onRequestAccepted(request);
+        log.onRequestAccepted(request);
+        log.onRequestCompleted(1, request);
+        log.close();
+
+        List<Request> pendingRequests = RequestLog.readPendingRequests(logFile);
+        assertEquals(2, pendingRequests.size());
+        assertEquals(RequestFactory.createFloorRequest(0, 3), pendingRequests.get(0));
+        assertEquals(request, pendingRequests.get(1));
+    }
+
+    private static ElevatorsSystem createSystem() {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerFCFS());
+        system.registerElevator(0, 0);
+        system.registerElevator(1, 0);
+        return system;
+    }
+}
@@ -0,0 +1,57 @@
+package olliekrk.elevators.workload;
+
+import olliekrk.elevators.requests.RequestType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class WorkloadTest {
+
+    @Test
+    public void sameSeedGivesSameRequestsWhenSplitTest() {
+        Workload workload = new Workload(42, 20, TrafficProfile.LUNCH, 0.5, 10 * Workload.BLOCK_STEPS + 100);
+        List<String> sequential = new ArrayList<>();
+        for (TimedRequest request : workload) {
+            sequential.add(request.toString());
+        }
+        List<String> parallel = workload.parallelStream().map(TimedRequest::toString).collect(Collectors.toList());
+        assertFalse(sequential.isEmpty());
+        assertEquals(sequential, parallel);
+
+        //requests are ordered by steps and stay within the workload
+        long previousStep = 0;
+        for (TimedRequest request : workload) {
+            assertTrue(request.getStep() >= previousStep);
+            assertTrue(request.getStep() < workload.getSteps());
+            previousStep = request.getStep();
+        }
+
+        Iterator<TimedRequest> otherSeed = new Workload(43, 20, TrafficProfile.LUNCH, 0.5, 1000).iterator();
+        assertNotEquals(sequential.get(0), otherSeed.next().toString());
+    }
+
+    @Test
+    public void upPeakRequestsStartInLobbyTest() {
+        int steps = 20000;
+        Workload workload = new Workload(7, 10, TrafficProfile.UP_PEAK, 0.25, steps);
+        int requests = 0;
+        int upFromLobby = 0;
+        for (TimedRequest request : workload) {
+            requests++;
+            int floor = request.getRequest().getFloor();
+            assertNotEquals(floor, request.getDestinationFloor());
+            assertEquals(request.getDestinationFloor() > floor ? RequestType.UP : RequestType.DOWN, request.getRequest().getRequestType());
+            if (floor == 0) {
+                upFromLobby++;
+            }
+        }
+        //5000 arrivals are expected
+        assertTrue(Math.abs(requests - 5000) < 300);
+        assertTrue(upFromLobby > 0.8 * requests);
+    }
+}
@@ -0,0 +1,112 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.requests.Request;
+import olliekrk.elevators.requests.RequestFactory;
+import olliekrk.elevators.workload.TimedRequest;
+import olliekrk.elevators.workload.TrafficProfile;
+import olliekrk.elevators.workload.Workload;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveSchedulerSelectorTest {
+
+    @Test
+    public void liveSystemSwitchesToBetterSchedulerTest() throws InterruptedException {
+        ElevatorsSystem system = new ElevatorsSystem(new FirstElevatorScheduler());
+        for (int i = 0; i < 4; i++) {
+            system.registerElevator(i, 0);
+        }
+        List<Supplier<? extends ElevatorsScheduler>> candidates = List.of(FirstElevatorScheduler::new, SchedulerScanner::new);
+        AdaptiveSchedulerSelector selector = new AdaptiveSchedulerSelector(system, candidates, 50);
+        system.addListener(selector);
+
+        Iterator<TimedRequest> workload = new Workload(11, 15, TrafficProfile.LUNCH, 0.1, 50_000).iterator();
+        TimedRequest next = workload.next();
+        for (int step = 0; step < 50_000 && !(selector.getLiveScheduler() instanceof SchedulerScanner); step++) {
+            while (next.getStep() <= step) {
+                system.enqueueRequest(next.getRequest());
+                next = workload.next();
+            }
+            system.makeSimulationStep();
+            if (step % 100 == 0) {
+                Thread.sleep(1);
+            }
+        }
+        selector.close();
+
+        assertTrue(selector.getSwitches() > 0);
+        assertTrue(selector.getLiveScheduler() instanceof SchedulerScanner);
+        assertTrue(selector.getAverageWait(1) < selector.getAverageWait(0));
+    }
+
+    @Test
+    public void shadowElevatorsLetTheirOwnPassengersOutTest() throws InterruptedException {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerScanner());
+        for (int i = 0; i < 3; i++) {
+            system.registerElevator(i, 0, 4);
+        }
+        List<Supplier<? extends ElevatorsScheduler>> candidates = List.of(SchedulerFCFS::new, SchedulerScanner::new, SchedulerCostFunction::new);
+        AdaptiveSchedulerSelector selector = new AdaptiveSchedulerSelector(system, candidates, 20);
+        system.addListener(selector);
+        List<Request> floorRequests = new ArrayList<>();
+        system.addListener(new ElevatorsSystemListener() {
+            @Override
+            public void onPassengersBoarded(Integer elevatorID, Request request, int passengers) {
+                //every passenger heads to the floor opposite to the one they have called from
+                for (int i = 0; i < passengers; i++) {
+                    floorRequests.add(RequestFactory.createFloorRequest(elevatorID, 10 - request.getFloor()));
+                }
+            }
+        });
+
+        Iterator<TimedRequest> workload = new Workload(5, 10, TrafficProfile.INTERFLOOR, 0.3, 1_000).iterator();
+        TimedRequest next = workload.hasNext() ? workload.next() : null;
+        //shadows are stepped only with the live system, so it keeps stepping long after its own passengers are served
+        for (int step = 0; step < 10_000; step++) {
+            while (next != null && next.getStep() <= step) {
+                system.enqueueRequest(next.getRequest());
+                next = workload.hasNext() ? workload.next() : null;
+            }
+            for (Request request : floorRequests) {
+                system.enqueueRequest(request);
+            }
+            floorRequests.clear();
+            system.makeSimulationStep();
+            if (step % 100 == 0) {
+                Thread.sleep(1);
+            }
+        }
+        assertFalse(system.isAnyRequestUnprocessed());
+
+        //every shadow delivers the passengers it has boarded, whichever of its elevators they are in
+        for (int candidate = 0; candidate < candidates.size(); candidate++) {
+            for (int attempt = 0; attempt < 500 && selector.getShadowPassengers(candidate) > 0; attempt++) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, selector.getShadowPassengers(candidate));
+        }
+        selector.close();
+        assertEquals(0, selector.getDroppedEvents());
+    }
+
+    @Test
+    public void eventsAreDroppedWhenShadowsFallBehindTest() {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerScanner());
+        system.registerElevator(0, 0);
+        AdaptiveSchedulerSelector selector = new AdaptiveSchedulerSelector(system, List.of(SchedulerScanner::new), 10);
+        //with the selector's thread stopped, the shadows do not replay anything
+        selector.close();
+
+        Request request = RequestFactory.createUpRequest(3);
+        for (int i = 0; i < AdaptiveSchedulerSelector.MAX_PENDING_EVENTS + 10; i++) {
+            selector.onRequestAccepted(request);
+        }
+        assertEquals(10, selector.getDroppedEvents());
+    }
+}
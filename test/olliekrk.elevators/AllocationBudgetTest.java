@@ -0,0 +1,112 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.requests.Request;
+import olliekrk.elevators.requests.RequestFactory;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Guards the allocation rate of steady-state operation of the system.
+ * <p>
+ * The system is driven through a warm-up and then through a steady state of enqueued requests, steps and status reads,
+ * while the bytes allocated by the stepping thread are counted separately for dispatching requests and for ticks.
+ * Budgets are declared per scheduler and include some headroom for differences between JIT compilations,
+ * so a test fails only when a change adds allocations to the hot path, such as an extra status or a stream per elevator.
+ */
+public class AllocationBudgetTest {
+    private static final int ELEVATORS = 4;
+    private static final int FLOORS = 20;
+    private static final int WARM_UP_TICKS = 50_000;
+    private static final int MEASURED_TICKS = 20_000;
+    /**
+     * Budgets in bytes. A dispatch allocates the handle of the request and the node of the queue,
+     * a tick allocates snapshots of the elevators which have changed.
+     */
+    private static final double SCANNER_DISPATCH_BUDGET = 256;
+    private static final double SCANNER_TICK_BUDGET = 192;
+    private static final double FCFS_DISPATCH_BUDGET = 896;
+    private static final double FCFS_TICK_BUDGET = 192;
+
+    @Test
+    public void schedulerScannerStaysWithinBudgetTest() {
+        measure(new SchedulerScanner()).assertWithin(SCANNER_DISPATCH_BUDGET, SCANNER_TICK_BUDGET);
+    }
+
+    @Test
+    public void schedulerFCFSStaysWithinBudgetTest() {
+        measure(new SchedulerFCFS()).assertWithin(FCFS_DISPATCH_BUDGET, FCFS_TICK_BUDGET);
+    }
+
+    private static Measurement measure(ElevatorsScheduler scheduler) {
+        ElevatorsSystem system = new ElevatorsSystem(scheduler);
+        for (int i = 0; i < ELEVATORS; i++) {
+            system.registerElevator(i, 0);
+        }
+        //requests are created up front, so that only the allocations of the system are measured
+        Request[] requests = new Request[4 * (FLOORS + 1)];
+        for (int floor = 0; floor <= FLOORS; floor++) {
+            requests[4 * floor] = RequestFactory.createUpRequest(floor);
+            requests[4 * floor + 1] = RequestFactory.createDownRequest(floor);
+            requests[4 * floor + 2] = RequestFactory.createFloorRequest(floor % ELEVATORS, floor);
+            requests[4 * floor + 3] = RequestFactory.createFloorRequest((floor + 1) % ELEVATORS, FLOORS - floor);
+        }
+        Consumer<ElevatorSnapshot> reader = snapshot -> snapshot.getDestinationFloor();
+
+        Measurement warmUp = new Measurement();
+        run(system, requests, reader, WARM_UP_TICKS, 0, warmUp);
+        Measurement measurement = new Measurement();
+        run(system, requests, reader, MEASURED_TICKS, WARM_UP_TICKS, measurement);
+        return measurement;
+    }
+
+    private static void run(ElevatorsSystem system, Request[] requests, Consumer<ElevatorSnapshot> reader,
+                            int ticks, int firstTick, Measurement measurement) {
+        for (int tick = firstTick; tick < firstTick + ticks; tick++) {
+            //keep the queues short, so that the cost of a dispatch does not grow during the test
+            if (tick % 3 == 0 && system.numberOfRequestsEnqueued() < 2 * ELEVATORS) {
+                long before = measurement.allocatedBytes();
+                system.enqueueRequest(requests[(tick * 7) % requests.length]);
+                measurement.dispatchBytes += measurement.allocatedBytes() - before;
+                measurement.dispatches++;
+            }
+            long before = measurement.allocatedBytes();
+            system.makeSimulationStep();
+            system.publishStatuses();
+            system.getPublishedStatuses();
+            system.forEachSnapshot(reader);
+            measurement.tickBytes += measurement.allocatedBytes() - before;
+            measurement.ticks++;
+        }
+    }
+
+    private static final class Measurement {
+        private final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private final long threadID = Thread.currentThread().getId();
+        private long dispatchBytes;
+        private long dispatches;
+        private long tickBytes;
+        private long ticks;
+
+        private long allocatedBytes() {
+            return threadBean.getThreadAllocatedBytes(threadID);
+        }
+
+        private double bytesPerDispatch() {
+            return (double) dispatchBytes / dispatches;
+        }
+
+        private double bytesPerTick() {
+            return (double) tickBytes / ticks;
+        }
+
+        private void assertWithin(double dispatchBudget, double tickBudget) {
+            assertTrue(dispatches > 0);
+            assertTrue("Bytes allocated per dispatch: " + bytesPerDispatch(), bytesPerDispatch() <= dispatchBudget);
+            assertTrue("Bytes allocated per tick: " + bytesPerTick(), bytesPerTick() <= tickBudget);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.requests.RequestFactory;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AssignmentOptimizerTest {
+
+    @Test
+    public void hallCallsAreMovedToBetterElevatorTest() throws InterruptedException {
+        ElevatorsSystem system = new ElevatorsSystem(new FirstElevatorScheduler());
+        system.registerElevator(0, 0);
+        system.registerElevator(1, 20);
+        RequestHandle firstHandle = system.enqueueRequest(RequestFactory.createDownRequest(19));
+        RequestHandle secondHandle = system.enqueueRequest(RequestFactory.createDownRequest(18));
+
+        AssignmentOptimizer optimizer = new AssignmentOptimizer(5, TimeUnit.MILLISECONDS);
+        system.addListener(optimizer);
+        for (int step = 0; step < 100 && optimizer.getAppliedPlans() == 0; step++) {
+            system.makeSimulationStep();
+            Thread.sleep(10);
+        }
+        optimizer.close();
+
+        assertTrue(optimizer.getAppliedPlans() > 0);
+        ElevatorSnapshot closerElevator = system.getElevatorsSnapshots().get(1);
+        assertEquals(1, (int) closerElevator.getElevatorID());
+        assertEquals(2, closerElevator.getRequests().size());
+        assertEquals(19, closerElevator.getDestinationFloor());
+        assertEquals(2, system.numberOfRequestsEnqueued());
+        //moved requests are still tracked by their handles
+        assertTrue(firstHandle.cancel());
+        assertTrue(secondHandle.isPending());
+        assertEquals(1, system.numberOfRequestsEnqueued());
+    }
+}
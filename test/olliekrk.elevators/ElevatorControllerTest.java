@@ -25,6 +25,9 @@ public class ElevatorControllerTest {
     @Before
     public void setUpQueue() {
         controller.setRequestsQueue(new LinkedList<>());
+        controller.setElevatorCurrentFloor(initFloor);
+        //with an empty queue the controller opens the door
+        controller.makeOneStep();
     }
 
     @Test
@@ -83,4 +86,30 @@ public class ElevatorControllerTest {
         Assert.assertEquals(expectedStepsToFloor13, controller.calculateStepsToReachFloor(13));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void snapshotIsRepublishedOnlyAfterChangeTest() {
+        //the test steps its controller, so it does not share the one used by other tests
+        ElevatorController controller = new ElevatorController(new Elevator(elevatorID, initFloor));
+        controller.makeOneStep();
+        ElevatorSnapshot snapshot = controller.getSnapshot();
+        Assert.assertSame(snapshot, controller.getSnapshot());
+
+        controller.getRequestsQueue().add(RequestFactory.createUpRequest(initFloor + 2));
+        Assert.assertSame(snapshot, controller.getPublishedSnapshot());
+
+        ElevatorSnapshot changedSnapshot = controller.getSnapshot();
+        Assert.assertNotSame(snapshot, changedSnapshot);
+        Assert.assertTrue(changedSnapshot.getVersion() > snapshot.getVersion());
+        assertEquals(1, changedSnapshot.getRequests().size());
+        assertEquals(initFloor + 2, changedSnapshot.getDestinationFloor());
+
+        //snapshot is not affected by the following simulation steps
+        controller.makeOneStep();
+        controller.makeOneStep();
+        assertEquals(initFloor, changedSnapshot.getCurrentFloor());
+        Assert.assertTrue(changedSnapshot.isDoorOpened());
+        assertEquals(initFloor + 1, controller.getSnapshot().getCurrentFloor());
+        Assert.assertFalse(controller.getSnapshot().isDoorOpened());
+    }
+}
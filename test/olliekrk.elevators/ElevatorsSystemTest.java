@@ -0,0 +1,525 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.exceptions.ElevatorsRequestException;
+import olliekrk.elevators.exceptions.ElevatorsSystemException;
+import olliekrk.elevators.requests.Request;
+import olliekrk.elevators.requests.RequestFactory;
+import olliekrk.elevators.requests.RequestPriority;
+import olliekrk.elevators.requests.RequestType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class ElevatorsSystemTest {
+
+    @Test
+    public void idleElevatorsAreNotSteppedTest() {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerFCFS());
+        system.registerElevator(0, 0);
+        system.registerElevator(1, 0);
+        assertFalse(system.isAnyRequestUnprocessed());
+
+        system.enqueueRequest(RequestFactory.createFloorRequest(0, 2));
+        system.enqueueRequest(RequestFactory.createFloorRequest(0, 3));
+        assertTrue(system.isAnyRequestUnprocessed());
+        assertEquals(2, system.numberOfRequestsEnqueued());
+
+        //close the door, move two floors up and open the door
+        for (int step = 0; step < 4; step++) {
+            system.makeSimulationStep();
+        }
+        assertEquals(1, system.numberOfRequestsEnqueued());
+
+        //close the door, move one floor up and open the door
+        for (int step = 0; step < 3; step++) {
+            system.makeSimulationStep();
+        }
+        assertFalse(system.isAnyRequestUnprocessed());
+        assertEquals(0, system.numberOfRequestsEnqueued());
+
+        ElevatorSnapshot snapshot = system.getElevatorsSnapshots().get(0);
+        assertEquals(3, snapshot.getCurrentFloor());
+        assertTrue(snapshot.isDoorOpened());
+
+        //both elevators are idle, so their state does not change anymore
+        long version = snapshot.getVersion();
+        system.makeSimulationStep();
+        assertEquals(version, system.getElevatorsSnapshots().get(0).getVersion());
+
+        system.updateElevatorStatus(1, 4, 1);
+        assertEquals(1, system.numberOfRequestsEnqueued());
+    }
+
+    @Test
+    public void priorityRequestPreemptsAndSuspendsOrdinaryRequestsTest() {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerScanner());
+        system.registerElevator(0, 0);
+        system.enqueueRequest(RequestFactory.createFloorRequest(0, 6));
+        //close the door and move one floor up
+        system.makeSimulationStep();
+        system.makeSimulationStep();
+
+        system.enqueueRequest(RequestFactory.createPriorityRequest(0, 0, RequestPriority.MEDICAL));
+        assertEquals(2, system.numberOfRequestsEnqueued());
+        ElevatorSnapshot snapshot = system.getElevatorsSnapshots().get(0);
+        assertEquals(0, snapshot.getDestinationFloor());
+        assertEquals(RequestPriority.MEDICAL, snapshot.getRequests().get(0).getPriority());
+
+        //move one floor down and open the door
+        system.makeSimulationStep();
+        system.makeSimulationStep();
+        snapshot = system.getElevatorsSnapshots().get(0);
+        assertEquals(0, snapshot.getCurrentFloor());
+        assertEquals(6, snapshot.getDestinationFloor());
+        assertEquals(1, system.numberOfRequestsEnqueued());
+
+        //evacuation preempts ordinary requests of every elevator without dropping them
+        system.enqueueRequest(RequestFactory.createEvacuationRequest());
+        snapshot = system.getElevatorsSnapshots().get(0);
+        assertEquals(0, snapshot.getDestinationFloor());
+        assertEquals(2, snapshot.getRequests().size());
+        system.makeSimulationStep();
+        assertEquals(6, system.getElevatorsSnapshots().get(0).getDestinationFloor());
+    }
+
+    @Test
+    public void handlesCancelAndExpireRequestsTest() {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerFCFS());
+        system.registerElevator(0, 0);
+        system.setHallCallExpiry(3);
+
+        RequestHandle floorHandle = system.enqueueRequest(RequestFactory.createFloorRequest(0, 9));
+        RequestHandle duplicateHandle = system.enqueueRequest(RequestFactory.createFloorRequest(0, 9));
+        RequestHandle pickupHandle = system.enqueueRequest(RequestFactory.createUpRequest(2));
+        assertEquals(RequestHandle.State.PENDING, floorHandle.getState());
+        assertEquals(RequestHandle.State.DUPLICATE, duplicateHandle.getState());
+        assertEquals(2, system.numberOfRequestsEnqueued());
+
+        assertTrue(floorHandle.cancel());
+        assertFalse(floorHandle.cancel());
+        assertEquals(RequestHandle.State.CANCELLED, floorHandle.getState());
+        assertEquals(1, system.numberOfRequestsEnqueued());
+        assertEquals(2, system.getElevatorsSnapshots().get(0).getDestinationFloor());
+
+        //the elevator reaches the second floor in four steps, so the hall call expires before
+        for (int step = 0; step < 4; step++) {
+            system.makeSimulationStep();
+        }
+        assertEquals(RequestHandle.State.EXPIRED, pickupHandle.getState());
+        assertFalse(system.isAnyRequestUnprocessed());
+
+        system.setHallCallExpiry(0);
+        RequestHandle completedHandle = system.enqueueRequest(RequestFactory.createDownRequest(1));
+        for (int step = 0; step < 3; step++) {
+            system.makeSimulationStep();
+        }
+        assertEquals(RequestHandle.State.COMPLETED, completedHandle.getState());
+        assertFalse(completedHandle.cancel());
+    }
+
+    @Test
+    public void hallCallsKeepExpiryFromTheirAcceptanceTest() {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerFCFS());
+        system.registerElevator(0, 0);
+        system.setHallCallExpiry(10);
+        RequestHandle patientHandle = system.enqueueRequest(RequestFactory.createUpRequest(20));
+        system.setHallCallExpiry(2);
+        RequestHandle impatientHandle = system.enqueueRequest(RequestFactory.createDownRequest(19));
+        system.setHallCallExpiry(0);
+        RequestHandle unlimitedHandle = system.enqueueRequest(RequestFactory.createUpRequest(18));
+
+        //the hall call accepted later expires first, disabling the expiry does not expire pending hall calls
+        for (int step = 0; step < 3; step++) {
+            system.makeSimulationStep();
+        }
+        assertEquals(RequestHandle.State.EXPIRED, impatientHandle.getState());
+        assertTrue(patientHandle.isPending());
+        assertTrue(unlimitedHandle.isPending());
+
+        for (int step = 0; step < 8; step++) {
+            system.makeSimulationStep();
+        }
+        assertEquals(RequestHandle.State.EXPIRED, patientHandle.getState());
+        assertTrue(unlimitedHandle.isPending());
+    }
+
+    @Test
+    public void repeatedHallCallIsCoalescedAcrossElevatorsTest() {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerScanner());
+        system.registerElevator(0, 0);
+        system.registerElevator(1, 10);
+        RequestHandle firstPress = system.enqueueRequest(RequestFactory.createUpRequest(5));
+        assertEquals(5, system.getElevatorsSnapshots().get(0).getDestinationFloor());
+
+        //the second elevator is now the only inactive one, so the scheduler alone would choose it
+        RequestHandle secondPress = system.enqueueRequest(RequestFactory.createUpRequest(5));
+        assertNotSame(firstPress, secondPress);
+        assertTrue(secondPress.isPending());
+        assertEquals(1, system.numberOfRequestsEnqueued());
+        assertTrue(system.getElevatorsSnapshots().get(1).getRequests().isEmpty());
+
+        //the opposite direction is a different hall call
+        RequestHandle downPress = system.enqueueRequest(RequestFactory.createDownRequest(5));
+        assertNotSame(firstPress, downPress);
+        assertEquals(2, system.numberOfRequestsEnqueued());
+
+        //once the door opens for the call, a new press is scheduled again
+        while (firstPress.isPending()) {
+            system.makeSimulationStep();
+        }
+        assertEquals(RequestHandle.State.COMPLETED, firstPress.getState());
+        assertEquals(RequestHandle.State.COMPLETED, secondPress.getState());
+        RequestHandle thirdPress = system.enqueueRequest(RequestFactory.createUpRequest(5));
+        assertNotSame(firstPress, thirdPress);
+        assertTrue(thirdPress.isPending());
+    }
+
+    @Test
+    public void pressersOfHallCallLeaveItIndependentlyTest() throws InterruptedException, ExecutionException {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerScanner());
+        system.registerElevator(0, 0);
+        system.setHallCallExpiry(10);
+        RequestHandle firstPress = system.enqueueRequest(RequestFactory.createUpRequest(9));
+        CompletableFuture<RequestCompletion> firstCompletion = firstPress.getCompletion();
+        for (int step = 0; step < 9; step++) {
+            system.makeSimulationStep();
+        }
+        RequestHandle secondPress = system.enqueueRequest(RequestFactory.createUpRequest(9));
+        RequestHandle thirdPress = system.enqueueRequest(RequestFactory.createUpRequest(9));
+        CompletableFuture<RequestCompletion> secondCompletion = secondPress.getCompletion();
+
+        //the first presser leaves, the others keep the call
+        assertTrue(firstPress.cancel());
+        assertEquals(RequestHandle.State.CANCELLED, firstPress.getState());
+        assertTrue(firstCompletion.isCompletedExceptionally());
+        assertTrue(secondPress.isPending());
+        assertEquals(1, system.numberOfRequestsEnqueued());
+        assertTrue(thirdPress.cancel());
+        assertFalse(thirdPress.cancel());
+
+        //the later presses have pushed the expiry forward, so the call is served
+        system.makeSimulationStep();
+        system.makeSimulationStep();
+        system.makeSimulationStep();
+        assertEquals(RequestHandle.State.COMPLETED, secondPress.getState());
+        assertEquals(RequestHandle.State.CANCELLED, thirdPress.getState());
+        assertEquals(Integer.valueOf(0), secondCompletion.get().getElevatorID());
+        assertEquals(2, secondCompletion.get().getWaitSteps());
+
+        //the call is withdrawn once its last presser leaves
+        RequestHandle downPress = system.enqueueRequest(RequestFactory.createDownRequest(2));
+        RequestHandle anotherDownPress = system.enqueueRequest(RequestFactory.createDownRequest(2));
+        assertTrue(downPress.cancel());
+        assertEquals(1, system.numberOfRequestsEnqueued());
+        assertTrue(anotherDownPress.cancel());
+        assertEquals(0, system.numberOfRequestsEnqueued());
+        assertFalse(system.isAnyRequestUnprocessed());
+    }
+
+    @Test
+    public void inactiveElevatorStealsHallCallsTest() {
+        ElevatorsSystem system = new ElevatorsSystem(new FirstElevatorScheduler());
+        system.registerElevator(0, 0);
+        system.registerElevator(1, 10);
+        system.setWorkStealing(true);
+        system.enqueueRequest(RequestFactory.createUpRequest(2));
+        system.enqueueRequest(RequestFactory.createDownRequest(9));
+        RequestHandle stolenHandle = system.enqueueRequest(RequestFactory.createDownRequest(8));
+        system.enqueueRequest(RequestFactory.createFloorRequest(0, 7));
+
+        //the second elevator takes over the last hall call, the FLOOR request stays with the first one
+        system.makeSimulationStep();
+        ElevatorSnapshot busyElevator = system.getElevatorsSnapshots().get(0);
+        ElevatorSnapshot stealingElevator = system.getElevatorsSnapshots().get(1);
+        assertEquals(3, busyElevator.getRequests().size());
+        assertEquals(7, busyElevator.getRequests().get(2).getFloor());
+        assertEquals(1, stealingElevator.getRequests().size());
+        assertEquals(8, stealingElevator.getDestinationFloor());
+        assertEquals(4, system.numberOfRequestsEnqueued());
+
+        //the stolen request is still tracked by its handle
+        while (stolenHandle.isPending()) {
+            system.makeSimulationStep();
+        }
+        assertEquals(RequestHandle.State.COMPLETED, stolenHandle.getState());
+        assertEquals(8, system.getElevatorsSnapshots().get(1).getCurrentFloor());
+    }
+
+    @Test
+    public void lateBoundHallCallsWaitForPassingElevatorTest() {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerScanner());
+        system.registerElevator(0, 0);
+        system.setLateBinding(2);
+        system.enqueueRequest(RequestFactory.createFloorRequest(0, 9));
+        RequestHandle upHandle = system.enqueueRequest(RequestFactory.createUpRequest(6));
+        RequestHandle downHandle = system.enqueueRequest(RequestFactory.createDownRequest(3));
+        assertEquals(1, system.numberOfRequestsEnqueued());
+        assertEquals(2, system.numberOfRequestsPooled());
+        assertTrue(upHandle.isPending());
+
+        //close the door and move up to the 4th floor, the UP call is still farther than the horizon
+        for (int step = 0; step < 5; step++) {
+            system.makeSimulationStep();
+        }
+        assertEquals(4, system.getElevatorsSnapshots().get(0).getCurrentFloor());
+        assertEquals(2, system.numberOfRequestsPooled());
+
+        //the elevator takes the UP call on its way, but passes the DOWN call, which is in the opposite direction
+        system.makeSimulationStep();
+        assertEquals(1, system.numberOfRequestsPooled());
+        assertEquals(6, system.getElevatorsSnapshots().get(0).getDestinationFloor());
+        while (upHandle.isPending()) {
+            system.makeSimulationStep();
+        }
+        assertEquals(6, system.getElevatorsSnapshots().get(0).getCurrentFloor());
+        assertTrue(downHandle.isPending());
+
+        //the DOWN call is bound once the elevator becomes free
+        while (system.isAnyRequestUnprocessed()) {
+            system.makeSimulationStep();
+        }
+        assertEquals(RequestHandle.State.COMPLETED, downHandle.getState());
+        assertEquals(3, system.getElevatorsSnapshots().get(0).getCurrentFloor());
+
+        //pooled calls can be cancelled, and they are scheduled at once when late binding is disabled
+        RequestHandle cancelledHandle = system.enqueueRequest(RequestFactory.createUpRequest(8));
+        assertTrue(cancelledHandle.cancel());
+        assertEquals(0, system.numberOfRequestsPooled());
+        RequestHandle scheduledHandle = system.enqueueRequest(RequestFactory.createUpRequest(8));
+        system.setLateBinding(0);
+        assertEquals(0, system.numberOfRequestsPooled());
+        assertEquals(1, system.numberOfRequestsEnqueued());
+        assertTrue(scheduledHandle.isPending());
+    }
+
+    @Test
+    public void requestFuturesAreCompletedBySteppingTest() throws InterruptedException, ExecutionException {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerScanner());
+        system.registerElevator(0, 0);
+        system.registerElevator(1, 10);
+        system.makeSimulationStep();
+        RequestHandle handle = system.enqueueRequest(RequestFactory.createDownRequest(8));
+        CompletableFuture<RequestCompletion> completion = handle.getCompletion();
+        assertEquals(1, (int) handle.getAssignment().getNow(null));
+        assertFalse(completion.isDone());
+
+        //close the door, move two floors down and open the door
+        for (int step = 0; step < 4; step++) {
+            system.makeSimulationStep();
+        }
+        assertTrue(completion.isDone());
+        assertEquals(1, (int) completion.get().getElevatorID());
+        assertEquals(4, completion.get().getWaitSteps());
+        //the future is created once per handle
+        assertSame(completion, handle.getCompletion());
+
+        //rejected requests fail their futures, cancelled ones fail also the assignment when it has not happened yet
+        CompletableFuture<RequestCompletion> rejected = system.enqueueRequestAsync(RequestFactory.createFloorRequest(7, 3));
+        assertTrue(rejected.isCompletedExceptionally());
+        system.setLateBinding(1);
+        RequestHandle pooledHandle = system.enqueueRequest(RequestFactory.createUpRequest(5));
+        CompletableFuture<Integer> assignment = pooledHandle.getAssignment();
+        assertFalse(assignment.isDone());
+        pooledHandle.cancel();
+        try {
+            assignment.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ElevatorsRequestException);
+            assertEquals(RequestHandle.State.CANCELLED, ((ElevatorsRequestException) e.getCause()).getState());
+        }
+    }
+
+    @Test
+    public void duplicateRequestsFollowPendingRequestTest() throws InterruptedException, ExecutionException {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerScanner());
+        system.registerElevator(0, 0);
+        RequestHandle handle = system.enqueueRequest(RequestFactory.createFloorRequest(0, 2));
+        RequestHandle duplicateHandle = system.enqueueRequest(RequestFactory.createFloorRequest(0, 2));
+        assertEquals(RequestHandle.State.DUPLICATE, duplicateHandle.getState());
+        assertEquals(0, (int) duplicateHandle.getAssignment().getNow(null));
+        CompletableFuture<RequestCompletion> completion = duplicateHandle.getCompletion();
+        assertFalse(completion.isDone());
+
+        //close the door, move two floors up and open the door
+        for (int step = 0; step < 4; step++) {
+            system.makeSimulationStep();
+        }
+        assertEquals(RequestHandle.State.COMPLETED, handle.getState());
+        assertTrue(completion.isDone());
+        assertEquals(0, (int) completion.get().getElevatorID());
+
+        //errors are reported by the futures instead of being printed
+        CompletableFuture<RequestCompletion> empty = system.enqueueRequestAsync(null);
+        try {
+            empty.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(RequestHandle.State.REJECTED, ((ElevatorsRequestException) e.getCause()).getState());
+            assertTrue(e.getCause().getCause() instanceof ElevatorsSystemException);
+        }
+    }
+
+    @Test
+    public void floorRequestMergedIntoHallCallLetsPassengersOutTest() {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerFCFS());
+        system.registerElevator(0, 0, 2);
+        system.enqueueRequest(RequestFactory.createUpRequest(0));
+        system.makeSimulationStep();
+        assertEquals(1, system.getElevatorsSnapshots().get(0).getPassengers());
+
+        //the passenger heads to the floor of another hall call, which the scheduler considers the same stop
+        RequestHandle hallCallHandle = system.enqueueRequest(RequestFactory.createDownRequest(3));
+        RequestHandle floorHandle = system.enqueueRequest(RequestFactory.createFloorRequest(0, 3));
+        assertEquals(RequestHandle.State.PENDING, floorHandle.getState());
+        for (int step = 0; step < 20 && system.isAnyRequestUnprocessed(); step++) {
+            system.makeSimulationStep();
+        }
+        assertEquals(RequestHandle.State.COMPLETED, hallCallHandle.getState());
+        assertEquals(RequestHandle.State.COMPLETED, floorHandle.getState());
+        //the passenger has left and the one waiting for the hall call has boarded
+        assertEquals(1, system.getElevatorsSnapshots().get(0).getPassengers());
+    }
+
+    @Test
+    public void passengersAreRestoredWithTheirRequestsTest() {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerScanner());
+        system.registerElevator(0, 0, 4);
+        system.enqueueRequest(RequestFactory.createFloorRequest(0, 9));
+        system.enqueueRequest(RequestFactory.createFloorRequest(0, 9));
+        system.enqueueRequest(RequestFactory.createUpRequest(5));
+        List<Request> requests = system.getPassengerRequests(0);
+        assertEquals(3, requests.size());
+        assertEquals(requests.get(1), requests.get(2));
+
+        //passengers inside the restored elevator leave it at their floor
+        ElevatorsSystem restoredSystem = new ElevatorsSystem(new SchedulerScanner());
+        restoredSystem.registerElevator(0, 3, 4, 2);
+        for (Request request : requests) {
+            restoredSystem.enqueueRequest(request);
+        }
+        assertEquals(requests, restoredSystem.getPassengerRequests(0));
+        assertEquals(2, restoredSystem.getElevatorsSnapshots().get(0).getPassengers());
+        for (int step = 0; step < 20 && restoredSystem.isAnyRequestUnprocessed(); step++) {
+            restoredSystem.makeSimulationStep();
+        }
+        assertEquals(1, restoredSystem.getElevatorsSnapshots().get(0).getPassengers());
+    }
+
+    @Test
+    public void passengersLeftBehindByFullElevatorCallAgainTest() {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerScanner());
+        system.registerElevator(0, 0, 1);
+        int[] rejectedPassengers = new int[1];
+        List<Request> floorRequests = new ArrayList<>();
+        system.addListener(new ElevatorsSystemListener() {
+            @Override
+            public void onPassengersBoarded(Integer elevatorID, Request request, int passengers) {
+                //every boarded passenger heads to the 9th floor
+                for (int i = 0; i < passengers; i++) {
+                    floorRequests.add(RequestFactory.createFloorRequest(elevatorID, 9));
+                }
+            }
+
+            @Override
+            public void onBoardingRejected(Integer elevatorID, Request request, int passengers) {
+                rejectedPassengers[0] += passengers;
+            }
+        });
+        system.enqueueRequest(RequestFactory.createFloorRequest(0, 9));
+        //two passengers press the same hall call, which is scheduled before the FLOOR request
+        RequestHandle handle = system.enqueueRequest(RequestFactory.createUpRequest(5));
+        assertEquals(RequestHandle.State.PENDING, system.enqueueRequest(RequestFactory.createUpRequest(5)).getState());
+
+        //close the door, move five floors up and open the door
+        for (int step = 0; step < 7; step++) {
+            system.makeSimulationStep();
+        }
+        assertEquals(RequestHandle.State.COMPLETED, handle.getState());
+        assertEquals(1, floorRequests.size());
+        assertEquals(1, system.getRejectedBoardings());
+        assertEquals(1, rejectedPassengers[0]);
+        assertEquals(1, system.getElevatorsSnapshots().get(0).getPassengers());
+        //the passenger left behind has called again, to be picked up after the elevator gets to the 9th floor
+        assertEquals(2, system.numberOfRequestsEnqueued());
+
+        //passengers leave the elevator only at the floors they have requested
+        for (int step = 0; step < 100 && (system.isAnyRequestUnprocessed() || !floorRequests.isEmpty()); step++) {
+            for (Request request : floorRequests) {
+                system.enqueueRequest(request);
+            }
+            floorRequests.clear();
+            system.makeSimulationStep();
+        }
+        assertFalse(system.isAnyRequestUnprocessed());
+        assertEquals(1, system.getRejectedBoardings());
+        assertEquals(0, system.getElevatorsSnapshots().get(0).getPassengers());
+    }
+
+    @Test
+    public void overloadedFullFleetDeliversEveryPassengerTest() {
+        assertEveryPassengerDelivered(new SchedulerCostFunction(), 8);
+        assertEveryPassengerDelivered(new SchedulerScanner(), 2);
+        assertEveryPassengerDelivered(new SchedulerRollout(20), 2);
+        assertEveryPassengerDelivered(new SchedulerFCFS(), 2);
+    }
+
+    /**
+     * Calls elevators more often than two of them can serve, so that both of them are full most of the time,
+     * and checks that passengers on board keep reaching their floors and everybody is served in the end.
+     */
+    private static void assertEveryPassengerDelivered(ElevatorsScheduler scheduler, int capacity) {
+        ElevatorsSystem system = new ElevatorsSystem(scheduler);
+        system.registerElevator(0, 0, capacity);
+        system.registerElevator(1, 0, capacity);
+        List<Request> floorRequests = new ArrayList<>();
+        int[] deliveredPassengers = new int[1];
+        system.addListener(new ElevatorsSystemListener() {
+            @Override
+            public void onPassengersBoarded(Integer elevatorID, Request request, int passengers) {
+                //every boarded passenger heads three floors away
+                int floor = request.getFloor() + (request.getFloor() < 5 ? 3 : -3);
+                for (int i = 0; i < passengers; i++) {
+                    floorRequests.add(RequestFactory.createFloorRequest(elevatorID, floor));
+                }
+            }
+
+            @Override
+            public void onRequestCompleted(Integer elevatorID, Request request) {
+                if (request.getRequestType() == RequestType.FLOOR) {
+                    deliveredPassengers[0]++;
+                }
+            }
+        });
+        Random random = new Random(7);
+        int deliveredDuringCalls = 0;
+        for (int step = 0; step < 6000 && (step < 1500 || system.isAnyRequestUnprocessed() || !floorRequests.isEmpty()); step++) {
+            if (step < 1500 && step % 3 == 0) {
+                int floor = random.nextInt(11);
+                system.enqueueRequest(floor == 10 || (floor > 0 && random.nextBoolean())
+                        ? RequestFactory.createDownRequest(floor)
+                        : RequestFactory.createUpRequest(floor));
+            }
+            for (Request request : floorRequests) {
+                system.enqueueRequest(request);
+            }
+            floorRequests.clear();
+            system.makeSimulationStep();
+            if (step == 1000) {
+                deliveredDuringCalls = deliveredPassengers[0];
+            }
+        }
+        //passengers on board keep leaving while the fleet is overloaded, and nobody is left in the end
+        assertTrue(deliveredPassengers[0] > deliveredDuringCalls);
+        assertFalse(system.isAnyRequestUnprocessed());
+        for (ElevatorSnapshot snapshot : system.getElevatorsSnapshots()) {
+            assertEquals(0, snapshot.getPassengers());
+        }
+    }
+}
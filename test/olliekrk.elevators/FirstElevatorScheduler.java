@@ -0,0 +1,21 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.requests.Request;
+
+import java.util.Collection;
+
+/**
+ * Scheduler used by tests, which always picks the first elevator, no matter how far or how busy it is.
+ * Internal requests are appended to the tail of the queue.
+ */
+class FirstElevatorScheduler implements ElevatorsScheduler {
+    @Override
+    public void enqueuePickupRequest(Request request, Collection<ElevatorController> elevatorControllers) {
+        elevatorControllers.iterator().next().getRequestsQueue().add(request);
+    }
+
+    @Override
+    public void enqueueInternalRequest(Request request, ElevatorController controller) {
+        controller.getRequestsQueue().add(request);
+    }
+}
@@ -0,0 +1,54 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.requests.RequestFactory;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RealTimeDriverTest {
+
+    @Test
+    public void submittedRequestsAreCompletedByDriverTest() throws InterruptedException {
+        ElevatorsSystem system = new ElevatorsSystem(new SchedulerScanner());
+        system.registerElevator(0, 0);
+        system.registerElevator(1, 10);
+
+        RealTimeDriver driver = new RealTimeDriver(1, TimeUnit.MILLISECONDS, 2);
+        driver.register(system);
+        driver.start();
+
+        //requests are submitted from other thread than the one stepping the system
+        system.submitRequest(RequestFactory.createUpRequest(3));
+        system.submitRequest(RequestFactory.createFloorRequest(1, 7));
+
+        long timeout = System.currentTimeMillis() + 5000;
+        while (!isServed(system.getPublishedStatuses()) && System.currentTimeMillis() < timeout) {
+            Thread.sleep(5);
+        }
+        driver.stop();
+
+        assertFalse(driver.isRunning());
+        assertTrue(driver.getTicks() > 0);
+        assertTrue(isServed(system.getPublishedStatuses()));
+
+        //elevators have already reached requested floors, the last step opens the door and completes the requests
+        system.makeSimulationStep();
+        assertFalse(system.isAnyRequestUnprocessed());
+    }
+
+    private static boolean isServed(List<ElevatorStatus> statuses) {
+        if (statuses.size() != 2) {
+            return false;
+        }
+        for (ElevatorStatus status : statuses) {
+            int expectedFloor = status.getElevatorID() == 0 ? 3 : 7;
+            if (status.getCurrentFloor() != expectedFloor || status.getDestinationFloor() != expectedFloor) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,58 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.exceptions.ElevatorsSchedulerException;
+import olliekrk.elevators.requests.Request;
+import olliekrk.elevators.requests.RequestFactory;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SchedulerCostFunctionTest {
+
+    @Test
+    public void weightsTradeWaitForTravelDistanceTest() throws ElevatorsSchedulerException {
+        //the first elevator is on its way to the 10th floor, the second one stands on the 6th floor
+        ElevatorController movingController = new ElevatorController(new Elevator(0, 0));
+        movingController.getRequestsQueue().add(RequestFactory.createFloorRequest(0, 10));
+        ElevatorController standingController = new ElevatorController(new Elevator(1, 6));
+        List<ElevatorController> controllerList = List.of(movingController, standingController);
+
+        //by default the passenger waits the shortest
+        new SchedulerCostFunction().enqueuePickupRequest(RequestFactory.createUpRequest(5), controllerList);
+        assertEquals(1, movingController.getRequestsQueue().size());
+        assertEquals(1, standingController.getRequestsQueue().size());
+
+        //when travel is expensive, the moving elevator stops on its way instead
+        SchedulerCostFunction scheduler = new SchedulerCostFunction()
+                .setWeight(CostTerm.TRAVEL_DISTANCE, 10.0)
+                .setWeight(CostTerm.RIDE_DELAY, 0.5);
+        Request request = RequestFactory.createUpRequest(4);
+        scheduler.enqueuePickupRequest(request, controllerList);
+        assertEquals(1, standingController.getRequestsQueue().size());
+        assertEquals(2, movingController.getRequestsQueue().size());
+        assertSame(request, movingController.getRequestsQueue().get(0));
+
+        //repeated request is not enqueued twice
+        scheduler.enqueuePickupRequest(RequestFactory.createUpRequest(4), controllerList);
+        assertEquals(3, movingController.getRequestsQueue().size() + standingController.getRequestsQueue().size());
+    }
+
+    @Test
+    public void floorRequestIsInsertedOnTheWayTest() throws ElevatorsSchedulerException {
+        ElevatorController controller = new ElevatorController(new Elevator(0, 0));
+        controller.getRequestsQueue().add(RequestFactory.createFloorRequest(0, 10));
+        controller.getRequestsQueue().add(RequestFactory.createFloorRequest(0, 2));
+        SchedulerCostFunction scheduler = new SchedulerCostFunction();
+
+        scheduler.enqueueInternalRequest(RequestFactory.createFloorRequest(0, 7), controller);
+        scheduler.enqueueInternalRequest(RequestFactory.createFloorRequest(0, 10), controller);
+
+        List<Request> queue = controller.getRequestsQueue();
+        assertEquals(3, queue.size());
+        assertEquals(7, queue.get(0).getFloor());
+        assertEquals(10, queue.get(1).getFloor());
+        assertEquals(2, queue.get(2).getFloor());
+    }
+}
@@ -0,0 +1,57 @@
+package olliekrk.elevators;
+
+import olliekrk.elevators.exceptions.ElevatorsSchedulerException;
+import olliekrk.elevators.requests.RequestFactory;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SchedulerRolloutTest {
+
+    @Test
+    public void rolloutPrefersBusyElevatorNearbyTest() throws ElevatorsSchedulerException {
+        for (boolean parallel : new boolean[]{false, true}) {
+            //the first elevator stands far below, the second one closes its door on its way to the 10th floor
+            ElevatorController standingController = new ElevatorController(new Elevator(0, 0));
+            ElevatorController movingController = new ElevatorController(new Elevator(1, 9));
+            movingController.getRequestsQueue().add(RequestFactory.createFloorRequest(1, 10));
+            movingController.makeOneStep();
+            List<ElevatorController> controllerList = List.of(standingController, movingController);
+
+            //scanner would choose the standing elevator, as it is inactive
+            assertSame(standingController, new SchedulerScanner().chooseControllerForPickup(RequestFactory.createDownRequest(10), controllerList));
+
+            SchedulerRollout scheduler = new SchedulerRollout(20, parallel);
+            scheduler.enqueuePickupRequest(RequestFactory.createDownRequest(10), controllerList);
+            assertTrue(standingController.getRequestsQueue().isEmpty());
+            assertEquals(2, movingController.getRequestsQueue().size());
+
+            //repeated request is not enqueued twice
+            scheduler.enqueuePickupRequest(RequestFactory.createDownRequest(10), controllerList);
+            assertEquals(2, movingController.getRequestsQueue().size());
+            assertTrue(standingController.getRequestsQueue().isEmpty());
+        }
+    }
+
+    @Test
+    public void forkRolloutMatchesControllerStepsTest() {
+        ElevatorController controller = new ElevatorController(new Elevator(0, 3));
+        controller.getRequestsQueue().add(RequestFactory.createFloorRequest(0, 6));
+        controller.getRequestsQueue().add(RequestFactory.createFloorRequest(0, 1));
+        ElevatorFork fork = ElevatorFork.of(controller);
+
+        //the forked state is not affected by later changes of the controller
+        long waitWithinHorizon = fork.rollout(100, -1, 0);
+        long estimatedWait = fork.rollout(1, -1, 0);
+        controller.getRequestsQueue().clear();
+        assertEquals(waitWithinHorizon, fork.rollout(100, -1, 0));
+        assertEquals(waitWithinHorizon, estimatedWait);
+
+        //close the door, move 3 floors and open the door, then close it, move 5 floors and open it again
+        assertEquals(5 + 12, waitWithinHorizon);
+        //the inserted stop on the 4th floor, on the way to the 6th one, delays the next ones by 2 steps
+        assertEquals(3 + 7 + 14, fork.rollout(100, 0, 4));
+    }
+}
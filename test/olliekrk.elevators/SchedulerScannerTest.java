@@ -3,8 +3,15 @@ package olliekrk.elevators;
 import olliekrk.elevators.exceptions.ElevatorsSchedulerException;
 import olliekrk.elevators.requests.Request;
 import olliekrk.elevators.requests.RequestFactory;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -28,7 +35,7 @@ public class SchedulerScannerTest {
         //assert that request was added to the elevator on the floor
         assertEquals(1, shouldBeChosenController.getRequestsQueue().size());
         assertEquals(0, anotherController.getRequestsQueue().size());
-        assertEquals((int) pickupRequest.getFloor(), shouldBeChosenController.getElevatorStatus().getDestinationFloor());
+        assertEquals(pickupRequest.getFloor(), shouldBeChosenController.getElevatorStatus().getDestinationFloor());
     }
 
     @Test
@@ -54,7 +61,7 @@ public class SchedulerScannerTest {
         //assert that request was added to the elevator moving towards the floor
         assertEquals(2, shouldBeChosenController.getRequestsQueue().size());
         assertEquals(1, anotherController.getRequestsQueue().size());
-        assertEquals((int) request1.getFloor(), shouldBeChosenController.getElevatorStatus().getDestinationFloor());
+        assertEquals(request1.getFloor(), shouldBeChosenController.getElevatorStatus().getDestinationFloor());
     }
 
     @Test
@@ -81,4 +88,98 @@ public class SchedulerScannerTest {
         assertEquals(2, shouldBeChosenController.getRequestsQueue().size());
         assertEquals(1, anotherController.getRequestsQueue().size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void enqueueInternalRequestAfterQueueChangeTest() throws ElevatorsSchedulerException {
+        ElevatorController controller = new ElevatorController(new Elevator(0, 0));
+        controller.getRequestsQueue().add(RequestFactory.createUpRequest(10));
+        SchedulerScanner schedulerScanner = new SchedulerScanner();
+
+        schedulerScanner.enqueueInternalRequest(RequestFactory.createFloorRequest(0, 5), controller);
+        //queue modified outside of the scheduler, cached insertion indexes must not be reused
+        controller.getRequestsQueue().add(0, RequestFactory.createUpRequest(2));
+        schedulerScanner.enqueueInternalRequest(RequestFactory.createFloorRequest(0, 7), controller);
+        //repeated request is not enqueued twice
+        schedulerScanner.enqueuePickupRequest(RequestFactory.createUpRequest(10), List.of(controller));
+
+        List<Request> queue = controller.getRequestsQueue();
+        assertEquals(4, queue.size());
+        assertEquals(2, queue.get(0).getFloor());
+        assertEquals(5, queue.get(1).getFloor());
+        assertEquals(7, queue.get(2).getFloor());
+        assertEquals(10, queue.get(3).getFloor());
+    }
+
+    @Test
+    public void chooseControllerForPickupWithoutAllocationTest() throws ElevatorsSchedulerException {
+        ElevatorController firstController = new ElevatorController(new Elevator(0, 3));
+        ElevatorController secondController = new ElevatorController(new Elevator(1, 9));
+        ElevatorController thirdController = new ElevatorController(new Elevator(2, 6));
+        firstController.getRequestsQueue().add(RequestFactory.createDownRequest(0));
+        secondController.getRequestsQueue().add(RequestFactory.createDownRequest(14));
+        thirdController.getRequestsQueue().add(RequestFactory.createUpRequest(0));
+        List<ElevatorController> controllerList = List.of(firstController, secondController, thirdController);
+        Request pickupRequest = RequestFactory.createUpRequest(7);
+        SchedulerScanner schedulerScanner = new SchedulerScanner();
+
+        //no elevator is inactive nor passing and all of them would reach the floor equally fast, so the first one is chosen
+        assertSame(firstController, schedulerScanner.chooseControllerForPickup(pickupRequest, controllerList));
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadID = Thread.currentThread().getId();
+        for (int i = 0; i < 20_000; i++) {
+            schedulerScanner.chooseControllerForPickup(pickupRequest, controllerList);
+        }
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadID);
+        for (int i = 0; i < 20_000; i++) {
+            schedulerScanner.chooseControllerForPickup(pickupRequest, controllerList);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadID) - allocatedBefore;
+        //allow for allocations made by the measurement itself
+        assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    @Test
+    public void dispatchDecisionIsRecordedTest() throws ElevatorsSchedulerException, IOException {
+        ElevatorController movingController = new ElevatorController(new Elevator(0, 2));
+        movingController.getRequestsQueue().add(RequestFactory.createFloorRequest(0, 10));
+        ElevatorController inactiveController = new ElevatorController(new Elevator(1, 8));
+        List<ElevatorController> controllerList = List.of(movingController, inactiveController);
+
+        Path recordingFile = Files.createTempFile("elevators", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("olliekrk.elevators.Dispatch");
+            recording.start();
+            new SchedulerScanner().enqueuePickupRequest(RequestFactory.createUpRequest(5), controllerList);
+            recording.stop();
+            recording.dump(recordingFile);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+            assertEquals(1, events.size());
+            RecordedEvent event = events.get(0);
+            assertEquals("SchedulerScanner", event.getString("scheduler"));
+            assertEquals(1, event.getInt("elevatorID"));
+            assertEquals(SchedulerScanner.TIER_CLOSEST_INACTIVE, event.getString("tier"));
+            assertEquals(2, event.getInt("candidates"));
+        } finally {
+            Files.delete(recordingFile);
+        }
+    }
+
+    @Test
+    public void fullElevatorIsSkippedUnlessAllAreFullTest() throws ElevatorsSchedulerException {
+        ElevatorController fullController = new ElevatorController(new Elevator(0, 5, 1));
+        ElevatorController anotherController = new ElevatorController(new Elevator(1, 0, 1));
+        List<ElevatorController> controllerList = List.of(fullController, anotherController);
+        Request pickupRequest = RequestFactory.createUpRequest(5);
+        SchedulerScanner schedulerScanner = new SchedulerScanner();
+
+        assertSame(fullController, schedulerScanner.chooseControllerForPickup(pickupRequest, controllerList));
+        fullController.board(1);
+        assertTrue(fullController.isFull());
+        assertSame(anotherController, schedulerScanner.chooseControllerForPickup(pickupRequest, controllerList));
+        //when every elevator is full the request is still dispatched
+        anotherController.board(1);
+        assertSame(fullController, schedulerScanner.chooseControllerForPickup(pickupRequest, controllerList));
+    }
+}